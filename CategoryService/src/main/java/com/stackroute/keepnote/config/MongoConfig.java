@@ -0,0 +1,54 @@
+package com.stackroute.keepnote.config;
+
+import java.util.Locale;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Collation.ComparisonLevel;
+
+import com.stackroute.keepnote.model.Category;
+
+/*
+ * A user can have only one category of a given name, whatever its case. This
+ * is enforced by a unique index on (categoryCreatedBy, categoryName) with a
+ * case-insensitive collation, so a create is a single insert which fails with
+ * a duplicate key instead of a lookup followed by an insert. @CompoundIndex
+ * cannot declare a collation, hence the index is ensured here at startup.
+ *
+ * Without the index names would silently stop being unique, so the service
+ * does not start when it cannot be created, e.g. because of existing
+ * duplicates, which have to be merged first.
+ */
+
+@Configuration
+public class MongoConfig {
+
+	public static final String UNIQUE_NAME_INDEX = "createdBy_name_unique";
+
+	private final MongoOperations mongoOperations;
+
+	public MongoConfig(MongoOperations mongoOperations) {
+		this.mongoOperations = mongoOperations;
+	}
+
+	@PostConstruct
+	public void ensureUniqueCategoryNames() {
+		CompoundIndexDefinition index = new CompoundIndexDefinition(
+				new Document("categoryCreatedBy", 1).append("categoryName", 1));
+		index.named(UNIQUE_NAME_INDEX).unique()
+				.collation(Collation.of(Locale.ENGLISH).strength(ComparisonLevel.secondary()));
+		try {
+			this.mongoOperations.indexOps(Category.class).ensureIndex(index);
+		} catch (DataAccessException e) {
+			throw new IllegalStateException("unique index " + UNIQUE_NAME_INDEX
+					+ " on category names not created, merge the duplicate categories first", e);
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.stackroute.keepnote.controller;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,11 +11,15 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.stackroute.keepnote.exception.CategoryNotCreatedException;
+import com.stackroute.keepnote.exception.CategoryNotFoundException;
 import com.stackroute.keepnote.model.Category;
 import com.stackroute.keepnote.service.CategoryService;
+import com.stackroute.keepnote.service.CategoryServiceImpl;
 
 /*
  * As in this assignment, we are working with creating RESTful web service, hence annotate
@@ -47,7 +52,8 @@ public class CategoryController {
 	 * database. Please note that the careatorId has to be unique.This handler
 	 * method should return any one of the status messages basis on different
 	 * situations: 1. 201(CREATED - In case of successful creation of the category
-	 * 2. 409(CONFLICT) - In case of duplicate categoryId
+	 * 2. 409(CONFLICT) - In case of duplicate categoryId, or if the user already
+	 * has a category of that name in any case
 	 *
 	 * 
 	 * This handler method should map to the URL "/api/v1/category" using HTTP POST
@@ -57,12 +63,9 @@ public class CategoryController {
 	public ResponseEntity<Object> createCategory(@RequestBody Category category) {
 		ResponseEntity<Object> response = null;
 		try {
-			if (Optional.ofNullable(this.categoryService.createCategory(category)).isPresent()) {
-				response = new ResponseEntity<>(HttpStatus.CREATED);
-			} else {
-				response = new ResponseEntity<>(HttpStatus.CONFLICT);
-			}
-		} catch (Exception e) {
+			this.categoryService.createCategory(category);
+			response = new ResponseEntity<>(HttpStatus.CREATED);
+		} catch (CategoryNotCreatedException e) {
 			response = new ResponseEntity<>(HttpStatus.CONFLICT);
 		}
 		return response;
@@ -100,7 +103,8 @@ public class CategoryController {
 	 * database. This handler method should return any one of the status messages
 	 * basis on different situations: 1. 200(OK) - If the category updated
 	 * successfully. 2. 404(NOT FOUND) - If the category with specified categoryId
-	 * is not found. This handler method should map to the URL
+	 * is not found. 3. 409(CONFLICT) - If the user already has a category of the
+	 * new name. This handler method should map to the URL
 	 * "/api/v1/category/{id}" using HTTP PUT method.
 	 */
 	@PutMapping("/api/v1/category/{id}")
@@ -113,6 +117,8 @@ public class CategoryController {
 			} else {
 				response = new ResponseEntity<>(HttpStatus.CONFLICT);
 			}
+		} catch (CategoryNotFoundException e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		} catch (Exception e) {
 			response = new ResponseEntity<>(HttpStatus.CONFLICT);
 		}
@@ -144,4 +150,41 @@ public class CategoryController {
 		return response;
 	}
 
+	/*
+	 * Define a handler method which will get us the categories with the given ids
+	 * in one call, e.g. "/api/v1/category?ids=A,B". This handler method should
+	 * return 200(OK) with the categories found, unknown ids are skipped.
+	 */
+	@GetMapping(value = "/api/v1/category", params = "ids")
+	public ResponseEntity<Object> getCategories(@RequestParam("ids") List<String> categoryIds) {
+		return new ResponseEntity<>(this.categoryService.getCategoriesByIds(categoryIds), HttpStatus.OK);
+	}
+
+	/*
+	 * Define a handler method which will get us one page of the categories created
+	 * by a user, sorted by "name" (default) or by creation date with "created",
+	 * newest first. The first page is requested without "after", every following
+	 * page with the "next" cursor of the page before. This handler method should
+	 * return any one of the status messages basis on different situations: 1.
+	 * 200(OK) - With the page of categories. 2. 400(BAD REQUEST) - If the sort,
+	 * the cursor or the limit (1 to 100) is invalid.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/category/user/{userId}?sort=&after=&limit=" using HTTP GET method
+	 */
+	@GetMapping("/api/v1/category/user/{userId}")
+	public ResponseEntity<Object> getCategoriesByUserId(@PathVariable("userId") String userId,
+			@RequestParam(value = "sort", defaultValue = CategoryServiceImpl.SORT_BY_NAME) String sort,
+			@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "limit", defaultValue = "20") int limit) {
+		ResponseEntity<Object> response = null;
+		try {
+			response = new ResponseEntity<>(this.categoryService.getCategoriesByUserId(userId, sort, after, limit),
+					HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			response = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		return response;
+	}
+
 }
@@ -3,6 +3,8 @@ package com.stackroute.keepnote.model;
 import java.util.Date;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /*
@@ -10,7 +12,15 @@ import org.springframework.data.mongodb.core.mapping.Document;
  * @Document identifies a domain object to be persisted to MongoDB.
  *  */
 
+/*
+ * The categories of a user are listed page by page in the order of one of
+ * these indexes, so every page is a bounded scan of the index that stops after
+ * the page size. The _id closes each index as the tie-breaker of the cursor.
+ */
+
 @Document
+@CompoundIndexes({ @CompoundIndex(name = "createdBy_name", def = "{'categoryCreatedBy': 1, 'categoryName': 1, '_id': 1}"),
+		@CompoundIndex(name = "createdBy_creationDate", def = "{'categoryCreatedBy': 1, 'categoryCreationDate': -1, '_id': -1}") })
 public class Category {
 
 	/*
@@ -0,0 +1,44 @@
+package com.stackroute.keepnote.model;
+
+import java.util.List;
+
+/*
+ * One page of the categories of a user. next is the cursor to pass as "after"
+ * to get the following page, it is null on the last page.
+ */
+public class CategoryPage {
+
+	private List<Category> categories;
+	private String next;
+
+	public CategoryPage() {
+		// Auto-generated constructor stub
+	}
+
+	public CategoryPage(List<Category> categories, String next) {
+		this.categories = categories;
+		this.next = next;
+	}
+
+	public List<Category> getCategories() {
+		return this.categories;
+	}
+
+	public void setCategories(List<Category> categories) {
+		this.categories = categories;
+	}
+
+	public String getNext() {
+		return this.next;
+	}
+
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+	@Override
+	public String toString() {
+		return "CategoryPage [categories=" + categories + ", next=" + next + "]";
+	}
+
+}
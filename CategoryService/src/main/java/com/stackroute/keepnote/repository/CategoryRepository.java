@@ -1,5 +1,6 @@
 package com.stackroute.keepnote.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -27,4 +28,10 @@ public interface CategoryRepository extends MongoRepository<Category, String> {
 	 *
 	 */
 	List<Category> findAllCategoryByCategoryCreatedBy(String createdBy);
+
+	/*
+	 * This method will search for all categories with one of the given ids, in a
+	 * single query.
+	 */
+	List<Category> findByCategoryIdIn(Collection<String> categoryIds);
 }
@@ -4,6 +4,7 @@ import com.stackroute.keepnote.exception.CategoryDoesNoteExistsException;
 import com.stackroute.keepnote.exception.CategoryNotCreatedException;
 import com.stackroute.keepnote.exception.CategoryNotFoundException;
 import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.CategoryPage;
 import java.util.List;
 
 public interface CategoryService {
@@ -17,10 +18,14 @@ public interface CategoryService {
 
     boolean deleteCategory(String categoryId) throws CategoryDoesNoteExistsException;
 
-    Category updateCategory(Category category, String categoryId);
+    Category updateCategory(Category category, String categoryId) throws CategoryNotFoundException;
 
     Category getCategoryById(String categoryId) throws CategoryNotFoundException;
 
     List<Category> getAllCategoryByUserId(String userId);
 
+    List<Category> getCategoriesByIds(List<String> categoryIds);
+
+    CategoryPage getCategoriesByUserId(String userId, String sort, String after, int limit);
+
 }
@@ -1,14 +1,26 @@
 package com.stackroute.keepnote.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import com.stackroute.keepnote.exception.CategoryDoesNoteExistsException;
 import com.stackroute.keepnote.exception.CategoryNotCreatedException;
 import com.stackroute.keepnote.exception.CategoryNotFoundException;
 import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.CategoryPage;
 import com.stackroute.keepnote.repository.CategoryRepository;
 
 /*
@@ -30,29 +42,41 @@ public class CategoryServiceImpl implements CategoryService {
 	 * object using the new keyword.
 	 */
 
+	public static final String SORT_BY_NAME = "name";
+	public static final String SORT_BY_CREATION_DATE = "created";
+	public static final int MAX_PAGE_SIZE = 100;
+
 	private final CategoryRepository categoryRepository;
+	private final MongoOperations mongoOperations;
+	private final NoteEventPublisher noteEventPublisher;
 
-	public CategoryServiceImpl(CategoryRepository categoryRepository) {
+	public CategoryServiceImpl(CategoryRepository categoryRepository, MongoOperations mongoOperations,
+			NoteEventPublisher noteEventPublisher) {
 		this.categoryRepository = categoryRepository;
+		this.mongoOperations = mongoOperations;
+		this.noteEventPublisher = noteEventPublisher;
 	}
 
 	/*
 	 * This method should be used to save a new category.Call the corresponding
-	 * method of Respository interface.
+	 * method of Respository interface. The insert is the only round trip: a second
+	 * category of the same user and name, in any case, is refused by the unique
+	 * index and reported as not created.
 	 */
 	public Category createCategory(Category category) throws CategoryNotCreatedException {
+		if (null == category.getCategoryCreationDate()) {
+			category.setCategoryCreationDate(new Date());
+		}
 		Category categoryCreated = null;
 		try {
-			categoryCreated = Optional.ofNullable(this.categoryRepository.insert(category))
-					.orElseThrow(() -> new CategoryNotCreatedException("category not created exception -- optional"));
-			if (null == categoryCreated) {
-				throw new CategoryNotCreatedException("category not created exception");
-			}else {
-				return categoryCreated;
-			}
-		} catch (Exception e) {
-			throw new CategoryNotCreatedException(e.getMessage());
+			categoryCreated = this.categoryRepository.insert(category);
+		} catch (DuplicateKeyException e) {
+			throw new CategoryNotCreatedException("category " + category.getCategoryName() + " already exists");
 		}
+		if (null == categoryCreated) {
+			throw new CategoryNotCreatedException("category not created exception");
+		}
+		return categoryCreated;
 	}
 
 	/*
@@ -66,6 +90,7 @@ public class CategoryServiceImpl implements CategoryService {
 					() -> new CategoryDoesNoteExistsException("category does not exists exception -- optional"));
 			if (category.isPresent()) {
 				this.categoryRepository.deleteById(categoryId);
+				this.noteEventPublisher.categoryDeleted(categoryId);
 				flag = Boolean.TRUE;
 			}
 		} catch (Exception e) {
@@ -76,11 +101,23 @@ public class CategoryServiceImpl implements CategoryService {
 
 	/*
 	 * This method should be used to update a existing category.Call the
-	 * corresponding method of Respository interface.
+	 * corresponding method of Respository interface. The fields are set and the
+	 * updated category is read back with a single findAndModify which never
+	 * upserts, the creation date is kept. NoteService is notified so that it
+	 * refreshes the copies of the category embedded in notes.
 	 */
-	public Category updateCategory(Category category, String categoryId) {
-		this.categoryRepository.save(category);
-		return this.categoryRepository.findById(categoryId).get();
+	public Category updateCategory(Category category, String categoryId) throws CategoryNotFoundException {
+		Update update = new Update().set("categoryName", category.getCategoryName())
+				.set("categoryDescription", category.getCategoryDescription())
+				.set("categoryCreatedBy", category.getCategoryCreatedBy());
+		Category updatedCategory = this.mongoOperations.findAndModify(
+				new Query(Criteria.where("_id").is(categoryId)), update,
+				FindAndModifyOptions.options().returnNew(true).upsert(false), Category.class);
+		if (null == updatedCategory) {
+			throw new CategoryNotFoundException("category not found exception");
+		}
+		this.noteEventPublisher.categoryUpdated(updatedCategory);
+		return updatedCategory;
 	}
 
 	/*
@@ -111,4 +148,103 @@ public class CategoryServiceImpl implements CategoryService {
 		return this.categoryRepository.findAllCategoryByCategoryCreatedBy(userId);
 	}
 
+	/*
+	 * This method should be used to get the categories with the given ids, e.g.
+	 * to refresh the copies embedded in notes. Unknown ids are skipped.
+	 */
+	public List<Category> getCategoriesByIds(List<String> categoryIds) {
+		return this.categoryRepository.findByCategoryIdIn(categoryIds);
+	}
+
+	/*
+	 * This method should be used to get one page of the categories of a user,
+	 * sorted by name or newest first. The page starts right after the category the
+	 * cursor "after" points to, so the query is a range scan of the matching
+	 * compound index which stops after limit + 1 entries, however many categories
+	 * the user has. The extra entry only tells whether there is a next page.
+	 * Categories without a creation date, created before it was stamped, are
+	 * listed after all the others in the "created" order.
+	 */
+	public CategoryPage getCategoriesByUserId(String userId, String sort, String after, int limit) {
+		if (limit < 1 || limit > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		boolean byName = SORT_BY_NAME.equals(sort);
+		if (!byName && !SORT_BY_CREATION_DATE.equals(sort)) {
+			throw new IllegalArgumentException("unknown sort " + sort);
+		}
+		Criteria criteria = Criteria.where("categoryCreatedBy").is(userId);
+		if (null != after) {
+			String[] cursor = decodeCursor(after);
+			if (byName) {
+				criteria.orOperator(after("categoryName", cursor[1], cursor[0], true));
+			} else {
+				criteria.orOperator(after("categoryCreationDate",
+						null == cursor[1] ? null : new Date(Long.parseLong(cursor[1])), cursor[0], false));
+			}
+		}
+		Sort order = byName ? Sort.by(Direction.ASC, "categoryName", "_id")
+				: Sort.by(Direction.DESC, "categoryCreationDate", "_id");
+		List<Category> categories = this.mongoOperations.find(new Query(criteria).with(order).limit(limit + 1),
+				Category.class);
+
+		String next = null;
+		if (categories.size() > limit) {
+			categories = categories.subList(0, limit);
+			Category last = categories.get(limit - 1);
+			Date createdAt = last.getCategoryCreationDate();
+			next = encodeCursor(last.getId(), byName ? last.getCategoryName()
+					: null == createdAt ? null : String.valueOf(createdAt.getTime()));
+		}
+		return new CategoryPage(categories, next);
+	}
+
+	/*
+	 * The categories following (value, id) in the order of the field and the _id.
+	 * MongoDB sorts a missing or null value below any other, so they come first in
+	 * ascending and last in descending order.
+	 */
+	private static Criteria[] after(String field, Object value, String id, boolean ascending) {
+		if (null == value) {
+			Criteria sameValue = Criteria.where(field).is(null).and("_id");
+			if (ascending) {
+				return new Criteria[] { sameValue.gt(id), Criteria.where(field).ne(null) };
+			}
+			return new Criteria[] { sameValue.lt(id) };
+		}
+		if (ascending) {
+			return new Criteria[] { Criteria.where(field).gt(value),
+					Criteria.where(field).is(value).and("_id").gt(id) };
+		}
+		return new Criteria[] { Criteria.where(field).lt(value), Criteria.where(field).is(value).and("_id").lt(id),
+				Criteria.where(field).is(null) };
+	}
+
+	/*
+	 * The cursor is the id and the sort value of the last category of a page, each
+	 * Base64 encoded on its own, so neither can be mistaken for the separator. A
+	 * cursor without a sort value stands for a null one.
+	 */
+	private static String encodeCursor(String categoryId, String sortValue) {
+		String cursor = encode(categoryId);
+		return null == sortValue ? cursor : cursor + "." + encode(sortValue);
+	}
+
+	private static String[] decodeCursor(String cursor) {
+		String[] parts = cursor.split("\\.", -1);
+		if (parts.length > 2 || parts[0].isEmpty()) {
+			throw new IllegalArgumentException("invalid cursor " + cursor);
+		}
+		return new String[] { decode(parts[0]), parts.length == 2 ? decode(parts[1]) : null };
+	}
+
+	private static String encode(String value) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/* A malformed cursor fails with an IllegalArgumentException, as Base64 does. */
+	private static String decode(String value) {
+		return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+	}
+
 }
@@ -6,6 +6,7 @@ import com.stackroute.keepnote.exception.CategoryDoesNoteExistsException;
 import com.stackroute.keepnote.exception.CategoryNotCreatedException;
 import com.stackroute.keepnote.exception.CategoryNotFoundException;
 import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.CategoryPage;
 import com.stackroute.keepnote.service.CategoryService;
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +27,7 @@ import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -123,6 +125,15 @@ public class CategoryControllerTest {
                 .andExpect(MockMvcResultMatchers.status().isConflict()).andDo(MockMvcResultHandlers.print());
     }
 
+    @Test
+    public void updateCategoryNotFound() throws Exception {
+
+        when(categoryService.updateCategory(any(), eq(category.getId()))).thenThrow(CategoryNotFoundException.class);
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/category/5b04f7411764e3765c35f8f6")
+                .contentType(MediaType.APPLICATION_JSON).content(asJsonString(category)))
+                .andExpect(MockMvcResultMatchers.status().isNotFound()).andDo(MockMvcResultHandlers.print());
+    }
+
 
     @Test
     public void getCategoryByIdSuccess() throws Exception {
@@ -142,6 +153,34 @@ public class CategoryControllerTest {
     }
 
 
+    @Test
+    public void getCategoriesByUserIdSuccess() throws Exception {
+        when(categoryService.getCategoriesByUserId("Jhon123", "created", null, 10))
+                .thenReturn(new CategoryPage(allCategories, null));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/category/user/Jhon123?sort=created&limit=10")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void getCategoriesByUserIdBadRequest() throws Exception {
+        when(categoryService.getCategoriesByUserId("Jhon123", "name", null, 1000))
+                .thenThrow(IllegalArgumentException.class);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/category/user/Jhon123?limit=1000")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void getCategoriesByIdsSuccess() throws Exception {
+        when(categoryService.getCategoriesByIds(Arrays.asList("5b04f7411764e3765c35f8f6", "5b04f7411764e3765c35f8f7")))
+                .thenReturn(allCategories);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/category?ids=5b04f7411764e3765c35f8f6,5b04f7411764e3765c35f8f7")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value("5b04f7411764e3765c35f8f6"));
+    }
+
 
     private static String asJsonString(final Object obj) {
         try {
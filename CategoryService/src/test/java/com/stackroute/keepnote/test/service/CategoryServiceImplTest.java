@@ -3,16 +3,27 @@ package com.stackroute.keepnote.test.service;
 import com.stackroute.keepnote.exception.CategoryNotCreatedException;
 import com.stackroute.keepnote.exception.CategoryNotFoundException;
 import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.CategoryPage;
 import com.stackroute.keepnote.repository.CategoryRepository;
 import com.stackroute.keepnote.service.CategoryServiceImpl;
+import com.stackroute.keepnote.service.NoteEventPublisher;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import java.util.*;
 
 public class CategoryServiceImplTest {
@@ -20,6 +31,10 @@ public class CategoryServiceImplTest {
     private Category category;
     @Mock
     private CategoryRepository categoryRepository;
+    @Mock
+    private MongoOperations mongoOperations;
+    @Mock
+    private NoteEventPublisher noteEventPublisher;
     @InjectMocks
     private CategoryServiceImpl categoryServiceImpl;
     private List<Category> allCategories = null;
@@ -60,6 +75,14 @@ public class CategoryServiceImplTest {
 
     }
 
+    @Test(expected = CategoryNotCreatedException.class)
+    public void createCategoryTestDuplicateName() throws Exception {
+
+        when(categoryRepository.insert((Category) any())).thenThrow(new DuplicateKeyException("createdBy_name_unique"));
+        categoryServiceImpl.createCategory(category);
+
+    }
+
     @Test
     public void deleteCategory() throws Exception {
         when(categoryRepository.findById(category.getId())).thenReturn(options);
@@ -71,20 +94,22 @@ public class CategoryServiceImplTest {
 
 
     @Test
-    public void updateCategoryTestSuccess() {
-        when(categoryRepository.findById(category.getId())).thenReturn(options);
+    public void updateCategoryTestSuccess() throws CategoryNotFoundException {
         category.setCategoryDescription("All about cricket and other sports");
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Category.class))).thenReturn(category);
         Category fetchedCategory = categoryServiceImpl.updateCategory(category, category.getId());
         Assert.assertEquals(category, fetchedCategory);
+        verify(noteEventPublisher).categoryUpdated(category);
 
     }
 
-    @Test
-    public void updateCategoryTestFailure() {
-        when(categoryRepository.findById(category.getId())).thenReturn(options);
+    @Test(expected = CategoryNotFoundException.class)
+    public void updateCategoryTestFailure() throws CategoryNotFoundException {
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Category.class))).thenReturn(null);
         category.setCategoryDescription("All about cricket and other sports");
-        Category fetchedCategory = categoryServiceImpl.updateCategory(category, category.getId());
-        Assert.assertEquals(category, fetchedCategory);
+        categoryServiceImpl.updateCategory(category, category.getId());
 
     }
 
@@ -112,4 +137,84 @@ public class CategoryServiceImplTest {
         List<Category> categories = categoryServiceImpl.getAllCategoryByUserId("Jhon123");
         Assert.assertEquals(allCategories, categories);
     }
+
+    @Test
+    public void getCategoriesByIdsTestSuccess() {
+        List<String> ids = Arrays.asList("5b04f7411764e3765c35f8f6", "5b04f7411764e3765c35f8f7");
+        when(categoryRepository.findByCategoryIdIn(ids)).thenReturn(allCategories);
+        Assert.assertEquals(allCategories, categoryServiceImpl.getCategoriesByIds(ids));
+    }
+
+    @Test
+    public void getCategoriesByUserIdNextPage() {
+        Category second = new Category("5b04f7411764e3765c35f8f7", "Football-Category", "All about Football",
+                "Jhon123", new Date());
+        when(mongoOperations.find(any(Query.class), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(category, second)));
+        CategoryPage page = categoryServiceImpl.getCategoriesByUserId("Jhon123", "name", null, 1);
+        Assert.assertEquals(Arrays.asList(category), page.getCategories());
+        Assert.assertNotNull(page.getNext());
+
+        when(mongoOperations.find(any(Query.class), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(second)));
+        page = categoryServiceImpl.getCategoriesByUserId("Jhon123", "name", page.getNext(), 1);
+        Assert.assertEquals(Arrays.asList(second), page.getCategories());
+        Assert.assertNull(page.getNext());
+    }
+
+    @Test
+    public void getCategoriesByUserIdCreatedWithoutCreationDate() {
+        // created before the creation date was stamped, listed last
+        Category undated = new Category("5b04f7411764e3765c35f8f7", "Football-Category", "All about Football",
+                "Jhon123", null);
+        Category older = new Category("5b04f7411764e3765c35f8f5", "Tennis-Category", "All about Tennis",
+                "Jhon123", null);
+        when(mongoOperations.find(any(Query.class), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(category, undated)));
+        CategoryPage page = categoryServiceImpl.getCategoriesByUserId("Jhon123", "created", null, 1);
+        Assert.assertEquals(Arrays.asList(category), page.getCategories());
+
+        // past a dated category the undated ones still follow
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoOperations.find(query.capture(), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(undated, older)));
+        page = categoryServiceImpl.getCategoriesByUserId("Jhon123", "created", page.getNext(), 1);
+        Assert.assertEquals(Arrays.asList(undated), page.getCategories());
+        List<?> or = (List<?>) query.getValue().getQueryObject().get("$or");
+        Assert.assertEquals(new Document("categoryCreationDate", null), or.get(2));
+
+        // the page after an undated category
+        when(mongoOperations.find(query.capture(), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(older)));
+        page = categoryServiceImpl.getCategoriesByUserId("Jhon123", "created", page.getNext(), 1);
+        Assert.assertEquals(Arrays.asList(older), page.getCategories());
+        Assert.assertNull(page.getNext());
+        or = (List<?>) query.getValue().getQueryObject().get("$or");
+        Assert.assertEquals(new Document("categoryCreationDate", null).append("_id",
+                new Document("$lt", "5b04f7411764e3765c35f8f7")), or.get(0));
+    }
+
+    @Test
+    public void getCategoriesByUserIdCursorOfIdWithColon() {
+        Category first = new Category("Jhon123:cricket", "Cricket-Category", "All about Cricket", "Jhon123",
+                new Date());
+        Category second = new Category("Jhon123:football", "Cricket-Category", "All about Football", "Jhon123",
+                new Date());
+        when(mongoOperations.find(any(Query.class), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+        CategoryPage page = categoryServiceImpl.getCategoriesByUserId("Jhon123", "name", null, 1);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoOperations.find(query.capture(), eq(Category.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(second)));
+        categoryServiceImpl.getCategoriesByUserId("Jhon123", "name", page.getNext(), 1);
+        List<?> or = (List<?>) query.getValue().getQueryObject().get("$or");
+        Assert.assertEquals(new Document("categoryName", "Cricket-Category").append("_id",
+                new Document("$gt", "Jhon123:cricket")), or.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCategoriesByUserIdInvalidCursor() {
+        categoryServiceImpl.getCategoriesByUserId("Jhon123", "created", "not a cursor", 20);
+    }
 }
@@ -3,4 +3,6 @@ export MONGO_DATABASE=noteDb
 export MONGO_USERNAME=chandan
 export MONGO_PASSWORD=root
 export MONGO_PORT=27017
-export MONGO_HOST=localhost
\ No newline at end of file
+export MONGO_HOST=localhost
+export NOTE_ADMIN_SECRET=keepnote-admin-secret
+export NOTE_EVENTS_SECRET=keepnote-events-secret
@@ -4,6 +4,7 @@ import javax.servlet.Filter;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 
@@ -20,9 +21,11 @@ public class NoteServiceApplication {
 	/*
 	 * Define the bean for Filter registration. Create a new FilterRegistrationBean
 	 * object and use setFilter() method to set new instance of JwtFilter object.
-	 * Also specifies the Url patterns for registration bean.
+	 * Also specifies the Url patterns for registration bean. The reactive stack
+	 * registers ReactiveJwtFilter instead.
 	 */
 	@Bean
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 	public FilterRegistrationBean<Filter> jwtFilter() {
 		FilterRegistrationBean<Filter> filterBean = new FilterRegistrationBean<>();
 		filterBean.setFilter(new JwtFilter("step6"));
@@ -0,0 +1,22 @@
+package com.stackroute.keepnote.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import com.stackroute.keepnote.repository.NoteConverters;
+
+/*
+ * Registers the hand-written readers of NoteUser and Note, used by both the
+ * servlet and the reactive variant of the service.
+ */
+
+@Configuration
+public class MongoConfig {
+
+	@Bean
+	public MongoCustomConversions mongoCustomConversions() {
+		return new MongoCustomConversions(NoteConverters.readers());
+	}
+
+}
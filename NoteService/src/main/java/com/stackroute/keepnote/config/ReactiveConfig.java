@@ -0,0 +1,29 @@
+package com.stackroute.keepnote.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.stackroute.keepnote.jwtfilter.ReactiveJwtFilter;
+
+/*
+ * Beans of the reactive variant of the service. Both Tomcat and Netty are on the
+ * classpath, so Netty is declared explicitly as the reactive web server.
+ */
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+
+	@Bean
+	public ReactiveJwtFilter reactiveJwtFilter() {
+		return new ReactiveJwtFilter("step6");
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.stackroute.keepnote.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import com.stackroute.keepnote.controller.CollaborativeNoteHandler;
+
+/*
+ * Registers the WebSocket endpoint of collaborative editing. The handshake is
+ * a request to /api/v1/*, so it is authorized by the JwtFilter like every
+ * other request.
+ */
+@Configuration
+@EnableWebSocket
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WebSocketConfig implements WebSocketConfigurer {
+
+	private final CollaborativeNoteHandler collaborativeNoteHandler;
+
+	@Autowired
+	public WebSocketConfig(CollaborativeNoteHandler collaborativeNoteHandler) {
+		this.collaborativeNoteHandler = collaborativeNoteHandler;
+	}
+
+	@Override
+	public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+		registry.addHandler(this.collaborativeNoteHandler, "/api/v1/note/collab/*/*");
+	}
+
+}
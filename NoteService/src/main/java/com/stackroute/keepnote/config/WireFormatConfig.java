@@ -0,0 +1,43 @@
+package com.stackroute.keepnote.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/*
+ * Binary alternatives to JSON for every controller. A client sending
+ * "Accept: application/cbor" or "Accept: application/x-jackson-smile" gets
+ * the same payload in the denser format, and may send request bodies in it
+ * with the matching Content-Type; JSON stays the default.
+ *
+ * The spring.jackson settings are applied to all three formats alike through
+ * the Jackson2ObjectMapperBuilder of Spring Boot. That builder is a shared
+ * singleton which also builds the JSON mapper, so it only configures mappers
+ * created here with their own factory and is never changed itself.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WireFormatConfig {
+
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		ObjectMapper mapper = new ObjectMapper(new CBORFactory());
+		builder.configure(mapper);
+		return new MappingJackson2CborHttpMessageConverter(mapper);
+	}
+
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		ObjectMapper mapper = new ObjectMapper(new SmileFactory());
+		builder.configure(mapper);
+		return new MappingJackson2SmileHttpMessageConverter(mapper);
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.stackroute.keepnote.controller;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.service.CollaborativeEditing;
+import com.stackroute.keepnote.service.SequenceCrdt;
+import com.stackroute.keepnote.service.SequenceCrdt.Operation;
+
+/*
+ * WebSocket endpoint of collaborative editing, mapped to
+ * "/api/v1/note/collab/{userId}/{noteId}" by WebSocketConfig.
+ *
+ * On connect the editor receives a snapshot message {type: "snapshot", site,
+ * clock, elements} with the site to use in the ids of its own elements and the
+ * highest counter seen so far. It then sends JSON arrays of SequenceCrdt
+ * operations; the operations which changed the note are passed on to the other
+ * editors of the note as {type: "ops", ops}. An editor may receive operations
+ * before its snapshot; it applies them after the snapshot, which is harmless
+ * as operations are idempotent.
+ */
+
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CollaborativeNoteHandler extends TextWebSocketHandler {
+
+	private static final Log log = LogFactory.getLog(CollaborativeNoteHandler.class);
+
+	private static final int SEND_TIME_LIMIT_MS = 5000;
+	private static final int SEND_BUFFER_LIMIT = 512 * 1024;
+
+	private final CollaborativeEditing collaborativeEditing;
+	private final ObjectMapper objectMapper;
+
+	private final Map<String, Set<WebSocketSession>> editors = new ConcurrentHashMap<>();
+
+	@Autowired
+	public CollaborativeNoteHandler(CollaborativeEditing collaborativeEditing, ObjectMapper objectMapper) {
+		this.collaborativeEditing = collaborativeEditing;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+		String[] note = note(session);
+		SequenceCrdt document;
+		try {
+			document = this.collaborativeEditing.join(note[0], Integer.parseInt(note[1]));
+		} catch (NoteNotFoundExeption | NumberFormatException e) {
+			session.close(CloseStatus.POLICY_VIOLATION.withReason("note not found"));
+			return;
+		}
+		// sends of other threads are serialized by the decorator
+		WebSocketSession editor = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS,
+				SEND_BUFFER_LIMIT);
+		session.getAttributes().put("editor", editor);
+		// registered before the snapshot is taken, so no operation falls in between
+		this.editors.computeIfAbsent(note[0] + "/" + note[1], key -> new CopyOnWriteArraySet<>()).add(editor);
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("type", "snapshot");
+		snapshot.put("site", session.getId());
+		snapshot.put("clock", document.clock());
+		snapshot.put("elements", document.elements());
+		editor.sendMessage(new TextMessage(this.objectMapper.writeValueAsString(snapshot)));
+	}
+
+	@Override
+	protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+		String[] note = note(session);
+		List<Operation> operations = this.objectMapper.readValue(message.getPayload(),
+				new TypeReference<List<Operation>>() {
+				});
+		List<Operation> applied = this.collaborativeEditing.apply(note[0], Integer.parseInt(note[1]), operations);
+		if (applied.isEmpty()) {
+			return;
+		}
+		Map<String, Object> update = new LinkedHashMap<>();
+		update.put("type", "ops");
+		update.put("ops", applied);
+		TextMessage fanOut = new TextMessage(this.objectMapper.writeValueAsString(update));
+		Object sender = session.getAttributes().get("editor");
+		for (WebSocketSession editor : this.editors.getOrDefault(note[0] + "/" + note[1], Collections.emptySet())) {
+			if (editor != sender && editor.isOpen()) {
+				try {
+					editor.sendMessage(fanOut);
+				} catch (IOException | IllegalStateException e) {
+					log.warn("dropping editor " + editor.getId() + ": " + e.getMessage());
+					editor.close(CloseStatus.SESSION_NOT_RELIABLE);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+		Object editor = session.getAttributes().get("editor");
+		if (null == editor) {
+			return;
+		}
+		String[] note = note(session);
+		this.editors.computeIfPresent(note[0] + "/" + note[1], (key, sessions) -> {
+			sessions.remove(editor);
+			return sessions.isEmpty() ? null : sessions;
+		});
+		this.collaborativeEditing.leave(note[0], Integer.parseInt(note[1]));
+	}
+
+	/* userId and noteId, the last two segments of the path. */
+	private static String[] note(WebSocketSession session) {
+		String[] segments = session.getUri().getPath().split("/");
+		return Arrays.copyOfRange(segments, segments.length - 2, segments.length);
+	}
+
+}
@@ -0,0 +1,156 @@
+package com.stackroute.keepnote.controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.stackroute.keepnote.exception.PurgeJobNotFoundException;
+import com.stackroute.keepnote.service.NotePurgeService;
+import com.stackroute.keepnote.service.NoteTelemetry;
+
+/*
+ * Administrative endpoints of the note service. They work on the notes of many
+ * users at once and are kept apart from NoteController.
+ *
+ * A user token only identifies a user, and the JwtFilter does not check any
+ * role, so every call also has to carry the admin secret,
+ * keepnote.note.admin.secret, in the X-Keepnote-Admin-Secret header. Calls
+ * without it are refused with 403(FORBIDDEN), and so is every call when no
+ * secret is configured.
+ */
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class NoteAdminController {
+
+	public static final String ADMIN_SECRET_HEADER = "X-Keepnote-Admin-Secret";
+
+	private NotePurgeService notePurgeService;
+	private NoteTelemetry noteTelemetry;
+	private byte[] secret;
+
+	@Autowired
+	public NoteAdminController(NotePurgeService notePurgeService, NoteTelemetry noteTelemetry,
+			@Value("${keepnote.note.admin.secret:}") String secret) {
+		this.notePurgeService = notePurgeService;
+		this.noteTelemetry = noteTelemetry;
+		this.secret = secret.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Define a handler method which will start a purge of all the notes of the
+	 * userIds given as a JSON array. This handler method should return 202(ACCEPTED)
+	 * with the created job, whose progress is available from
+	 * "/api/v1/admin/note/purge/{jobId}", or 403(FORBIDDEN) without the admin
+	 * secret.
+	 */
+	@PostMapping(value = "/api/v1/admin/note/purge", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> purge(@RequestBody List<String> userIds,
+			@RequestHeader(value = ADMIN_SECRET_HEADER, required = false) String secret) {
+		if (!isAuthorized(secret)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return new ResponseEntity<>(this.notePurgeService.startPurge(userIds.iterator()), HttpStatus.ACCEPTED);
+	}
+
+	/*
+	 * Same as above for a plain text file with one userId per line, which is read
+	 * line by line from the request stream.
+	 */
+	@PostMapping(value = "/api/v1/admin/note/purge", consumes = MediaType.TEXT_PLAIN_VALUE)
+	public ResponseEntity<Object> purgeFromFile(Reader userIdsFile,
+			@RequestHeader(value = ADMIN_SECRET_HEADER, required = false) String secret) throws IOException {
+		if (!isAuthorized(secret)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		try (BufferedReader reader = new BufferedReader(userIdsFile)) {
+			// the lines are handed to the service as they are read, never all at once
+			Iterator<String> userIds = reader.lines().map(String::trim).filter(line -> !line.isEmpty()).iterator();
+			return new ResponseEntity<>(this.notePurgeService.startPurge(userIds), HttpStatus.ACCEPTED);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/*
+	 * Define a handler method which will report the progress of a purge job. This
+	 * handler method should return any one of the status messages basis on
+	 * different situations: 1. 200(OK) - If the job is found. 2. 404(NOT FOUND) -
+	 * If there is no job with the specified jobId. 3. 403(FORBIDDEN) - Without the
+	 * admin secret.
+	 */
+	@GetMapping("/api/v1/admin/note/purge/{jobId}")
+	public ResponseEntity<Object> getPurgeJob(@PathVariable("jobId") String jobId,
+			@RequestHeader(value = ADMIN_SECRET_HEADER, required = false) String secret) {
+		if (!isAuthorized(secret)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		ResponseEntity<Object> response = null;
+		try {
+			response = new ResponseEntity<>(this.notePurgeService.getPurgeJob(jobId), HttpStatus.OK);
+		} catch (PurgeJobNotFoundException e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will resume a failed purge job from its last
+	 * completed chunk. This handler method should return 202(ACCEPTED) with the job,
+	 * 404(NOT FOUND) if there is no job with the specified jobId or 403(FORBIDDEN)
+	 * without the admin secret.
+	 */
+	@PostMapping("/api/v1/admin/note/purge/{jobId}/resume")
+	public ResponseEntity<Object> resumePurgeJob(@PathVariable("jobId") String jobId,
+			@RequestHeader(value = ADMIN_SECRET_HEADER, required = false) String secret) {
+		if (!isAuthorized(secret)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		ResponseEntity<Object> response = null;
+		try {
+			response = new ResponseEntity<>(this.notePurgeService.resumePurge(jobId), HttpStatus.ACCEPTED);
+		} catch (PurgeJobNotFoundException e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will report the note document telemetry: the
+	 * size histograms of the documents read and written and the users writing
+	 * most often and most bytes. This handler method should return 200(OK), or
+	 * 403(FORBIDDEN) without the admin secret.
+	 */
+	@GetMapping("/api/v1/admin/note/telemetry")
+	public ResponseEntity<Object> getTelemetry(
+			@RequestHeader(value = ADMIN_SECRET_HEADER, required = false) String secret) {
+		if (!isAuthorized(secret)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return new ResponseEntity<>(this.noteTelemetry.snapshot(), HttpStatus.OK);
+	}
+
+	private boolean isAuthorized(String secret) {
+		return this.secret.length > 0 && null != secret
+				&& MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -1,6 +1,12 @@
 package com.stackroute.keepnote.controller;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -9,11 +15,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.exception.NoteQuotaExceededException;
+import com.stackroute.keepnote.model.ChecklistItem;
 import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteShare;
+import com.stackroute.keepnote.service.NoteMarkdown;
+import com.stackroute.keepnote.service.NoteReferenceHydrator;
 import com.stackroute.keepnote.service.NoteService;
+import com.stackroute.keepnote.service.NoteSharing;
 
 /*
  * As in this assignment, we are working with creating RESTful web service, hence annotate
@@ -25,6 +38,7 @@ import com.stackroute.keepnote.service.NoteService;
  */
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class NoteController {
 
 	/*
@@ -34,10 +48,17 @@ public class NoteController {
 	 */
 
 	private NoteService noteService;
+	private NoteMarkdown noteMarkdown;
+	private NoteReferenceHydrator referenceHydrator;
+	private NoteSharing noteSharing;
 
 	@Autowired
-	public NoteController(NoteService noteService) {
+	public NoteController(NoteService noteService, NoteMarkdown noteMarkdown,
+			NoteReferenceHydrator referenceHydrator, NoteSharing noteSharing) {
 		this.noteService = noteService;
+		this.noteMarkdown = noteMarkdown;
+		this.referenceHydrator = referenceHydrator;
+		this.noteSharing = noteSharing;
 	}
 
 	/*
@@ -93,7 +114,8 @@ public class NoteController {
 	 * Serialized object from request body and save the updated note details in a
 	 * database. This handler method should return any one of the status messages
 	 * basis on different situations: 1. 200(OK) - If the note updated successfully.
-	 * 2. 404(NOT FOUND) - If the note with specified noteId is not found.
+	 * 2. 404(NOT FOUND) - If the note with specified noteId is not found. 3.
+	 * 507(INSUFFICIENT STORAGE) - If the update would exceed the user's quota.
 	 * 
 	 * This handler method should map to the URL "/api/v1/note/{id}" using HTTP PUT
 	 * method.
@@ -109,6 +131,99 @@ public class NoteController {
 			}
 		} catch (NoteNotFoundExeption e) {
 			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} catch (NoteQuotaExceededException e) {
+			response = new ResponseEntity<>(HttpStatus.INSUFFICIENT_STORAGE);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will move a note right after the note passed
+	 * in "after", or to the top of the list when "after" is missing, and return the
+	 * new rank of the note. This handler method should return any one of the status
+	 * messages basis on different situations: 1. 200(OK) - If the note is moved
+	 * successfully. 2. 404(NOT FOUND) - If either note is not found.
+	 *
+	 * This handler method should map to the URL "/api/v1/note/{userid}/{id}/rank"
+	 * using HTTP PUT method.
+	 */
+	@PutMapping("/api/v1/note/{userid}/{id}/rank")
+	public ResponseEntity<Object> moveNote(@PathVariable("userid") String userId, @PathVariable("id") int noteId,
+			@RequestParam(value = "after", required = false) Integer afterNoteId) {
+		ResponseEntity<Object> response = null;
+		try {
+			response = new ResponseEntity<>(this.noteService.moveNote(userId, noteId, afterNoteId), HttpStatus.OK);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will add an item to the checklist of a note and
+	 * return it with its generated itemId. This handler method should return any
+	 * one of the status messages basis on different situations: 1. 201(CREATED) -
+	 * If the item is added successfully. 2. 404(NOT FOUND) - If the note is not
+	 * found.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/note/{userid}/{id}/checklist" using HTTP POST method.
+	 */
+	@PostMapping("/api/v1/note/{userid}/{id}/checklist")
+	public ResponseEntity<Object> addChecklistItem(@PathVariable("userid") String userId,
+			@PathVariable("id") int noteId, @RequestBody ChecklistItem item) {
+		ResponseEntity<Object> response = null;
+		try {
+			response = new ResponseEntity<>(this.noteService.addChecklistItem(userId, noteId, item),
+					HttpStatus.CREATED);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will check or uncheck a checklist item. This
+	 * handler method should return any one of the status messages basis on
+	 * different situations: 1. 200(OK) - If the item is updated successfully. 2.
+	 * 404(NOT FOUND) - If the note or the item is not found.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/note/{userid}/{id}/checklist/{itemId}?checked=" using HTTP PUT
+	 * method.
+	 */
+	@PutMapping("/api/v1/note/{userid}/{id}/checklist/{itemId}")
+	public ResponseEntity<Object> setChecklistItemChecked(@PathVariable("userid") String userId,
+			@PathVariable("id") int noteId, @PathVariable("itemId") String itemId,
+			@RequestParam("checked") boolean checked) {
+		ResponseEntity<Object> response = null;
+		try {
+			this.noteService.setChecklistItemChecked(userId, noteId, itemId, checked);
+			response = new ResponseEntity<>(HttpStatus.OK);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will remove an item from the checklist of a
+	 * note. This handler method should return any one of the status messages basis
+	 * on different situations: 1. 200(OK) - If the item is removed successfully. 2.
+	 * 404(NOT FOUND) - If the note or the item is not found.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/note/{userid}/{id}/checklist/{itemId}" using HTTP DELETE method.
+	 */
+	@DeleteMapping("/api/v1/note/{userid}/{id}/checklist/{itemId}")
+	public ResponseEntity<Object> removeChecklistItem(@PathVariable("userid") String userId,
+			@PathVariable("id") int noteId, @PathVariable("itemId") String itemId) {
+		ResponseEntity<Object> response = null;
+		try {
+			this.noteService.removeChecklistItem(userId, noteId, itemId);
+			response = new ResponseEntity<>(HttpStatus.OK);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
 		return response;
 	}
@@ -116,15 +231,83 @@ public class NoteController {
 	/*
 	 * Define a handler method which will get us the all notes by a userId. This
 	 * handler method should return any one of the status messages basis on
-	 * different situations: 1. 200(OK) - If the note found successfully.
+	 * different situations: 1. 200(OK) - If the note found successfully. The notes
+	 * are returned with their noteSnippet only, the full noteContent is available
+	 * from "/api/v1/note/{userId}/{noteId}". Like every note read endpoint it
+	 * returns the current category and reminders when hydration is enabled.
 	 * 
 	 * This handler method should map to the URL "/api/v1/note" using HTTP GET
 	 * method
 	 */
 	@GetMapping("/api/v1/note/{userid}")
 	public ResponseEntity<Object> getAllNotesByUserId(@PathVariable("userid") String userId) {
+		List<Note> notes = this.noteService.getNoteSummariesByUserId(userId);
+		this.referenceHydrator.hydrate(notes);
+		return new ResponseEntity<>(notes, HttpStatus.OK);
+	}
 
-		return new ResponseEntity<>(this.noteService.getAllNoteByUserId(userId), HttpStatus.OK);
+	/*
+	 * Define a handler method which will get us the k most recent notes of a user,
+	 * newest first. This handler method should return any one of the status
+	 * messages basis on different situations: 1. 200(OK) - If the notes are found
+	 * successfully. 2. 400(BAD REQUEST) - If k is not a positive number.
+	 * 
+	 * This handler method should map to the URL "/api/v1/note/{userid}/recent"
+	 * using HTTP GET method
+	 */
+	@GetMapping("/api/v1/note/{userid}/recent")
+	public ResponseEntity<Object> getRecentNotes(@PathVariable("userid") String userId,
+			@RequestParam(value = "k", defaultValue = "20") int k) {
+		if (k <= 0) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		List<Note> notes = this.noteService.getRecentNotes(userId, k);
+		this.referenceHydrator.hydrate(notes);
+		return new ResponseEntity<>(notes, HttpStatus.OK);
+	}
+
+	/*
+	 * Define a handler method which will get us the archived notes of a user, most
+	 * recently archived first. The other note listings leave them out. This
+	 * handler method should return 200(OK) with the notes, without their
+	 * noteContent, which is available from "/api/v1/note/{userId}/{noteId}".
+	 * 
+	 * This handler method should map to the URL "/api/v1/note/{userid}/archived"
+	 * using HTTP GET method
+	 */
+	@GetMapping("/api/v1/note/{userid}/archived")
+	public ResponseEntity<Object> getArchivedNotes(@PathVariable("userid") String userId) {
+		List<Note> notes = this.noteService.getArchivedNotes(userId);
+		this.referenceHydrator.hydrate(notes);
+		return new ResponseEntity<>(notes, HttpStatus.OK);
+	}
+
+	/*
+	 * Define a handler method which will get us the notes of a user carrying every
+	 * label passed in "all" and none of the labels passed in "none", e.g.
+	 * "/api/v1/note/{userid}/labels?all=A&all=B&none=C". This handler method
+	 * should return 200(OK) with the matching notes.
+	 */
+	@GetMapping("/api/v1/note/{userid}/labels")
+	public ResponseEntity<Object> getNotesByLabels(@PathVariable("userid") String userId,
+			@RequestParam(value = "all", required = false) List<String> labels,
+			@RequestParam(value = "none", required = false) List<String> excludedLabels) {
+		List<Note> notes = this.noteService.getNotesByLabels(userId, labels, excludedLabels);
+		this.referenceHydrator.hydrate(notes);
+		return new ResponseEntity<>(notes, HttpStatus.OK);
+	}
+
+	/*
+	 * Define a handler method which will get us the groups of near-duplicate notes
+	 * of a user. This handler method should return 200(OK) with a list of groups,
+	 * each group holding the notes which are near-duplicates of each other.
+	 * 
+	 * This handler method should map to the URL "/api/v1/note/{userid}/duplicates"
+	 * using HTTP GET method
+	 */
+	@GetMapping("/api/v1/note/{userid}/duplicates")
+	public ResponseEntity<Object> getDuplicateNotes(@PathVariable("userid") String userId) {
+		return new ResponseEntity<>(this.noteService.getDuplicateNotes(userId), HttpStatus.OK);
 	}
 
 	/*
@@ -134,19 +317,144 @@ public class NoteController {
 	 * successfully. 2. 404(NOT FOUND) - If the note with specified noteId is not
 	 * found. This handler method should map to the URL
 	 * "/api/v1/note/{userId}/{noteId}" using HTTP GET method where "id" should be
-	 * replaced by a valid reminderId without {}
+	 * replaced by a valid reminderId without {}. This is the only endpoint
+	 * returning the full noteContent. With "?format=html" the note also carries
+	 * its content rendered from Markdown to HTML in noteContentHtml.
 	 * 
 	 */
 	@GetMapping("/api/v1/note/{userId}/{noteId}")
-	public ResponseEntity<Object> getByNoteIdAndUserId(@PathVariable String userId, @PathVariable int noteId) {
+	public ResponseEntity<Object> getByNoteIdAndUserId(@PathVariable String userId, @PathVariable int noteId,
+			@RequestParam(value = "format", required = false) String format) {
 		ResponseEntity<Object> response = null;
 		try {
-			this.noteService.getNoteByNoteId(userId, noteId);
-			response = new ResponseEntity<>(HttpStatus.OK);
+			Note note = this.noteService.getNoteByNoteId(userId, noteId);
+			note.setNoteContentHtml("html".equals(format) ? this.noteMarkdown.toHtml(note.getNoteContent()) : null);
+			this.referenceHydrator.hydrate(Collections.singletonList(note));
+			response = new ResponseEntity<>(note, HttpStatus.OK);
 		} catch (Exception e) {
 			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
 		return response;
 	}
 
+	/*
+	 * Define a handler method which will share a note with another user, read-only
+	 * or editable, by reading the recipientId and the permission ("read" or
+	 * "edit") from the request body. This handler method should return any one of
+	 * the status messages basis on different situations: 1. 201(CREATED) - If the
+	 * note is shared successfully. 2. 400(BAD REQUEST) - If the permission is
+	 * unknown or the recipient is the owner. 3. 404(NOT FOUND) - If the note is not
+	 * found.
+	 *
+	 * This handler method should map to the URL "/api/v1/note/{userid}/{id}/share"
+	 * using HTTP POST method.
+	 */
+	@PostMapping("/api/v1/note/{userid}/{id}/share")
+	public ResponseEntity<Object> shareNote(@PathVariable("userid") String userId, @PathVariable("id") int noteId,
+			@RequestBody NoteShare share) {
+		if (!NoteShare.READ.equals(share.getPermission()) && !NoteShare.EDIT.equals(share.getPermission())
+				|| null == share.getRecipientId() || userId.equals(share.getRecipientId())) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		ResponseEntity<Object> response = null;
+		try {
+			response = new ResponseEntity<>(
+					this.noteSharing.share(userId, noteId, share.getRecipientId(), share.getPermission()),
+					HttpStatus.CREATED);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will stop sharing a note with a user. This
+	 * handler method should return any one of the status messages basis on
+	 * different situations: 1. 200(OK) - If the share is removed successfully. 2.
+	 * 404(NOT FOUND) - If the note is not shared with that user.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/note/{userid}/{id}/share/{recipientId}" using HTTP DELETE method.
+	 */
+	@DeleteMapping("/api/v1/note/{userid}/{id}/share/{recipientId}")
+	public ResponseEntity<Object> unshareNote(@PathVariable("userid") String userId, @PathVariable("id") int noteId,
+			@PathVariable("recipientId") String recipientId) {
+		return this.noteSharing.unshare(userId, noteId, recipientId) ? new ResponseEntity<>(HttpStatus.OK)
+				: new ResponseEntity<>(HttpStatus.NOT_FOUND);
+	}
+
+	/*
+	 * Define a handler method which will get us the notes shared with a user,
+	 * newest share first. Every share carries its permission and the note with its
+	 * noteSnippet only. This handler method should return 200(OK).
+	 *
+	 * This handler method should map to the URL "/api/v1/note/shared/{userid}"
+	 * using HTTP GET method.
+	 */
+	@GetMapping("/api/v1/note/shared/{userid}")
+	public ResponseEntity<Object> getSharedNotes(@PathVariable("userid") String userId) {
+		List<NoteShare> shares = this.noteSharing.getSharedWithMe(userId);
+		this.referenceHydrator.hydrate(shares.stream().map(NoteShare::getNote).collect(Collectors.toList()));
+		return new ResponseEntity<>(shares, HttpStatus.OK);
+	}
+
+	/*
+	 * Define a handler method which will show a note shared with a user in full.
+	 * This handler method should return any one of the status messages basis on
+	 * different situations: 1. 200(OK) - If the note is found. 2. 404(NOT FOUND) -
+	 * If the note is not shared with the user or does not exist any more.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/note/shared/{userid}/{ownerid}/{id}" using HTTP GET method.
+	 */
+	@GetMapping("/api/v1/note/shared/{userid}/{ownerid}/{id}")
+	public ResponseEntity<Object> getSharedNote(@PathVariable("userid") String userId,
+			@PathVariable("ownerid") String ownerId, @PathVariable("id") int noteId) {
+		Optional<NoteShare> share = this.noteSharing.find(ownerId, noteId, userId);
+		if (!share.isPresent()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		ResponseEntity<Object> response = null;
+		try {
+			Note note = this.noteSharing.getSharedNote(share.get());
+			this.referenceHydrator.hydrate(Collections.singletonList(note));
+			response = new ResponseEntity<>(note, HttpStatus.OK);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
+	/*
+	 * Define a handler method which will replace the content of a note shared
+	 * editable with a user by the request body. This handler method should return
+	 * any one of the status messages basis on different situations: 1. 200(OK) -
+	 * If the content is updated. 2. 403(FORBIDDEN) - If the note is shared
+	 * read-only. 3. 404(NOT FOUND) - If the note is not shared with the user or
+	 * does not exist any more.
+	 *
+	 * This handler method should map to the URL
+	 * "/api/v1/note/shared/{userid}/{ownerid}/{id}" using HTTP PUT method.
+	 */
+	@PutMapping("/api/v1/note/shared/{userid}/{ownerid}/{id}")
+	public ResponseEntity<Object> updateSharedNote(@PathVariable("userid") String userId,
+			@PathVariable("ownerid") String ownerId, @PathVariable("id") int noteId,
+			@RequestBody String noteContent) {
+		Optional<NoteShare> share = this.noteSharing.find(ownerId, noteId, userId);
+		if (!share.isPresent()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		if (!share.get().isEditable()) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		ResponseEntity<Object> response = null;
+		try {
+			this.noteService.updateNoteContent(ownerId, noteId, noteContent);
+			response = new ResponseEntity<>(HttpStatus.OK);
+		} catch (NoteNotFoundExeption e) {
+			response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return response;
+	}
+
 }
@@ -0,0 +1,88 @@
+package com.stackroute.keepnote.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.Reminder;
+import com.stackroute.keepnote.service.EmbeddedCopyReconciler;
+
+/*
+ * Receives the change events sent by CategoryService and ReminderService. These
+ * URLs are meant for service-to-service calls and are not under /api/v1, so
+ * they are not covered by the JWT filter: every call has to carry the secret
+ * shared with the sending services, keepnote.note.events.secret, in the
+ * X-Keepnote-Event-Secret header. Without a configured secret every event is
+ * refused with 403(FORBIDDEN).
+ *
+ * The response is sent once the embedded copies are rewritten: 200(OK), or
+ * 503(SERVICE UNAVAILABLE) when the write failed and the sender should send
+ * the event again. The request thread is not held meanwhile.
+ */
+
+@RestController
+public class NoteEventController {
+
+	public static final String EVENT_SECRET_HEADER = "X-Keepnote-Event-Secret";
+
+	private EmbeddedCopyReconciler reconciler;
+	private byte[] secret;
+
+	@Autowired
+	public NoteEventController(EmbeddedCopyReconciler reconciler,
+			@Value("${keepnote.note.events.secret:}") String secret) {
+		this.reconciler = reconciler;
+		this.secret = secret.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@PutMapping("/internal/events/category/{id}")
+	public CompletableFuture<ResponseEntity<Object>> categoryUpdated(@PathVariable("id") String categoryId,
+			@RequestBody Category category, @RequestHeader(value = EVENT_SECRET_HEADER, required = false) String secret) {
+		return handle(secret, () -> this.reconciler.categoryUpdated(categoryId, category));
+	}
+
+	@DeleteMapping("/internal/events/category/{id}")
+	public CompletableFuture<ResponseEntity<Object>> categoryDeleted(@PathVariable("id") String categoryId,
+			@RequestHeader(value = EVENT_SECRET_HEADER, required = false) String secret) {
+		return handle(secret, () -> this.reconciler.categoryDeleted(categoryId));
+	}
+
+	@PutMapping("/internal/events/reminder/{id}")
+	public CompletableFuture<ResponseEntity<Object>> reminderUpdated(@PathVariable("id") String reminderId,
+			@RequestBody Reminder reminder, @RequestHeader(value = EVENT_SECRET_HEADER, required = false) String secret) {
+		return handle(secret, () -> this.reconciler.reminderUpdated(reminderId, reminder));
+	}
+
+	@DeleteMapping("/internal/events/reminder/{id}")
+	public CompletableFuture<ResponseEntity<Object>> reminderDeleted(@PathVariable("id") String reminderId,
+			@RequestHeader(value = EVENT_SECRET_HEADER, required = false) String secret) {
+		return handle(secret, () -> this.reconciler.reminderDeleted(reminderId));
+	}
+
+	private CompletableFuture<ResponseEntity<Object>> handle(String secret, Supplier<CompletableFuture<Void>> event) {
+		if (!isAuthorized(secret)) {
+			return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.FORBIDDEN));
+		}
+		return event.get().handle((done, failure) -> new ResponseEntity<Object>(
+				null == failure ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE));
+	}
+
+	private boolean isAuthorized(String secret) {
+		return this.secret.length > 0 && null != secret
+				&& MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
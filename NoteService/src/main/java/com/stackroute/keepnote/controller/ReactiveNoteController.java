@@ -0,0 +1,89 @@
+package com.stackroute.keepnote.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.service.ReactiveNoteService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Reactive counterpart of NoteController. It serves the same URLs with the same
+ * status codes, but runs on Netty and returns Mono/Flux so that no request
+ * thread waits on MongoDB. It replaces NoteController when the application is
+ * started with spring.main.web-application-type=reactive.
+ */
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveNoteController {
+
+	private ReactiveNoteService noteService;
+
+	@Autowired
+	public ReactiveNoteController(ReactiveNoteService noteService) {
+		this.noteService = noteService;
+	}
+
+	@PostMapping("/api/v1/note")
+	public Mono<ResponseEntity<Object>> createNote(@RequestBody Note note) {
+		return this.noteService.createNote(note).map(created -> created ? new ResponseEntity<>(HttpStatus.CREATED)
+				: new ResponseEntity<>(HttpStatus.CONFLICT));
+	}
+
+	@DeleteMapping("/api/v1/note/{id}")
+	public Mono<ResponseEntity<Object>> deleteNoteByUserId(@PathVariable("id") String userId) {
+		return this.noteService.deleteAllNotes(userId).map(deleted -> deleted ? new ResponseEntity<>(HttpStatus.OK)
+				: new ResponseEntity<>(HttpStatus.NOT_FOUND));
+	}
+
+	@DeleteMapping("/api/v1/note/{userid}/{id}")
+	public Mono<ResponseEntity<Object>> deleteNoteByUserId(@PathVariable("userid") String userId,
+			@PathVariable("id") int noteId) {
+		return this.noteService.deleteNote(userId, noteId).map(deleted -> deleted
+				? new ResponseEntity<>(HttpStatus.OK) : new ResponseEntity<>(HttpStatus.NOT_FOUND));
+	}
+
+	@PutMapping("/api/v1/note/{userid}/{id}")
+	public Mono<ResponseEntity<Object>> updateNote(@PathVariable("id") int noteId, @RequestBody Note note) {
+		return this.noteService.updateNote(note, noteId, note.getNoteCreatedBy())
+				.map(updated -> new ResponseEntity<Object>(HttpStatus.OK))
+				.defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+	}
+
+	/*
+	 * The notes are written to the response as they are read instead of being
+	 * collected into a list first.
+	 */
+	@GetMapping("/api/v1/note/{userid}")
+	public Flux<Note> getAllNotesByUserId(@PathVariable("userid") String userId) {
+		return this.noteService.getAllNoteByUserId(userId);
+	}
+
+	/*
+	 * Streams every note of a user as newline delimited JSON.
+	 */
+	@GetMapping(value = "/api/v1/note/{userid}/export", produces = MediaType.APPLICATION_STREAM_JSON_VALUE)
+	public Flux<Note> exportNotes(@PathVariable("userid") String userId) {
+		return this.noteService.exportNotes(userId);
+	}
+
+	@GetMapping("/api/v1/note/{userId}/{noteId}")
+	public Mono<ResponseEntity<Object>> getByNoteIdAndUserId(@PathVariable String userId, @PathVariable int noteId) {
+		return this.noteService.getNoteByNoteId(userId, noteId).map(note -> new ResponseEntity<Object>(HttpStatus.OK))
+				.defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.stackroute.keepnote.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/*
+ * Thrown when a write would take a user over the note storage quota. It is
+ * unchecked so that it passes the existing handler methods and is answered
+ * with 507(INSUFFICIENT STORAGE).
+ */
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class NoteQuotaExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public NoteQuotaExceededException(String message) {
+		super(message);
+	}
+}
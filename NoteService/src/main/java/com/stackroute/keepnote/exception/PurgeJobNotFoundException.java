@@ -0,0 +1,10 @@
+package com.stackroute.keepnote.exception;
+
+public class PurgeJobNotFoundException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public PurgeJobNotFoundException(String message) {
+		super(message);
+	}
+}
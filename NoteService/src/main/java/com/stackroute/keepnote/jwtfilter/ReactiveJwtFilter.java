@@ -0,0 +1,49 @@
+package com.stackroute.keepnote.jwtfilter;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import reactor.core.publisher.Mono;
+
+/* This class is the WebFlux counterpart of JwtFilter. It authorizes the API
+ * access when the application runs on the reactive web stack, where servlet
+ * filters are not applied.
+ */
+
+public class ReactiveJwtFilter implements WebFilter {
+
+	private static final String HDR_AUTH = "Authorization";
+
+	private static final String API_PATH = "/api/v1/";
+
+	private final String secret;
+
+	public ReactiveJwtFilter(String secret) {
+		this.secret = secret;
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (!exchange.getRequest().getPath().value().startsWith(API_PATH)) {
+			return chain.filter(exchange);
+		}
+		String authHeader = exchange.getRequest().getHeaders().getFirst(HDR_AUTH);
+		if (null == authHeader || !authHeader.startsWith("Bearer ")) {
+			return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "missing bearer token"));
+		}
+
+		String compactJWT = authHeader.substring(7);
+		try {
+			Claims token = Jwts.parser().setSigningKey(secret).parseClaimsJwt(compactJWT).getBody();
+			exchange.getAttributes().put("token", token);
+		} catch (Exception e) {
+			return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage()));
+		}
+		return chain.filter(exchange);
+	}
+}
@@ -0,0 +1,83 @@
+package com.stackroute.keepnote.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * A note moved out of its NoteUser document by the archival job. The note is
+ * kept as gzip compressed JSON; the archiveId is "{userId}/{noteId}" so that a
+ * single note is found by its _id, the userId index serves the deletion of all
+ * archived notes of a user.
+ */
+
+@Document
+public class ArchivedNote {
+
+	@Id
+	private String archiveId;
+	@Indexed
+	private String userId;
+	private int noteId;
+	private Date archivedAt;
+	private byte[] compressedNote;
+
+	public ArchivedNote() {
+		// Auto-generated constructor stub
+	}
+
+	public ArchivedNote(String userId, int noteId, byte[] compressedNote) {
+		this.archiveId = archiveId(userId, noteId);
+		this.userId = userId;
+		this.noteId = noteId;
+		this.archivedAt = new Date();
+		this.compressedNote = compressedNote;
+	}
+
+	public static String archiveId(String userId, int noteId) {
+		return userId + "/" + noteId;
+	}
+
+	public String getArchiveId() {
+		return this.archiveId;
+	}
+
+	public void setArchiveId(String archiveId) {
+		this.archiveId = archiveId;
+	}
+
+	public String getUserId() {
+		return this.userId;
+	}
+
+	public void setUserId(String userId) {
+		this.userId = userId;
+	}
+
+	public int getNoteId() {
+		return this.noteId;
+	}
+
+	public void setNoteId(int noteId) {
+		this.noteId = noteId;
+	}
+
+	public Date getArchivedAt() {
+		return this.archivedAt;
+	}
+
+	public void setArchivedAt(Date archivedAt) {
+		this.archivedAt = archivedAt;
+	}
+
+	public byte[] getCompressedNote() {
+		return this.compressedNote;
+	}
+
+	public void setCompressedNote(byte[] compressedNote) {
+		this.compressedNote = compressedNote;
+	}
+
+}
@@ -2,6 +2,8 @@ package com.stackroute.keepnote.model;
 
 import java.util.Date;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+
 public class Category {
 
 	/*
@@ -13,6 +15,8 @@ public class Category {
 	 * always initialized with the system date.
 	 */
 
+	// CategoryService serializes the id of its categories as "id"
+	@JsonAlias("id")
 	private String categoryId;
 	private String categoryName;
 	private String categoryDescription;
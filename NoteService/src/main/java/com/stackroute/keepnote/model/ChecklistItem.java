@@ -0,0 +1,53 @@
+package com.stackroute.keepnote.model;
+
+public class ChecklistItem {
+
+	/*
+	 * A checklist item of a note. The itemId is assigned by the service when the
+	 * item is added and is unique within its note.
+	 */
+
+	private String itemId;
+	private String text;
+	private boolean checked;
+
+	public ChecklistItem() {
+		// Auto-generated constructor stub
+	}
+
+	public ChecklistItem(String itemId, String text, boolean checked) {
+		this.itemId = itemId;
+		this.text = text;
+		this.checked = checked;
+	}
+
+	public String getItemId() {
+		return this.itemId;
+	}
+
+	public void setItemId(String itemId) {
+		this.itemId = itemId;
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	public boolean isChecked() {
+		return this.checked;
+	}
+
+	public void setChecked(boolean checked) {
+		this.checked = checked;
+	}
+
+	@Override
+	public String toString() {
+		return "ChecklistItem [itemId=" + itemId + ", text=" + text + ", checked=" + checked + "]";
+	}
+
+}
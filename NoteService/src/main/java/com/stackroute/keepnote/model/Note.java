@@ -3,6 +3,8 @@ package com.stackroute.keepnote.model;
 import java.util.Date;
 import java.util.List;
 
+import org.springframework.data.annotation.Transient;
+
 public class Note {
 
 	/*
@@ -13,16 +15,37 @@ public class Note {
 	 * toString method. The value of createdAt should not be accepted from the user
 	 * but should be always initialized with the system date.
 	 * 
+	 * Apart from its category a note can carry any number of free-form labels.
+	 * noteSnippet holds the beginning of noteContent, it is computed when the note
+	 * is written and returned by the list endpoints instead of the full content.
+	 * simHash is the SimHash fingerprint of the title and content, used to find
+	 * near-duplicate notes. rank is the position chosen by the user, notes are
+	 * listed in lexicographic order of their ranks. The checklist items are
+	 * changed through their own item-level operations only. noteContentHtml is
+	 * the rendered Markdown of noteContent, it is only set on responses and
+	 * never stored. A large noteContent is stored once in a NoteBlob, the note
+	 * then only keeps its SHA-256 in contentHash. version is incremented by
+	 * every write of the stored note, the archive only moves a note which is
+	 * still at the version it has read.
 	 */
 
 	private int noteId;
 	private String noteTitle;
 	private String noteContent;
+	private String noteSnippet;
 	private String noteStatus;
 	private Date createdAt;
 	private Category category;
 	private List<Reminder> reminders;
 	private String createdBy;
+	private List<String> labels;
+	private long simHash;
+	private String rank;
+	private List<ChecklistItem> checklist;
+	@Transient
+	private String noteContentHtml;
+	private String contentHash;
+	private long version;
 
 	public Note() {
 		// Auto-generated constructor stub
@@ -40,6 +63,19 @@ public class Note {
 		this.createdBy = reatedBy;
 	}
 
+	/* Copy of a note, the lists are shared with the original. */
+	public Note(Note note) {
+		this(note.noteId, note.noteTitle, note.noteContent, note.noteStatus, note.createdAt, note.category,
+				note.reminders, note.createdBy);
+		this.noteSnippet = note.noteSnippet;
+		this.labels = note.labels;
+		this.simHash = note.simHash;
+		this.rank = note.rank;
+		this.checklist = note.checklist;
+		this.contentHash = note.contentHash;
+		this.version = note.version;
+	}
+
 	public int getNoteId() {
 		return this.noteId;
 	}
@@ -64,6 +100,14 @@ public class Note {
 		this.noteContent = noteContent;
 	}
 
+	public String getNoteSnippet() {
+		return this.noteSnippet;
+	}
+
+	public void setNoteSnippet(String noteSnippet) {
+		this.noteSnippet = noteSnippet;
+	}
+
 	public String getNoteStatus() {
 		return this.noteStatus;
 	}
@@ -104,11 +148,67 @@ public class Note {
 		this.reminders = reminders;
 	}
 
+	public List<String> getLabels() {
+		return this.labels;
+	}
+
+	public void setLabels(List<String> labels) {
+		this.labels = labels;
+	}
+
+	public long getSimHash() {
+		return this.simHash;
+	}
+
+	public void setSimHash(long simHash) {
+		this.simHash = simHash;
+	}
+
+	public String getRank() {
+		return this.rank;
+	}
+
+	public void setRank(String rank) {
+		this.rank = rank;
+	}
+
+	public List<ChecklistItem> getChecklist() {
+		return this.checklist;
+	}
+
+	public void setChecklist(List<ChecklistItem> checklist) {
+		this.checklist = checklist;
+	}
+
+	public String getNoteContentHtml() {
+		return this.noteContentHtml;
+	}
+
+	public void setNoteContentHtml(String noteContentHtml) {
+		this.noteContentHtml = noteContentHtml;
+	}
+
+	public String getContentHash() {
+		return this.contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	@Override
 	public String toString() {
 		return "Note [noteId=" + noteId + ", noteTitle=" + noteTitle + ", noteContent=" + noteContent + ", noteStatus="
 				+ noteStatus + ", createdAt=" + createdAt + ", category=" + category + ", reminders=" + reminders
-				+ ", createdBy=" + createdBy + "]";
+				+ ", createdBy=" + createdBy + ", labels=" + labels + ", checklist=" + checklist + "]";
 	}
 
 }
@@ -0,0 +1,55 @@
+package com.stackroute.keepnote.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * A large note body stored once for all the notes with the same content. The
+ * blobId is the SHA-256 of the content and refCount the number of notes which
+ * refer to it through Note.contentHash.
+ */
+
+@Document
+public class NoteBlob {
+
+	@Id
+	private String blobId;
+	private String content;
+	private long refCount;
+	private Date createdAt;
+
+	public String getBlobId() {
+		return this.blobId;
+	}
+
+	public void setBlobId(String blobId) {
+		this.blobId = blobId;
+	}
+
+	public String getContent() {
+		return this.content;
+	}
+
+	public void setContent(String content) {
+		this.content = content;
+	}
+
+	public long getRefCount() {
+		return this.refCount;
+	}
+
+	public void setRefCount(long refCount) {
+		this.refCount = refCount;
+	}
+
+	public Date getCreatedAt() {
+		return this.createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.stackroute.keepnote.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * The data key of a user whose notes are encrypted at rest. Only the key
+ * wrapped by the master key is stored, the master key itself never leaves
+ * the keystore of the service.
+ */
+
+@Document
+public class NoteDataKey {
+
+	@Id
+	private String userId;
+	private byte[] wrappedKey;
+	private Date createdAt;
+
+	public NoteDataKey() {
+		// Auto-generated constructor stub
+	}
+
+	public NoteDataKey(String userId, byte[] wrappedKey, Date createdAt) {
+		this.userId = userId;
+		this.wrappedKey = wrappedKey;
+		this.createdAt = createdAt;
+	}
+
+	public String getUserId() {
+		return this.userId;
+	}
+
+	public void setUserId(String userId) {
+		this.userId = userId;
+	}
+
+	public byte[] getWrappedKey() {
+		return this.wrappedKey;
+	}
+
+	public void setWrappedKey(byte[] wrappedKey) {
+		this.wrappedKey = wrappedKey;
+	}
+
+	public Date getCreatedAt() {
+		return this.createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+
+}
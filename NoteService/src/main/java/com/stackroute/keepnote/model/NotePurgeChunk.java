@@ -0,0 +1,79 @@
+package com.stackroute.keepnote.model;
+
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * One chunk of the userIds of a purge job. The ids are stored in chunks apart
+ * from the job, so the job document stays small however many users it purges
+ * and is not rewritten with all of them after every chunk. The chunkId is
+ * "{jobId}/{seq}", the job only records the seq of the next chunk to process.
+ */
+
+@Document
+public class NotePurgeChunk {
+
+	@Id
+	private String chunkId;
+	@Indexed
+	private String jobId;
+	private int seq;
+	private List<String> userIds;
+
+	public NotePurgeChunk() {
+		// Auto-generated constructor stub
+	}
+
+	public NotePurgeChunk(String jobId, int seq, List<String> userIds) {
+		this.chunkId = chunkId(jobId, seq);
+		this.jobId = jobId;
+		this.seq = seq;
+		this.userIds = userIds;
+	}
+
+	public static String chunkId(String jobId, int seq) {
+		return jobId + "/" + seq;
+	}
+
+	public String getChunkId() {
+		return this.chunkId;
+	}
+
+	public void setChunkId(String chunkId) {
+		this.chunkId = chunkId;
+	}
+
+	public String getJobId() {
+		return this.jobId;
+	}
+
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+
+	public int getSeq() {
+		return this.seq;
+	}
+
+	public void setSeq(int seq) {
+		this.seq = seq;
+	}
+
+	public List<String> getUserIds() {
+		return this.userIds;
+	}
+
+	public void setUserIds(List<String> userIds) {
+		this.userIds = userIds;
+	}
+
+	@Override
+	public String toString() {
+		return "NotePurgeChunk [chunkId=" + chunkId + ", jobId=" + jobId + ", seq=" + seq + ", userIds=" + userIds
+				+ "]";
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.stackroute.keepnote.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * A bulk purge of the notes of many users. The job is stored in MongoDB and
+ * records how many of its chunks of userIds have been processed, so that an
+ * interrupted purge continues from the last completed chunk. The userIds
+ * themselves are stored as NotePurgeChunks.
+ */
+
+@Document
+public class NotePurgeJob {
+
+	public static final String RUNNING = "RUNNING";
+	public static final String COMPLETED = "COMPLETED";
+	public static final String FAILED = "FAILED";
+
+	@Id
+	private String jobId;
+	private int totalUsers;
+	private int processedChunks;
+	private int processedUsers;
+	private long deletedUsers;
+	private String status;
+	private String lastError;
+	private Date createdAt;
+	private Date completedAt;
+
+	public NotePurgeJob() {
+		// Auto-generated constructor stub
+	}
+
+	public NotePurgeJob(String jobId, int totalUsers) {
+		this.jobId = jobId;
+		this.totalUsers = totalUsers;
+		this.status = RUNNING;
+		this.createdAt = new Date();
+	}
+
+	public String getJobId() {
+		return this.jobId;
+	}
+
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+
+	public int getTotalUsers() {
+		return this.totalUsers;
+	}
+
+	public void setTotalUsers(int totalUsers) {
+		this.totalUsers = totalUsers;
+	}
+
+	public int getProcessedChunks() {
+		return this.processedChunks;
+	}
+
+	public void setProcessedChunks(int processedChunks) {
+		this.processedChunks = processedChunks;
+	}
+
+	public int getProcessedUsers() {
+		return this.processedUsers;
+	}
+
+	public void setProcessedUsers(int processedUsers) {
+		this.processedUsers = processedUsers;
+	}
+
+	public long getDeletedUsers() {
+		return this.deletedUsers;
+	}
+
+	public void setDeletedUsers(long deletedUsers) {
+		this.deletedUsers = deletedUsers;
+	}
+
+	public String getStatus() {
+		return this.status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getLastError() {
+		return this.lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	public Date getCreatedAt() {
+		return this.createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public Date getCompletedAt() {
+		return this.completedAt;
+	}
+
+	public void setCompletedAt(Date completedAt) {
+		this.completedAt = completedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "NotePurgeJob [jobId=" + jobId + ", totalUsers=" + totalUsers + ", processedChunks=" + processedChunks
+				+ ", processedUsers=" + processedUsers + ", deletedUsers=" + deletedUsers + ", status=" + status + ", lastError=" + lastError
+				+ ", createdAt=" + createdAt + ", completedAt=" + completedAt + "]";
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.stackroute.keepnote.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * A note shared by its owner with another user, either read-only or editable.
+ * Shares are kept apart from the NoteUser documents so that the notes shared
+ * with a user are found through the recipient index instead of a scan of every
+ * NoteUser; the owner index serves the removal of the shares of a note. The
+ * shareId is "{ownerId}/{noteId}/{recipientId}", sharing a note twice with the
+ * same user replaces the previous share. note is only set on responses.
+ */
+
+@Document
+@CompoundIndexes({ @CompoundIndex(name = "recipient_id", def = "{'recipientId': 1, 'sharedAt': -1}"),
+		@CompoundIndex(name = "owner_note_id", def = "{'ownerId': 1, 'noteId': 1}") })
+public class NoteShare {
+
+	public static final String READ = "read";
+	public static final String EDIT = "edit";
+
+	@Id
+	private String shareId;
+	private String ownerId;
+	private int noteId;
+	private String recipientId;
+	private String permission;
+	private Date sharedAt;
+	@Transient
+	private Note note;
+
+	public NoteShare() {
+		// Auto-generated constructor stub
+	}
+
+	public NoteShare(String ownerId, int noteId, String recipientId, String permission) {
+		this.shareId = shareId(ownerId, noteId, recipientId);
+		this.ownerId = ownerId;
+		this.noteId = noteId;
+		this.recipientId = recipientId;
+		this.permission = permission;
+		this.sharedAt = new Date();
+	}
+
+	public static String shareId(String ownerId, int noteId, String recipientId) {
+		return ownerId + "/" + noteId + "/" + recipientId;
+	}
+
+	public boolean isEditable() {
+		return EDIT.equals(this.permission);
+	}
+
+	public String getShareId() {
+		return this.shareId;
+	}
+
+	public void setShareId(String shareId) {
+		this.shareId = shareId;
+	}
+
+	public String getOwnerId() {
+		return this.ownerId;
+	}
+
+	public void setOwnerId(String ownerId) {
+		this.ownerId = ownerId;
+	}
+
+	public int getNoteId() {
+		return this.noteId;
+	}
+
+	public void setNoteId(int noteId) {
+		this.noteId = noteId;
+	}
+
+	public String getRecipientId() {
+		return this.recipientId;
+	}
+
+	public void setRecipientId(String recipientId) {
+		this.recipientId = recipientId;
+	}
+
+	public String getPermission() {
+		return this.permission;
+	}
+
+	public void setPermission(String permission) {
+		this.permission = permission;
+	}
+
+	public Date getSharedAt() {
+		return this.sharedAt;
+	}
+
+	public void setSharedAt(Date sharedAt) {
+		this.sharedAt = sharedAt;
+	}
+
+	public Note getNote() {
+		return this.note;
+	}
+
+	public void setNote(Note note) {
+		this.note = note;
+	}
+
+}
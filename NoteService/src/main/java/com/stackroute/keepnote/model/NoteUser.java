@@ -3,14 +3,25 @@ package com.stackroute.keepnote.model;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /*
  * Please note that this class is annotated with @Document annotation
  * @Document identifies a domain object to be persisted to MongoDB.
+ * The indexes on the embedded category and reminder ids are used to find the
+ * notes whose copies have to be refreshed when a category or reminder changes.
+ * There is no index on notes.createdAt: the recent notes are sorted after an
+ * $unwind, which no index can serve, and the archive pages through the users
+ * by _id.
+ * usedBytes is the stored size of the notes, kept up to date by every write
+ * and checked against the per-user quota.
  *  */
 
 @Document
+@CompoundIndexes({ @CompoundIndex(name = "notes_category_id", def = "{'notes.category.categoryId': 1}"),
+		@CompoundIndex(name = "notes_reminders_id", def = "{'notes.reminders.reminderId': 1}") })
 public class NoteUser {
 
 	/*
@@ -22,6 +33,7 @@ public class NoteUser {
     @Id
     private String userId;
     private List<Note> notes;
+    private long usedBytes;
 
 
     public String getUserId() {
@@ -39,4 +51,12 @@ public class NoteUser {
     public void setNotes(List<Note> notes) {
         this.notes = notes;
     }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public void setUsedBytes(long usedBytes) {
+        this.usedBytes = usedBytes;
+    }
 }
@@ -0,0 +1,23 @@
+package com.stackroute.keepnote.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.stackroute.keepnote.model.ArchivedNote;
+
+/*
+* This class is implementing the MongoRepository interface for ArchivedNote.
+* Annotate this class with @Repository annotation
+* */
+
+@Repository
+public interface ArchivedNoteRepository extends MongoRepository<ArchivedNote, String> {
+
+	/* This method will remove every archived note of a user. */
+	void deleteByUserId(String userId);
+
+	/* This method will find every archived note of a user, most recently archived first. */
+	List<ArchivedNote> findByUserIdOrderByArchivedAtDesc(String userId);
+}
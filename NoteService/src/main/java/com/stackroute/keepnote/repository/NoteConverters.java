@@ -0,0 +1,268 @@
+package com.stackroute.keepnote.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.ChecklistItem;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.model.Reminder;
+
+/*
+ * Hand-written converters between NoteUser/Note and their BSON documents. The
+ * reflective MappingMongoConverter is a large share of the CPU spent reading
+ * big NoteUser documents; these converters read and write the fields directly
+ * in the layout of the mapping converter (same field names, null fields
+ * omitted), so both read each other's documents.
+ *
+ * Only the readers are registered with MongoCustomConversions: a registered
+ * writer turns its source type into a simple type for the mapping context,
+ * which would drop the persistent entity of NoteUser with its repository and
+ * indexes. The note writer gives the exact embedded size of a note to the
+ * quota instead.
+ *
+ * A field added to one of the models must be added here as well; the
+ * round-trip test reads and writes against the mapping converter.
+ */
+public final class NoteConverters {
+
+	/* The fields of a stored note besides noteId and version, in the order they are written. */
+	private static final List<String> NOTE_FIELDS = Arrays.asList("noteTitle", "noteContent", "noteSnippet",
+			"noteStatus", "createdAt", "category", "reminders", "createdBy", "labels", "simHash", "rank", "checklist",
+			"contentHash");
+
+	private NoteConverters() {
+	}
+
+	public static List<Converter<?, ?>> readers() {
+		return Arrays.asList(new NoteUserReader(), new NoteReader());
+	}
+
+	@ReadingConverter
+	public static class NoteUserReader implements Converter<Document, NoteUser> {
+
+		@Override
+		public NoteUser convert(Document document) {
+			NoteUser noteUser = new NoteUser();
+			noteUser.setUserId(document.getString("_id"));
+			noteUser.setNotes(readList(document, "notes", value -> readNote((Document) value)));
+			noteUser.setUsedBytes(readLong(document, "usedBytes"));
+			return noteUser;
+		}
+
+	}
+
+	@WritingConverter
+	public static class NoteUserWriter implements Converter<NoteUser, Document> {
+
+		@Override
+		public Document convert(NoteUser noteUser) {
+			Document document = new Document();
+			put(document, "_id", noteUser.getUserId());
+			put(document, "notes", writeList(noteUser.getNotes(), NoteConverters::writeNote));
+			document.put("usedBytes", noteUser.getUsedBytes());
+			return document;
+		}
+
+	}
+
+	/* Notes are also read on their own, e.g. from aggregations replacing the root by a note. */
+	@ReadingConverter
+	public static class NoteReader implements Converter<Document, Note> {
+
+		@Override
+		public Note convert(Document document) {
+			return readNote(document);
+		}
+
+	}
+
+	@WritingConverter
+	public static class NoteWriter implements Converter<Note, Document> {
+
+		@Override
+		public Document convert(Note note) {
+			return writeNote(note);
+		}
+
+	}
+
+	/*
+	 * A positional update replacing the fields of an embedded note, e.g. on
+	 * "notes.$": every field is set, or unset when null, except the noteId and
+	 * the kept fields, which have operations of their own. The version of the
+	 * stored note is incremented.
+	 */
+	public static Update setNote(String path, Note note, String... keptFields) {
+		Document document = writeNote(note);
+		List<String> kept = Arrays.asList(keptFields);
+		Update update = new Update();
+		for (String field : NOTE_FIELDS) {
+			if (kept.contains(field)) {
+				continue;
+			}
+			if (document.containsKey(field)) {
+				update.set(path + "." + field, document.get(field));
+			} else {
+				update.unset(path + "." + field);
+			}
+		}
+		return update.inc(path + ".version", 1);
+	}
+
+	private static Note readNote(Document document) {
+		Note note = new Note();
+		note.setNoteId(readInt(document, "noteId"));
+		note.setNoteTitle(document.getString("noteTitle"));
+		note.setNoteContent(document.getString("noteContent"));
+		note.setNoteSnippet(document.getString("noteSnippet"));
+		note.setNoteStatus(document.getString("noteStatus"));
+		note.setNoteCreationDate(document.getDate("createdAt"));
+		note.setCategory(readCategory((Document) document.get("category")));
+		note.setReminders(readList(document, "reminders", NoteConverters::readReminder));
+		note.setNoteCreatedBy(document.getString("createdBy"));
+		note.setLabels(readList(document, "labels", String.class::cast));
+		note.setSimHash(readLong(document, "simHash"));
+		note.setRank(document.getString("rank"));
+		note.setChecklist(readList(document, "checklist", NoteConverters::readChecklistItem));
+		note.setContentHash(document.getString("contentHash"));
+		note.setVersion(readLong(document, "version"));
+		return note;
+	}
+
+	private static Document writeNote(Note note) {
+		Document document = new Document();
+		document.put("noteId", note.getNoteId());
+		put(document, "noteTitle", note.getNoteTitle());
+		put(document, "noteContent", note.getNoteContent());
+		put(document, "noteSnippet", note.getNoteSnippet());
+		put(document, "noteStatus", note.getNoteStatus());
+		put(document, "createdAt", note.getNoteCreationDate());
+		put(document, "category", writeCategory(note.getCategory()));
+		put(document, "reminders", writeList(note.getReminders(), NoteConverters::writeReminder));
+		put(document, "createdBy", note.getNoteCreatedBy());
+		put(document, "labels", null == note.getLabels() ? null : new ArrayList<>(note.getLabels()));
+		document.put("simHash", note.getSimHash());
+		put(document, "rank", note.getRank());
+		put(document, "checklist", writeList(note.getChecklist(), NoteConverters::writeChecklistItem));
+		put(document, "contentHash", note.getContentHash());
+		document.put("version", note.getVersion());
+		return document;
+	}
+
+	private static Category readCategory(Document document) {
+		if (null == document) {
+			return null;
+		}
+		Category category = new Category();
+		category.setCategoryId(document.getString("categoryId"));
+		category.setCategoryName(document.getString("categoryName"));
+		category.setCategoryDescription(document.getString("categoryDescription"));
+		category.setCategoryCreatedBy(document.getString("categoryCreatedBy"));
+		category.setCategoryCreationDate(document.getDate("categoryCreationDate"));
+		return category;
+	}
+
+	private static Document writeCategory(Category category) {
+		if (null == category) {
+			return null;
+		}
+		Document document = new Document();
+		put(document, "categoryId", category.getCategoryId());
+		put(document, "categoryName", category.getCategoryName());
+		put(document, "categoryDescription", category.getCategoryDescription());
+		put(document, "categoryCreatedBy", category.getCategoryCreatedBy());
+		put(document, "categoryCreationDate", category.getCategoryCreationDate());
+		return document;
+	}
+
+	private static Reminder readReminder(Object value) {
+		Document document = (Document) value;
+		Reminder reminder = new Reminder();
+		reminder.setReminderId(document.getString("reminderId"));
+		reminder.setReminderName(document.getString("reminderName"));
+		reminder.setReminderDescription(document.getString("reminderDescription"));
+		reminder.setReminderType(document.getString("reminderType"));
+		reminder.setReminderCreatedBy(document.getString("reminderCreatedBy"));
+		reminder.setReminderCreationDate(document.getDate("reminderCreationDate"));
+		return reminder;
+	}
+
+	private static Document writeReminder(Reminder reminder) {
+		Document document = new Document();
+		put(document, "reminderId", reminder.getReminderId());
+		put(document, "reminderName", reminder.getReminderName());
+		put(document, "reminderDescription", reminder.getReminderDescription());
+		put(document, "reminderType", reminder.getReminderType());
+		put(document, "reminderCreatedBy", reminder.getReminderCreatedBy());
+		put(document, "reminderCreationDate", reminder.getReminderCreationDate());
+		return document;
+	}
+
+	private static ChecklistItem readChecklistItem(Object value) {
+		Document document = (Document) value;
+		ChecklistItem item = new ChecklistItem();
+		item.setItemId(document.getString("itemId"));
+		item.setText(document.getString("text"));
+		item.setChecked(Boolean.TRUE.equals(document.getBoolean("checked")));
+		return item;
+	}
+
+	private static Document writeChecklistItem(ChecklistItem item) {
+		Document document = new Document();
+		put(document, "itemId", item.getItemId());
+		put(document, "text", item.getText());
+		document.put("checked", item.isChecked());
+		return document;
+	}
+
+	/* Lists keep null elements as they are, like the mapping converter does. */
+	private static <T> List<T> readList(Document document, String key, Function<Object, T> reader) {
+		List<?> values = (List<?>) document.get(key);
+		if (null == values) {
+			return null;
+		}
+		List<T> list = new ArrayList<>(values.size());
+		for (Object value : values) {
+			list.add(null == value ? null : reader.apply(value));
+		}
+		return list;
+	}
+
+	private static <T> List<Object> writeList(List<T> values, Function<T, Object> writer) {
+		if (null == values) {
+			return null;
+		}
+		List<Object> list = new ArrayList<>(values.size());
+		for (T value : values) {
+			list.add(null == value ? null : writer.apply(value));
+		}
+		return list;
+	}
+
+	private static int readInt(Document document, String key) {
+		Object value = document.get(key);
+		return null == value ? 0 : ((Number) value).intValue();
+	}
+
+	private static long readLong(Document document, String key) {
+		Object value = document.get(key);
+		return null == value ? 0L : ((Number) value).longValue();
+	}
+
+	private static void put(Document document, String key, Object value) {
+		if (null != value) {
+			document.put(key, value);
+		}
+	}
+
+}
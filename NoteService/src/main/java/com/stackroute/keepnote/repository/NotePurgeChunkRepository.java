@@ -0,0 +1,18 @@
+package com.stackroute.keepnote.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.stackroute.keepnote.model.NotePurgeChunk;
+
+/*
+* This class is implementing the MongoRepository interface for NotePurgeChunk.
+* Annotate this class with @Repository annotation
+* */
+
+@Repository
+public interface NotePurgeChunkRepository extends MongoRepository<NotePurgeChunk, String> {
+
+	/* This method will remove the chunks of a purge job once it is done. */
+	void deleteByJobId(String jobId);
+}
@@ -0,0 +1,23 @@
+package com.stackroute.keepnote.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.stackroute.keepnote.model.NotePurgeJob;
+
+/*
+* This class is implementing the MongoRepository interface for NotePurgeJob.
+* Annotate this class with @Repository annotation
+* */
+
+@Repository
+public interface NotePurgeJobRepository extends MongoRepository<NotePurgeJob, String> {
+
+	/*
+	 * This method will search for all purge jobs in a given status, it is used to
+	 * pick up the jobs interrupted by a restart.
+	 */
+	List<NotePurgeJob> findByStatus(String status);
+}
@@ -0,0 +1,26 @@
+package com.stackroute.keepnote.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.stackroute.keepnote.model.NoteShare;
+
+/*
+* This class is implementing the MongoRepository interface for NoteShare.
+* Annotate this class with @Repository annotation
+* */
+
+@Repository
+public interface NoteShareRepository extends MongoRepository<NoteShare, String> {
+
+	/* This method will search for all notes shared with a user, newest first. */
+	List<NoteShare> findByRecipientIdOrderBySharedAtDesc(String recipientId);
+
+	/* This method will search for all shares of a note. */
+	List<NoteShare> findByOwnerIdAndNoteId(String ownerId, int noteId);
+
+	/* This method will search for all shares of every note of a user. */
+	List<NoteShare> findByOwnerId(String ownerId);
+}
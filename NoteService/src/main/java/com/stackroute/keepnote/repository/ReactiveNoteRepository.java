@@ -0,0 +1,16 @@
+package com.stackroute.keepnote.repository;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.stackroute.keepnote.model.NoteUser;
+
+/*
+* This class is implementing the ReactiveMongoRepository interface for Note. It
+* is used by the reactive variant of the service instead of NoteRepository.
+* */
+
+@Repository
+public interface ReactiveNoteRepository extends ReactiveMongoRepository<NoteUser, String> {
+
+}
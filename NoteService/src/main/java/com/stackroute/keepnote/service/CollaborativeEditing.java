@@ -0,0 +1,199 @@
+package com.stackroute.keepnote.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.service.SequenceCrdt.Operation;
+
+/*
+ * The notes being edited collaboratively. While a note has editors, its content
+ * lives in a SequenceCrdt which merges the operations of all editors. The
+ * merged content is written back to MongoDB every checkpoint-interval-ms when
+ * it changed, and when the last editor leaves, instead of once per keystroke.
+ *
+ * The checkpoint and a leaving editor may write the same note at once. The
+ * writes of a note are serialized, and every change of the document bumps its
+ * version: a write records the version its content includes and is skipped
+ * when that version is already written, so an older content never lands
+ * after a newer one.
+ */
+
+@Component
+public class CollaborativeEditing {
+
+	private static final Log log = LogFactory.getLog(CollaborativeEditing.class);
+
+	private final NoteService noteService;
+	private final long checkpointIntervalMs;
+
+	private final Map<String, EditedNote> editedNotes = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService checkpointer;
+
+	@Autowired
+	public CollaborativeEditing(NoteService noteService,
+			@Value("${keepnote.note.collaboration.checkpoint-interval-ms:5000}") long checkpointIntervalMs) {
+		this.noteService = noteService;
+		this.checkpointIntervalMs = checkpointIntervalMs;
+	}
+
+	@PostConstruct
+	public void start() {
+		this.checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "note-collaboration-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.checkpointer.scheduleWithFixedDelay(this::checkpoint, this.checkpointIntervalMs,
+				this.checkpointIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.checkpointer.shutdown();
+		checkpoint();
+	}
+
+	/* Adds an editor to a note and returns the document it edits. */
+	public SequenceCrdt join(String userId, int noteId) throws NoteNotFoundExeption {
+		String key = key(userId, noteId);
+		while (true) {
+			// loaded outside of compute, which must not block on MongoDB
+			SequenceCrdt loaded = this.editedNotes.containsKey(key) ? null
+					: new SequenceCrdt(this.noteService.getNoteByNoteId(userId, noteId).getNoteContent());
+			EditedNote joined = this.editedNotes.compute(key, (unused, current) -> {
+				EditedNote editedNote = current;
+				if (null == editedNote) {
+					if (null == loaded) {
+						// the last editor left in the meantime, load again
+						return null;
+					}
+					editedNote = new EditedNote(userId, noteId, loaded);
+				}
+				editedNote.editors++;
+				return editedNote;
+			});
+			if (null != joined) {
+				return joined.document;
+			}
+		}
+	}
+
+	/* Merges the operations of an editor and returns those which changed the document. */
+	public List<Operation> apply(String userId, int noteId, List<Operation> operations) {
+		EditedNote editedNote = this.editedNotes.get(key(userId, noteId));
+		if (null == editedNote) {
+			return operations.subList(0, 0);
+		}
+		List<Operation> applied = operations.stream().filter(editedNote.document::apply).collect(Collectors.toList());
+		if (!applied.isEmpty()) {
+			// after the operations, so a write which reads this version reads them too
+			editedNote.version.incrementAndGet();
+		}
+		return applied;
+	}
+
+	/*
+	 * Removes an editor. When it was the last one the note is written back
+	 * before it is dropped, so that a new editor loads the merged content. The
+	 * write happens outside of compute; meanwhile the note stays registered, so
+	 * an editor joining during the write keeps editing the merged document. A
+	 * note whose write failed stays registered too and the checkpoint retries it.
+	 */
+	public void leave(String userId, int noteId) {
+		String key = key(userId, noteId);
+		EditedNote[] idle = new EditedNote[1];
+		this.editedNotes.computeIfPresent(key, (unused, editedNote) -> {
+			if (--editedNote.editors == 0) {
+				idle[0] = editedNote;
+			}
+			return editedNote;
+		});
+		if (null != idle[0] && write(idle[0])) {
+			dropIfIdle(key, idle[0]);
+		}
+	}
+
+	public void checkpoint() {
+		this.editedNotes.forEach((key, editedNote) -> {
+			if (write(editedNote)) {
+				dropIfIdle(key, editedNote);
+			}
+		});
+	}
+
+	/* Drops a note which has no editors left and nothing to write. */
+	private void dropIfIdle(String key, EditedNote idle) {
+		this.editedNotes.computeIfPresent(key,
+				(unused, editedNote) -> editedNote == idle && 0 == editedNote.editors && !editedNote.isDirty() ? null
+						: editedNote);
+	}
+
+	/* Writes the merged content if it changed since the last write, false when the write failed. */
+	private boolean write(EditedNote editedNote) {
+		synchronized (editedNote) {
+			// read before the content, which then includes at least this version
+			long version = editedNote.version.get();
+			if (version <= editedNote.writtenVersion) {
+				return true;
+			}
+			try {
+				this.noteService.updateNoteContent(editedNote.userId, editedNote.noteId,
+						editedNote.document.text());
+				editedNote.writtenVersion = version;
+				return true;
+			} catch (NoteNotFoundExeption e) {
+				// deleted while edited, there is nothing left to write to
+				log.warn("note " + editedNote.noteId + " of user " + editedNote.userId + " was deleted while edited");
+				editedNote.writtenVersion = version;
+				return true;
+			} catch (Exception e) {
+				log.error("checkpoint of note " + editedNote.noteId + " of user " + editedNote.userId + " failed: "
+						+ e.getMessage());
+				return false;
+			}
+		}
+	}
+
+	private static String key(String userId, int noteId) {
+		return userId + "/" + noteId;
+	}
+
+	private static final class EditedNote {
+
+		private final String userId;
+		private final int noteId;
+		private final SequenceCrdt document;
+		private final AtomicLong version = new AtomicLong();
+		private int editors;
+		// only written while holding the lock of the note
+		private volatile long writtenVersion;
+
+		private EditedNote(String userId, int noteId, SequenceCrdt document) {
+			this.userId = userId;
+			this.noteId = noteId;
+			this.document = document;
+		}
+
+		private boolean isDirty() {
+			return this.version.get() > this.writtenVersion;
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package com.stackroute.keepnote.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.ChecklistItem;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.Reminder;
+
+/*
+ * Compact in-memory form of a list of notes, for the caches of the service. A
+ * Note costs far more heap than its payload: a Date object per note, the same
+ * status, user and label strings over and over and a full copy of its
+ * category and reminders in every note. Here every note is a flat record with
+ * the creation date as epoch millis, the repeated strings shared within the
+ * list, the category and reminders referenced by id from one table per list,
+ * and the content kept as UTF-8 bytes which are only decoded into a String
+ * when the note is materialized.
+ */
+public final class CompactNotes {
+
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final CompactNote[] notes;
+	private final Map<String, Category> categories;
+	private final Map<String, Reminder> reminders;
+
+	private CompactNotes(CompactNote[] notes, Map<String, Category> categories, Map<String, Reminder> reminders) {
+		this.notes = notes;
+		this.categories = categories;
+		this.reminders = reminders;
+	}
+
+	public static CompactNotes of(List<Note> notes) {
+		Map<String, String> strings = new HashMap<>();
+		Map<String, Category> categories = new HashMap<>();
+		Map<String, Reminder> reminders = new HashMap<>();
+		CompactNote[] compact = new CompactNote[notes.size()];
+		for (int index = 0; index < compact.length; index++) {
+			compact[index] = new CompactNote(notes.get(index), strings, categories, reminders);
+		}
+		return new CompactNotes(compact, categories, reminders);
+	}
+
+	public int size() {
+		return this.notes.length;
+	}
+
+	/* Materializes the first limit notes as new Note objects. */
+	public List<Note> toNotes(int limit) {
+		int count = Math.min(limit, this.notes.length);
+		List<Note> materialized = new ArrayList<>(count);
+		for (int index = 0; index < count; index++) {
+			materialized.add(this.notes[index].toNote(this.categories, this.reminders));
+		}
+		return materialized;
+	}
+
+	public List<Note> toNotes() {
+		return toNotes(this.notes.length);
+	}
+
+	private static String share(Map<String, String> strings, String value) {
+		return null == value ? null : strings.computeIfAbsent(value, key -> key);
+	}
+
+	private static final class CompactNote {
+
+		private final int noteId;
+		private final long createdAt;
+		private final long simHash;
+		private final String noteTitle;
+		private final String noteSnippet;
+		private final String noteStatus;
+		private final String createdBy;
+		private final String rank;
+		private final String categoryId;
+		private final String[] reminderIds;
+		private final String[] labels;
+		private final ChecklistItem[] checklist;
+		private final byte[] noteContent;
+
+		private CompactNote(Note note, Map<String, String> strings, Map<String, Category> categories,
+				Map<String, Reminder> reminders) {
+			this.noteId = note.getNoteId();
+			this.createdAt = null == note.getNoteCreationDate() ? NO_DATE : note.getNoteCreationDate().getTime();
+			this.simHash = note.getSimHash();
+			this.noteTitle = note.getNoteTitle();
+			this.noteSnippet = note.getNoteSnippet();
+			this.noteStatus = share(strings, note.getNoteStatus());
+			this.createdBy = share(strings, note.getNoteCreatedBy());
+			this.rank = note.getRank();
+			Category category = note.getCategory();
+			this.categoryId = null == category ? null : share(strings, String.valueOf(category.getCategoryId()));
+			if (null != category) {
+				categories.putIfAbsent(this.categoryId, category);
+			}
+			if (null == note.getReminders()) {
+				this.reminderIds = null;
+			} else {
+				this.reminderIds = note.getReminders().stream().map(reminder -> {
+					String reminderId = share(strings, String.valueOf(reminder.getReminderId()));
+					reminders.putIfAbsent(reminderId, reminder);
+					return reminderId;
+				}).toArray(String[]::new);
+			}
+			this.labels = null == note.getLabels() ? null
+					: note.getLabels().stream().map(label -> share(strings, label)).toArray(String[]::new);
+			this.checklist = null == note.getChecklist() ? null : note.getChecklist().toArray(new ChecklistItem[0]);
+			this.noteContent = null == note.getNoteContent() ? null
+					: note.getNoteContent().getBytes(StandardCharsets.UTF_8);
+		}
+
+		private Note toNote(Map<String, Category> categories, Map<String, Reminder> reminders) {
+			Note note = new Note();
+			note.setNoteId(this.noteId);
+			note.setNoteCreationDate(NO_DATE == this.createdAt ? null : new Date(this.createdAt));
+			note.setSimHash(this.simHash);
+			note.setNoteTitle(this.noteTitle);
+			note.setNoteSnippet(this.noteSnippet);
+			note.setNoteStatus(this.noteStatus);
+			note.setNoteCreatedBy(this.createdBy);
+			note.setRank(this.rank);
+			note.setCategory(null == this.categoryId ? null : categories.get(this.categoryId));
+			if (null != this.reminderIds) {
+				List<Reminder> noteReminders = new ArrayList<>(this.reminderIds.length);
+				for (String reminderId : this.reminderIds) {
+					noteReminders.add(reminders.get(reminderId));
+				}
+				note.setReminders(noteReminders);
+			}
+			note.setLabels(null == this.labels ? null : new ArrayList<>(Arrays.asList(this.labels)));
+			note.setChecklist(null == this.checklist ? null : new ArrayList<>(Arrays.asList(this.checklist)));
+			note.setNoteContent(null == this.noteContent ? null : new String(this.noteContent, StandardCharsets.UTF_8));
+			return note;
+		}
+	}
+
+}
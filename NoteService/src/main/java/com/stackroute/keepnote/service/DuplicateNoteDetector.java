@@ -0,0 +1,109 @@
+package com.stackroute.keepnote.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.model.Note;
+
+/*
+ * Finds near-duplicate notes by their SimHash fingerprints. The 64 bits are
+ * split into four 16-bit bands and only notes sharing at least one band are
+ * compared, instead of every pair of notes. Two fingerprints at a distance of
+ * three bits or less always share a band, so nothing is missed for the default
+ * max-distance.
+ */
+
+@Component
+public class DuplicateNoteDetector {
+
+	private static final int BANDS = 4;
+	private static final int BAND_BITS = 64 / BANDS;
+	private static final long BAND_MASK = (1L << BAND_BITS) - 1;
+
+	private final boolean dedupeOnCreate;
+	private final int maxDistance;
+
+	@Autowired
+	public DuplicateNoteDetector(@Value("${keepnote.note.duplicates.dedupe-on-create:false}") boolean dedupeOnCreate,
+			@Value("${keepnote.note.duplicates.max-distance:3}") int maxDistance) {
+		this.dedupeOnCreate = dedupeOnCreate;
+		this.maxDistance = maxDistance;
+	}
+
+	public boolean isDedupeOnCreate() {
+		return this.dedupeOnCreate;
+	}
+
+	/*
+	 * Groups the notes which are near-duplicates of each other. Notes without a
+	 * fingerprint, i.e. written before fingerprints existed or without any words,
+	 * are skipped.
+	 */
+	public List<List<Note>> findDuplicates(List<Note> notes) {
+		List<Note> fingerprinted = new ArrayList<>();
+		notes.stream().filter(note -> note.getSimHash() != 0L).forEach(fingerprinted::add);
+
+		Map<Long, List<Integer>> buckets = new HashMap<>();
+		for (int index = 0; index < fingerprinted.size(); index++) {
+			long fingerprint = fingerprinted.get(index).getSimHash();
+			for (int band = 0; band < BANDS; band++) {
+				buckets.computeIfAbsent(bandKey(fingerprint, band), key -> new ArrayList<>()).add(index);
+			}
+		}
+
+		int[] parent = new int[fingerprinted.size()];
+		for (int index = 0; index < parent.length; index++) {
+			parent[index] = index;
+		}
+		for (List<Integer> bucket : buckets.values()) {
+			for (int i = 0; i < bucket.size(); i++) {
+				for (int j = i + 1; j < bucket.size(); j++) {
+					int first = bucket.get(i);
+					int second = bucket.get(j);
+					if (NoteSimHash.distance(fingerprinted.get(first).getSimHash(),
+							fingerprinted.get(second).getSimHash()) <= this.maxDistance) {
+						parent[find(parent, first)] = find(parent, second);
+					}
+				}
+			}
+		}
+
+		Map<Integer, List<Note>> groups = new HashMap<>();
+		for (int index = 0; index < parent.length; index++) {
+			groups.computeIfAbsent(find(parent, index), key -> new ArrayList<>()).add(fingerprinted.get(index));
+		}
+		List<List<Note>> duplicates = new ArrayList<>();
+		groups.values().stream().filter(group -> group.size() > 1).forEach(duplicates::add);
+		return duplicates;
+	}
+
+	/* Returns an existing note which the given note is a near-duplicate of. */
+	public Optional<Note> findDuplicateOf(Note note, List<Note> existingNotes) {
+		if (note.getSimHash() == 0L) {
+			return Optional.empty();
+		}
+		return existingNotes.stream().filter(existing -> existing.getSimHash() != 0L)
+				.filter(existing -> NoteSimHash.distance(note.getSimHash(), existing.getSimHash()) <= this.maxDistance)
+				.findFirst();
+	}
+
+	private static long bandKey(long fingerprint, int band) {
+		return ((long) band << BAND_BITS) | ((fingerprint >>> (band * BAND_BITS)) & BAND_MASK);
+	}
+
+	private static int find(int[] parent, int index) {
+		while (parent[index] != index) {
+			parent[index] = parent[parent[index]];
+			index = parent[index];
+		}
+		return index;
+	}
+
+}
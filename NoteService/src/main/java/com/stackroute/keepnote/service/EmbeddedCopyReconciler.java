@@ -0,0 +1,174 @@
+package com.stackroute.keepnote.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.model.Reminder;
+
+/*
+ * Notes embed copies of their category and reminders. This component receives
+ * the change events of CategoryService and ReminderService and rewrites the
+ * embedded copies in every NoteUser document in the background.
+ *
+ * Events are queued and coalesced per category/reminder id, so a burst of
+ * renames results in a single update. Each drained batch is sent as one
+ * unordered bulk write of updateMany calls; array filters address only the
+ * matching array elements and the filters use the notes.category.categoryId
+ * and notes.reminders.reminderId indexes declared on NoteUser.
+ *
+ * Every event returns a future which completes once the batch carrying it is
+ * written, or fails with the bulk write, so the sender learns about a failed
+ * event and can send it again.
+ *
+ * Archived notes are compressed and cannot be addressed by these updates, so
+ * they keep the copies they were archived with. Reading one with hydration
+ * enabled returns the current category and reminders; a promoted note is
+ * stored with its old copies until the next event about them.
+ */
+
+@Component
+public class EmbeddedCopyReconciler {
+
+	private static final Log log = LogFactory.getLog(EmbeddedCopyReconciler.class);
+
+	private final MongoOperations mongoOperations;
+
+	// pending events by key, a null value stands for a deletion
+	private final Map<String, Object> categoryEvents = new LinkedHashMap<>();
+	private final Map<String, Object> reminderEvents = new LinkedHashMap<>();
+	// senders waiting for the pending batch
+	private final List<CompletableFuture<Void>> waiting = new ArrayList<>();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "embedded-copy-reconciler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public EmbeddedCopyReconciler(MongoOperations mongoOperations) {
+		this.mongoOperations = mongoOperations;
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdown();
+	}
+
+	public CompletableFuture<Void> categoryUpdated(String categoryId, Category category) {
+		category.setCategoryId(categoryId);
+		return enqueue(this.categoryEvents, categoryId, category);
+	}
+
+	public CompletableFuture<Void> categoryDeleted(String categoryId) {
+		return enqueue(this.categoryEvents, categoryId, null);
+	}
+
+	public CompletableFuture<Void> reminderUpdated(String reminderId, Reminder reminder) {
+		reminder.setReminderId(reminderId);
+		return enqueue(this.reminderEvents, reminderId, reminder);
+	}
+
+	public CompletableFuture<Void> reminderDeleted(String reminderId) {
+		return enqueue(this.reminderEvents, reminderId, null);
+	}
+
+	private CompletableFuture<Void> enqueue(Map<String, Object> events, String id, Object event) {
+		CompletableFuture<Void> written = new CompletableFuture<>();
+		boolean drainScheduled;
+		synchronized (this) {
+			drainScheduled = !this.categoryEvents.isEmpty() || !this.reminderEvents.isEmpty();
+			// re-inserting moves the key to the end, keeping the latest event only
+			events.remove(id);
+			events.put(id, event);
+			this.waiting.add(written);
+		}
+		if (!drainScheduled) {
+			this.executor.execute(this::drain);
+		}
+		return written;
+	}
+
+	private void drain() {
+		List<WriteModel<Document>> updates = new ArrayList<>();
+		List<CompletableFuture<Void>> senders;
+		synchronized (this) {
+			this.categoryEvents.forEach((id, event) -> updates.add(categoryUpdate(id, (Category) event)));
+			this.reminderEvents.forEach((id, event) -> updates.add(reminderUpdate(id, (Reminder) event)));
+			this.categoryEvents.clear();
+			this.reminderEvents.clear();
+			senders = new ArrayList<>(this.waiting);
+			this.waiting.clear();
+		}
+		try {
+			this.mongoOperations.getCollection(this.mongoOperations.getCollectionName(NoteUser.class))
+					.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+			senders.forEach(sender -> sender.complete(null));
+		} catch (Exception e) {
+			log.error("reconciling " + updates.size() + " embedded copies failed: " + e.getMessage());
+			senders.forEach(sender -> sender.completeExceptionally(e));
+		}
+	}
+
+	private static WriteModel<Document> categoryUpdate(String categoryId, Category category) {
+		Bson filter = Filters.eq("notes.category.categoryId", categoryId);
+		UpdateOptions options = new UpdateOptions()
+				.arrayFilters(Arrays.asList(Filters.eq("n.category.categoryId", categoryId)));
+		if (null == category) {
+			return new UpdateManyModel<>(filter,
+					new Document("$unset", new Document("notes.$[n].category", "")).append("$inc", version()), options);
+		}
+		Document fields = new Document("notes.$[n].category.categoryName", category.getCategoryName())
+				.append("notes.$[n].category.categoryDescription", category.getCategoryDescription())
+				.append("notes.$[n].category.categoryCreatedBy", category.getCategoryCreatedBy())
+				.append("notes.$[n].category.categoryCreationDate", category.getCategoryCreationDate());
+		return new UpdateManyModel<>(filter, new Document("$set", fields).append("$inc", version()), options);
+	}
+
+	private static WriteModel<Document> reminderUpdate(String reminderId, Reminder reminder) {
+		Bson filter = Filters.eq("notes.reminders.reminderId", reminderId);
+		if (null == reminder) {
+			return new UpdateManyModel<>(filter,
+					new Document("$pull", new Document("notes.$[n].reminders", new Document("reminderId", reminderId)))
+							.append("$inc", version()),
+					new UpdateOptions().arrayFilters(Arrays.asList(Filters.eq("n.reminders.reminderId", reminderId))));
+		}
+		Document fields = new Document("notes.$[n].reminders.$[r].reminderName", reminder.getReminderName())
+				.append("notes.$[n].reminders.$[r].reminderDescription", reminder.getReminderDescription())
+				.append("notes.$[n].reminders.$[r].reminderType", reminder.getReminderType())
+				.append("notes.$[n].reminders.$[r].reminderCreatedBy", reminder.getReminderCreatedBy())
+				.append("notes.$[n].reminders.$[r].reminderCreationDate", reminder.getReminderCreationDate());
+		return new UpdateManyModel<>(filter, new Document("$set", fields).append("$inc", version()),
+				new UpdateOptions().arrayFilters(Arrays.asList(Filters.eq("n.reminders.reminderId", reminderId),
+						Filters.eq("r.reminderId", reminderId))));
+	}
+
+	/* The version of the matched notes is incremented by every rewrite. */
+	private static Document version() {
+		return new Document("notes.$[n].version", 1);
+	}
+
+}
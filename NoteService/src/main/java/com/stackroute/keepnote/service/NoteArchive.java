@@ -0,0 +1,290 @@
+package com.stackroute.keepnote.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackroute.keepnote.model.ArchivedNote;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.ArchivedNoteRepository;
+
+/*
+ * Cold tier of the notes. A periodic job moves the notes created more than
+ * max-age-days ago out of the NoteUser documents, which are loaded on every
+ * request, into the ArchivedNote collection as gzip compressed JSON. The
+ * archived copy is saved before the note is pulled from NoteUser, so an
+ * interrupted run leaves a note in both tiers at worst and the next run
+ * completes it. A note is only pulled at the version it was archived at, a
+ * concurrent write keeps it in NoteUser.
+ *
+ * getNoteByNoteId falls through to the archive when a note is not in the hot
+ * document; with promote-on-read the note is moved back on that access. The
+ * note listings only read the hot documents, the archived notes of a user are
+ * listed on their own. An archived note holds the blob reference of its body,
+ * which its deletion gives back.
+ */
+
+@Component
+public class NoteArchive {
+
+	private static final Log log = LogFactory.getLog(NoteArchive.class);
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	private final ArchivedNoteRepository archivedNoteRepository;
+	private final MongoOperations mongoOperations;
+	private final NoteQuota noteQuota;
+	private final RecentNotesCache recentNotesCache;
+	private final NoteLabelIndex labelIndex;
+	private final NoteTelemetry noteTelemetry;
+	private final NoteBlobStore blobStore;
+	private final boolean enabled;
+	private final int maxAgeDays;
+	private final long intervalMs;
+	private final int batchSize;
+	private final boolean promoteOnRead;
+
+	private ScheduledExecutorService archiver;
+
+	@Autowired
+	public NoteArchive(ArchivedNoteRepository archivedNoteRepository, MongoOperations mongoOperations,
+			NoteQuota noteQuota, RecentNotesCache recentNotesCache, NoteLabelIndex labelIndex,
+			NoteTelemetry noteTelemetry, NoteBlobStore blobStore,
+			@Value("${keepnote.note.archive.enabled:false}") boolean enabled,
+			@Value("${keepnote.note.archive.max-age-days:180}") int maxAgeDays,
+			@Value("${keepnote.note.archive.interval-ms:86400000}") long intervalMs,
+			@Value("${keepnote.note.archive.batch-size:100}") int batchSize,
+			@Value("${keepnote.note.archive.promote-on-read:false}") boolean promoteOnRead) {
+		this.archivedNoteRepository = archivedNoteRepository;
+		this.mongoOperations = mongoOperations;
+		this.noteQuota = noteQuota;
+		this.recentNotesCache = recentNotesCache;
+		this.labelIndex = labelIndex;
+		this.noteTelemetry = noteTelemetry;
+		this.blobStore = blobStore;
+		this.enabled = enabled;
+		this.maxAgeDays = maxAgeDays;
+		this.intervalMs = intervalMs;
+		this.batchSize = batchSize;
+		this.promoteOnRead = promoteOnRead;
+	}
+
+	@PostConstruct
+	public void start() {
+		if (this.enabled) {
+			this.archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "note-archiver");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.archiver.scheduleWithFixedDelay(this::archiveOldNotes, this.intervalMs, this.intervalMs,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (null != this.archiver) {
+			this.archiver.shutdownNow();
+		}
+	}
+
+	/*
+	 * Looks up an archived note. With promote-on-read the note is pushed back into
+	 * its NoteUser document and removed from the archive.
+	 */
+	public Optional<Note> find(String userId, int noteId) {
+		Optional<ArchivedNote> archived = this.archivedNoteRepository.findById(ArchivedNote.archiveId(userId, noteId));
+		if (!archived.isPresent()) {
+			return Optional.empty();
+		}
+		Note note = decompress(archived.get().getCompressedNote());
+		if (this.promoteOnRead) {
+			promote(userId, note);
+		}
+		return Optional.of(note);
+	}
+
+	/*
+	 * The archived notes of a user without their content, most recently archived
+	 * first. Like the notes read from NoteUser they are still encrypted.
+	 */
+	public List<Note> list(String userId) {
+		return this.archivedNoteRepository.findByUserIdOrderByArchivedAtDesc(userId).stream().map(archived -> {
+			Note note = decompress(archived.getCompressedNote());
+			note.setNoteContent(null);
+			return note;
+		}).collect(Collectors.toList());
+	}
+
+	/*
+	 * Deletes the archived copy of a note which is not in its NoteUser document,
+	 * and with it the blob reference the archived note holds.
+	 */
+	public void delete(String userId, int noteId) {
+		ArchivedNote archived = this.mongoOperations.findAndRemove(
+				new Query(Criteria.where("_id").is(ArchivedNote.archiveId(userId, noteId))), ArchivedNote.class);
+		if (null != archived) {
+			this.blobStore.release(decompress(archived.getCompressedNote()).getContentHash());
+		}
+	}
+
+	/*
+	 * Deletes an archived copy left next to the note in NoteUser by an interrupted
+	 * archival or promotion. It shares the blob reference of that note.
+	 */
+	public void discard(String userId, int noteId) {
+		this.archivedNoteRepository.deleteById(ArchivedNote.archiveId(userId, noteId));
+	}
+
+	/* Deletes every archived note of a user, hotNotes are the notes of the user's NoteUser. */
+	public void deleteAll(String userId, List<Note> hotNotes) {
+		Set<Integer> hotNoteIds = null == hotNotes ? new HashSet<>()
+				: hotNotes.stream().map(Note::getNoteId).collect(Collectors.toSet());
+		this.mongoOperations.findAllAndRemove(new Query(Criteria.where("userId").is(userId)), ArchivedNote.class)
+				.stream().filter(archived -> !hotNoteIds.contains(archived.getNoteId()))
+				.forEach(archived -> this.blobStore.release(decompress(archived.getCompressedNote()).getContentHash()));
+	}
+
+	/*
+	 * Archives the old notes of every user, batch by batch. The users are paged
+	 * through by _id, the filter on the age of their notes is not indexed.
+	 */
+	public void archiveOldNotes() {
+		Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(this.maxAgeDays));
+		try {
+			List<String> userIds;
+			String lastUserId = null;
+			do {
+				Criteria withOldNotes = Criteria.where("notes.createdAt").lt(cutoff);
+				if (null != lastUserId) {
+					withOldNotes = withOldNotes.and("_id").gt(lastUserId);
+				}
+				Query batch = new Query(withOldNotes).with(Sort.by("_id")).limit(this.batchSize);
+				batch.fields().include("_id");
+				userIds = NoteTelemetryListener.projected(() -> this.mongoOperations.find(batch, NoteUser.class)).stream()
+						.map(NoteUser::getUserId).collect(Collectors.toList());
+				for (String userId : userIds) {
+					archive(userId, cutoff);
+					lastUserId = userId;
+				}
+			} while (userIds.size() == this.batchSize && !Thread.currentThread().isInterrupted());
+		} catch (Exception e) {
+			log.error("note archival failed: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * The archived copies are saved first. Each old note is then pulled only while
+	 * it is still at the version read here: a note written in between stays hot
+	 * and its archived copy, stale by then, is deleted again.
+	 */
+	private void archive(String userId, Date cutoff) {
+		NoteUser noteUser = this.mongoOperations.findById(userId, NoteUser.class);
+		if (null == noteUser || null == noteUser.getNotes()) {
+			return;
+		}
+		List<Note> oldNotes = noteUser.getNotes().stream().filter(
+				currNote -> null != currNote.getNoteCreationDate() && currNote.getNoteCreationDate().before(cutoff))
+				.collect(Collectors.toList());
+		if (oldNotes.isEmpty()) {
+			return;
+		}
+		this.archivedNoteRepository.saveAll(oldNotes.stream()
+				.map(currNote -> new ArchivedNote(userId, currNote.getNoteId(), compress(currNote)))
+				.collect(Collectors.toList()));
+		boolean pulled = false;
+		for (Note note : oldNotes) {
+			Document unchanged = unchanged(note);
+			Update pull = new Update().pull("notes", unchanged).inc("usedBytes", -this.noteQuota.sizeOf(note));
+			long matched = this.mongoOperations.updateFirst(
+					new BasicQuery(new Document("_id", userId).append("notes", new Document("$elemMatch", unchanged))),
+					pull, NoteUser.class).getMatchedCount();
+			if (matched > 0) {
+				pulled = true;
+				this.noteTelemetry.documentUpdated(userId, pull.getUpdateObject());
+			} else {
+				discard(userId, note.getNoteId());
+			}
+		}
+		if (pulled) {
+			this.recentNotesCache.invalidate(userId);
+			this.labelIndex.drop(userId);
+		}
+	}
+
+	/* Matches a note at the version it was read at; notes written before versions have none. */
+	private static Document unchanged(Note note) {
+		Object version = note.getVersion();
+		if (0 == note.getVersion()) {
+			version = new Document("$in", Arrays.asList(0L, null));
+		}
+		return new Document("noteId", note.getNoteId()).append("version", version);
+	}
+
+	private void promote(String userId, Note note) {
+		long matched = this.mongoOperations.updateFirst(
+				new Query(Criteria.where("_id").is(userId).and("notes.noteId").ne(note.getNoteId())),
+				new Update().push("notes", note).inc("usedBytes", this.noteQuota.sizeOf(note)), NoteUser.class)
+				.getMatchedCount();
+		if (matched > 0) {
+			this.noteTelemetry.documentUpdated(userId, this.noteQuota.sizeOf(note));
+			discard(userId, note.getNoteId());
+			this.recentNotesCache.invalidate(userId);
+			this.labelIndex.drop(userId);
+		}
+	}
+
+	private static byte[] compress(Note note) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+			MAPPER.writeValue(gzip, note);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot compress note " + note.getNoteId(), e);
+		}
+		return bytes.toByteArray();
+	}
+
+	static Note decompress(byte[] compressedNote) {
+		try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressedNote))) {
+			return MAPPER.readValue(gzip, Note.class);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot decompress archived note", e);
+		}
+	}
+
+}
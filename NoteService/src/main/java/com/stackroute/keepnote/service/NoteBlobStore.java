@@ -0,0 +1,137 @@
+package com.stackroute.keepnote.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteBlob;
+
+/*
+ * Content-addressed storage of large note bodies. A noteContent of at least
+ * inline-threshold characters is stored once in the NoteBlob collection under
+ * its SHA-256, and the note only keeps the hash in contentHash; shorter notes
+ * keep their content inline and never touch the blobs.
+ *
+ * Storing a body increments the reference count of its blob (creating it on
+ * the first reference), releasing decrements it and removes the blob when no
+ * note refers to it any more. A new body is always stored before the old one
+ * is released. An archived note keeps the reference of the note it was moved
+ * from. References are given back after the notes are gone, so a failure in
+ * between keeps a blob longer than needed but it is never removed while a
+ * note refers to it. A writer taking a reference for a
+ * note which is then not written, e.g. over quota or on a duplicate key, gives
+ * it back.
+ *
+ * Bodies are hashed as stored. With encryption at rest the stored body is
+ * ciphertext under a random IV, so equal contents never share a blob and the
+ * store only moves large bodies out of NoteUser; hashing the plain text
+ * instead would reveal which encrypted notes are equal.
+ */
+
+@Component
+public class NoteBlobStore {
+
+	private final MongoOperations mongoOperations;
+	private final int inlineThreshold;
+
+	@Autowired
+	public NoteBlobStore(MongoOperations mongoOperations,
+			@Value("${keepnote.note.blobs.inline-threshold:0}") int inlineThreshold) {
+		this.mongoOperations = mongoOperations;
+		this.inlineThreshold = inlineThreshold;
+	}
+
+	public boolean isEnabled() {
+		return this.inlineThreshold > 0;
+	}
+
+	/*
+	 * Moves a large noteContent into its blob and replaces it by the hash. Notes
+	 * below the threshold are left untouched. Whenever the note refers to a blob
+	 * afterwards, one reference has been taken for it.
+	 */
+	public void store(Note note) {
+		String content = note.getNoteContent();
+		if (null == content) {
+			if (null != note.getContentHash()) {
+				// already refers to a blob, take another reference like a new body would
+				this.mongoOperations.updateFirst(new Query(Criteria.where("_id").is(note.getContentHash())),
+						new Update().inc("refCount", 1), NoteBlob.class);
+			}
+			return;
+		}
+		note.setContentHash(null);
+		if (!isEnabled() || content.length() < this.inlineThreshold) {
+			return;
+		}
+		String hash = sha256(content);
+		this.mongoOperations.upsert(new Query(Criteria.where("_id").is(hash)),
+				new Update().inc("refCount", 1).setOnInsert("content", content).setOnInsert("createdAt", new Date()),
+				NoteBlob.class);
+		note.setContentHash(hash);
+		note.setNoteContent(null);
+	}
+
+	public void release(String contentHash) {
+		if (null == contentHash) {
+			return;
+		}
+		this.mongoOperations.updateFirst(new Query(Criteria.where("_id").is(contentHash)),
+				new Update().inc("refCount", -1), NoteBlob.class);
+		this.mongoOperations.remove(new Query(Criteria.where("_id").is(contentHash).and("refCount").lte(0)),
+				NoteBlob.class);
+	}
+
+	public void release(Collection<Note> notes) {
+		if (null != notes) {
+			notes.stream().map(Note::getContentHash).filter(Objects::nonNull).forEach(this::release);
+		}
+	}
+
+	/* Puts the content back into the notes which refer to a blob, with one query. */
+	public void hydrate(List<Note> notes) {
+		if (null == notes) {
+			return;
+		}
+		Set<String> hashes = notes.stream().filter(note -> null == note.getNoteContent())
+				.map(Note::getContentHash).filter(Objects::nonNull).collect(Collectors.toSet());
+		if (hashes.isEmpty()) {
+			return;
+		}
+		Map<String, String> contents = this.mongoOperations
+				.find(new Query(Criteria.where("_id").in(hashes)), NoteBlob.class).stream()
+				.collect(Collectors.toMap(NoteBlob::getBlobId, NoteBlob::getContent));
+		notes.stream().filter(note -> null == note.getNoteContent() && null != note.getContentHash())
+				.forEach(note -> note.setNoteContent(contents.get(note.getContentHash())));
+	}
+
+	private static String sha256(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+}
@@ -0,0 +1,269 @@
+package com.stackroute.keepnote.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteDataKey;
+
+/*
+ * Envelope encryption of the notes at rest. Every user has an AES-256 data key
+ * which is stored in the NoteDataKey collection wrapped by the master key of
+ * the keystore; noteContent and noteSnippet are encrypted with AES-GCM under
+ * that data key and the userId as associated data, so a value copied into
+ * another user's document does not decrypt.
+ *
+ * Unwrapped data keys are kept in an LRU of key-cache-size users and the GCM
+ * ciphers are reused per thread, so a hot user costs one cipher init and the
+ * AES itself per value. Encrypted values carry a prefix, which lets plain and
+ * encrypted notes live side by side: only the configured users (all users
+ * when none are listed) are encrypted on write, and every encrypted value is
+ * decrypted on read. A plain value which itself starts like one of the
+ * prefixes is written escaped, so it is never mistaken for ciphertext; a value
+ * that still fails to decrypt, e.g. written before the escaping, is logged
+ * and returned as stored instead of failing the whole read.
+ */
+
+@Component
+public class NoteEncryption {
+
+	private static final Log log = LogFactory.getLog(NoteEncryption.class);
+
+	private static final String PREFIX = "enc:v1:";
+	private static final String ESCAPE = "enc:v0:";
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+
+	private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+		try {
+			return Cipher.getInstance("AES/GCM/NoPadding");
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("AES/GCM is not available", e);
+		}
+	});
+
+	private final MongoOperations mongoOperations;
+	private final boolean enabled;
+	private final Set<String> users;
+	private final String keystorePath;
+	private final String keystoreType;
+	private final String keystorePassword;
+	private final String keyAlias;
+	private final int keyCacheSize;
+
+	private final SecureRandom random = new SecureRandom();
+	private final LinkedHashMap<String, SecretKey> dataKeys = new LinkedHashMap<>(16, 0.75f, true);
+	private Key masterKey;
+
+	@Autowired
+	public NoteEncryption(MongoOperations mongoOperations,
+			@Value("${keepnote.note.encryption.enabled:false}") boolean enabled,
+			@Value("${keepnote.note.encryption.users:}") String users,
+			@Value("${keepnote.note.encryption.keystore-path:}") String keystorePath,
+			@Value("${keepnote.note.encryption.keystore-type:JCEKS}") String keystoreType,
+			@Value("${keepnote.note.encryption.keystore-password:}") String keystorePassword,
+			@Value("${keepnote.note.encryption.key-alias:keepnote-master}") String keyAlias,
+			@Value("${keepnote.note.encryption.key-cache-size:10000}") int keyCacheSize) {
+		this.mongoOperations = mongoOperations;
+		this.enabled = enabled;
+		this.users = Arrays.stream(users.split(",")).map(String::trim).filter(user -> !user.isEmpty())
+				.collect(Collectors.toSet());
+		this.keystorePath = keystorePath;
+		this.keystoreType = keystoreType;
+		this.keystorePassword = keystorePassword;
+		this.keyAlias = keyAlias;
+		this.keyCacheSize = keyCacheSize;
+	}
+
+	/* The master key is only needed, and the keystore only read, when enabled. */
+	@PostConstruct
+	public void start() throws IOException, GeneralSecurityException {
+		if (!this.enabled) {
+			return;
+		}
+		KeyStore keyStore = KeyStore.getInstance(this.keystoreType);
+		char[] password = this.keystorePassword.toCharArray();
+		try (InputStream in = Files.newInputStream(Paths.get(this.keystorePath))) {
+			keyStore.load(in, password);
+		}
+		this.masterKey = keyStore.getKey(this.keyAlias, password);
+		if (null == this.masterKey) {
+			throw new IllegalStateException("no key " + this.keyAlias + " in " + this.keystorePath);
+		}
+	}
+
+	public boolean isEnabledFor(String userId) {
+		return this.enabled && (this.users.isEmpty() || this.users.contains(userId));
+	}
+
+	/*
+	 * Encrypts the content and the snippet of a note of the user, if configured,
+	 * and escapes them otherwise. The note must hold the plain values.
+	 */
+	public void encrypt(String userId, Note note) {
+		if (!isEnabledFor(userId)) {
+			note.setNoteContent(escape(note.getNoteContent()));
+			note.setNoteSnippet(escape(note.getNoteSnippet()));
+			return;
+		}
+		SecretKey dataKey = dataKey(userId);
+		note.setNoteContent(encrypt(userId, dataKey, note.getNoteContent()));
+		note.setNoteSnippet(encrypt(userId, dataKey, note.getNoteSnippet()));
+	}
+
+	public void decrypt(String userId, Note note) {
+		if (null == note) {
+			return;
+		}
+		if (isEncrypted(note.getNoteContent()) || isEncrypted(note.getNoteSnippet())) {
+			SecretKey dataKey = dataKey(userId);
+			note.setNoteContent(decrypt(userId, dataKey, note.getNoteContent()));
+			note.setNoteSnippet(decrypt(userId, dataKey, note.getNoteSnippet()));
+		} else {
+			note.setNoteContent(unescape(note.getNoteContent()));
+			note.setNoteSnippet(unescape(note.getNoteSnippet()));
+		}
+	}
+
+	public void decrypt(String userId, List<Note> notes) {
+		if (null != notes) {
+			notes.forEach(note -> decrypt(userId, note));
+		}
+	}
+
+	private String encrypt(String userId, SecretKey dataKey, String value) {
+		if (null == value) {
+			return value;
+		}
+		byte[] iv = new byte[IV_LENGTH];
+		this.random.nextBytes(iv);
+		try {
+			Cipher cipher = CIPHER.get();
+			cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(userId.getBytes(StandardCharsets.UTF_8));
+			byte[] plain = value.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer out = ByteBuffer.allocate(IV_LENGTH + cipher.getOutputSize(plain.length));
+			out.put(iv);
+			cipher.doFinal(ByteBuffer.wrap(plain), out);
+			return PREFIX + Base64.getEncoder().encodeToString(out.array());
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("note could not be encrypted", e);
+		}
+	}
+
+	private String decrypt(String userId, SecretKey dataKey, String value) {
+		if (!isEncrypted(value)) {
+			return unescape(value);
+		}
+		try {
+			byte[] in = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+			if (in.length <= IV_LENGTH) {
+				throw new IllegalArgumentException("value is shorter than the IV");
+			}
+			Cipher cipher = CIPHER.get();
+			cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, in, 0, IV_LENGTH));
+			cipher.updateAAD(userId.getBytes(StandardCharsets.UTF_8));
+			return new String(cipher.doFinal(in, IV_LENGTH, in.length - IV_LENGTH), StandardCharsets.UTF_8);
+		} catch (GeneralSecurityException | IllegalArgumentException e) {
+			log.warn("a note value of user " + userId + " could not be decrypted, returned as stored: "
+					+ e.getMessage());
+			return value;
+		}
+	}
+
+	private static boolean isEncrypted(String value) {
+		return null != value && value.startsWith(PREFIX);
+	}
+
+	/* A plain value starting like a prefix is stored behind the escape prefix. */
+	private static String escape(String value) {
+		return null != value && (value.startsWith(PREFIX) || value.startsWith(ESCAPE)) ? ESCAPE + value : value;
+	}
+
+	private static String unescape(String value) {
+		return null != value && value.startsWith(ESCAPE) ? value.substring(ESCAPE.length()) : value;
+	}
+
+	/*
+	 * Returns the unwrapped data key of a user, creating it on first use. Keys
+	 * are loaded outside of the cache lock; two concurrent creations for the same
+	 * user are resolved by the unique _id, the loser reads the winner's key.
+	 */
+	private SecretKey dataKey(String userId) {
+		if (null == this.masterKey) {
+			throw new IllegalStateException("note encryption is not enabled");
+		}
+		synchronized (this.dataKeys) {
+			SecretKey dataKey = this.dataKeys.get(userId);
+			if (null != dataKey) {
+				return dataKey;
+			}
+		}
+		SecretKey dataKey = loadOrCreate(userId);
+		synchronized (this.dataKeys) {
+			this.dataKeys.put(userId, dataKey);
+			Iterator<Map.Entry<String, SecretKey>> eldest = this.dataKeys.entrySet().iterator();
+			while (this.dataKeys.size() > this.keyCacheSize && eldest.hasNext()) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return dataKey;
+	}
+
+	private SecretKey loadOrCreate(String userId) {
+		try {
+			NoteDataKey stored = this.mongoOperations.findById(userId, NoteDataKey.class);
+			if (null == stored) {
+				KeyGenerator generator = KeyGenerator.getInstance("AES");
+				generator.init(256, this.random);
+				SecretKey dataKey = generator.generateKey();
+				Cipher wrapper = Cipher.getInstance("AESWrap");
+				wrapper.init(Cipher.WRAP_MODE, this.masterKey);
+				try {
+					this.mongoOperations.insert(new NoteDataKey(userId, wrapper.wrap(dataKey), new Date()));
+					return dataKey;
+				} catch (DuplicateKeyException e) {
+					stored = this.mongoOperations.findById(userId, NoteDataKey.class);
+				}
+			}
+			Cipher unwrapper = Cipher.getInstance("AESWrap");
+			unwrapper.init(Cipher.UNWRAP_MODE, this.masterKey);
+			return (SecretKey) unwrapper.unwrap(stored.getWrappedKey(), "AES", Cipher.SECRET_KEY);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("data key of user " + userId + " is not available", e);
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.stackroute.keepnote.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.model.Note;
+
+/*
+ * In-memory label index. For every user it keeps one compressed bitmap of
+ * noteIds per label, so a query like "labels A AND B but NOT C" is a couple of
+ * bitmap operations. The bitmaps of a user are built from the user's notes on
+ * the first query and then maintained incrementally on every note change, after
+ * the change is written. A build which a change overtook is used for its own
+ * query only, the next query builds again. The least recently used users are
+ * evicted once max-users is reached.
+ */
+
+@Component
+public class NoteLabelIndex {
+
+	private final Map<String, UserLabels> users;
+	// incremented by every change, the notes of a user loaded meanwhile are not kept
+	private long changes;
+
+	@Autowired
+	public NoteLabelIndex(@Value("${keepnote.note.labels.max-users:10000}") int maxUsers) {
+		this.users = Collections.synchronizedMap(new LinkedHashMap<String, UserLabels>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, UserLabels> eldest) {
+				return size() > maxUsers;
+			}
+		});
+	}
+
+	/*
+	 * Returns the ids of the notes carrying every label of allOf and none of the
+	 * labels of noneOf. An empty allOf matches every note of the user.
+	 */
+	public RoaringBitmap query(String userId, Collection<String> allOf, Collection<String> noneOf,
+			Supplier<List<Note>> notesLoader) {
+		UserLabels labels;
+		long loadedAt;
+		synchronized (this.users) {
+			labels = this.users.get(userId);
+			loadedAt = this.changes;
+		}
+		if (null == labels) {
+			labels = new UserLabels(notesLoader.get());
+			synchronized (this.users) {
+				// a change during the load may be missing from the notes, answer without keeping them
+				if (loadedAt == this.changes) {
+					this.users.put(userId, labels);
+				}
+			}
+		}
+		return labels.query(allOf, noneOf);
+	}
+
+	/* Indexes the labels of a created or updated note of an indexed user, once it is written. */
+	public void noteSaved(String userId, Note note) {
+		UserLabels labels = changed(userId);
+		if (null != labels) {
+			labels.remove(note.getNoteId());
+			labels.add(note);
+		}
+	}
+
+	public void noteRemoved(String userId, int noteId) {
+		UserLabels labels = changed(userId);
+		if (null != labels) {
+			labels.remove(noteId);
+		}
+	}
+
+	/* Forgets a user, the index is rebuilt on the next query. */
+	public void drop(String userId) {
+		synchronized (this.users) {
+			this.users.remove(userId);
+			this.changes++;
+		}
+	}
+
+	private UserLabels changed(String userId) {
+		synchronized (this.users) {
+			this.changes++;
+			return this.users.get(userId);
+		}
+	}
+
+	private static final class UserLabels {
+
+		private final RoaringBitmap allNotes = new RoaringBitmap();
+		private final Map<String, RoaringBitmap> byLabel = new HashMap<>();
+
+		UserLabels(List<Note> notes) {
+			if (null != notes) {
+				notes.forEach(this::add);
+			}
+		}
+
+		synchronized void add(Note note) {
+			this.allNotes.add(note.getNoteId());
+			if (null != note.getLabels()) {
+				note.getLabels().forEach(
+						label -> this.byLabel.computeIfAbsent(label, key -> new RoaringBitmap()).add(note.getNoteId()));
+			}
+		}
+
+		synchronized void remove(int noteId) {
+			if (this.allNotes.checkedRemove(noteId)) {
+				this.byLabel.values().removeIf(noteIds -> {
+					noteIds.remove(noteId);
+					return noteIds.isEmpty();
+				});
+			}
+		}
+
+		synchronized RoaringBitmap query(Collection<String> allOf, Collection<String> noneOf) {
+			RoaringBitmap result = this.allNotes.clone();
+			if (null != allOf) {
+				for (String label : allOf) {
+					RoaringBitmap noteIds = this.byLabel.get(label);
+					if (null == noteIds) {
+						return new RoaringBitmap();
+					}
+					result.and(noteIds);
+				}
+			}
+			if (null != noneOf) {
+				for (String label : noneOf) {
+					RoaringBitmap noteIds = this.byLabel.get(label);
+					if (null != noteIds) {
+						result.andNot(noteIds);
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.stackroute.keepnote.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.commonmark.node.Node;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.AttributeProvider;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+ * Renders the Markdown of noteContent to HTML on the server. Raw HTML in the
+ * content is escaped and link and image URLs are kept only with an http(s) or
+ * mailto scheme, so the output is safe to insert into a page.
+ *
+ * Rendered HTML is cached by the SHA-256 of the content in an LRU bounded by
+ * the total number of cached characters. A changed note has a new hash, so it
+ * is rendered again on its next view and the stale entry simply ages out; a
+ * note is rendered once per edit, not once per view.
+ */
+
+@Component
+public class NoteMarkdown {
+
+	private final Parser parser = Parser.builder().build();
+	private final HtmlRenderer renderer = HtmlRenderer.builder().escapeHtml(true)
+			.attributeProviderFactory(context -> new SafeUrls()).build();
+
+	private final long maxCachedChars;
+	private long cachedChars;
+	private final LinkedHashMap<String, String> rendered = new LinkedHashMap<>(16, 0.75f, true);
+
+	@Autowired
+	public NoteMarkdown(@Value("${keepnote.note.markdown.max-cached-chars:8000000}") long maxCachedChars) {
+		this.maxCachedChars = maxCachedChars;
+	}
+
+	public String toHtml(String markdown) {
+		if (null == markdown || markdown.isEmpty()) {
+			return "";
+		}
+		String hash = hash(markdown);
+		synchronized (this.rendered) {
+			String html = this.rendered.get(hash);
+			if (null != html) {
+				return html;
+			}
+		}
+		// rendered outside of the lock, a concurrent render of the same content is harmless
+		String html = this.renderer.render(this.parser.parse(markdown));
+		cache(hash, html);
+		return html;
+	}
+
+	private void cache(String hash, String html) {
+		if (html.length() > this.maxCachedChars) {
+			return;
+		}
+		synchronized (this.rendered) {
+			String previous = this.rendered.put(hash, html);
+			this.cachedChars += html.length() - (null == previous ? 0 : previous.length());
+			Iterator<Map.Entry<String, String>> eldest = this.rendered.entrySet().iterator();
+			while (this.cachedChars > this.maxCachedChars && eldest.hasNext()) {
+				this.cachedChars -= eldest.next().getValue().length();
+				eldest.remove();
+			}
+		}
+	}
+
+	/*
+	 * Drops the href of links and the src of images unless they have one of the
+	 * allowed schemes; javascript:, data: and the like never reach the page.
+	 * commonmark has no URL sanitizing of its own in this version.
+	 */
+	private static class SafeUrls implements AttributeProvider {
+
+		private static final List<String> ALLOWED_SCHEMES = Arrays.asList("http:", "https:", "mailto:");
+
+		@Override
+		public void setAttributes(Node node, String tagName, Map<String, String> attributes) {
+			drop(attributes, "href");
+			drop(attributes, "src");
+		}
+
+		private static void drop(Map<String, String> attributes, String name) {
+			String url = attributes.get(name);
+			if (null != url && !isAllowed(url)) {
+				attributes.remove(name);
+			}
+		}
+
+		private static boolean isAllowed(String url) {
+			String lower = url.trim().toLowerCase(Locale.ROOT);
+			return ALLOWED_SCHEMES.stream().anyMatch(lower::startsWith);
+		}
+
+	}
+
+	private static String hash(String markdown) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(markdown.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.stackroute.keepnote.service;
+
+import java.util.Iterator;
+
+import com.stackroute.keepnote.exception.PurgeJobNotFoundException;
+import com.stackroute.keepnote.model.NotePurgeJob;
+
+public interface NotePurgeService {
+
+    NotePurgeJob startPurge(Iterator<String> userIds);
+
+    NotePurgeJob getPurgeJob(String jobId) throws PurgeJobNotFoundException;
+
+    NotePurgeJob resumePurge(String jobId) throws PurgeJobNotFoundException;
+
+}
@@ -0,0 +1,229 @@
+package com.stackroute.keepnote.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.stackroute.keepnote.exception.PurgeJobNotFoundException;
+import com.stackroute.keepnote.model.ArchivedNote;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteDataKey;
+import com.stackroute.keepnote.model.NotePurgeChunk;
+import com.stackroute.keepnote.model.NotePurgeJob;
+import com.stackroute.keepnote.model.NoteShare;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NotePurgeChunkRepository;
+import com.stackroute.keepnote.repository.NotePurgeJobRepository;
+
+/*
+ * Removes the notes of many users at once, e.g. for account closure batches.
+ * The userIds are deleted in chunks with one deleteMany({_id: {$in: ...}}) per
+ * chunk, and one more each for their archived notes, the shares they received
+ * and their data keys, throttled to max-deletes-per-second. The blob references
+ * of their notes are read before and given back after the deletion, and the
+ * shares of their notes are removed through NoteSharing, which drops them from
+ * the cached lists of the recipients. The userIds are stored as NotePurgeChunks of
+ * chunk-size ids while they are read, so neither the job document nor the
+ * memory of the service ever holds all of them. The job only counts the
+ * processed chunks; it is saved after every chunk, so its progress can be
+ * polled and a job interrupted by a failure or a restart continues where it
+ * stopped. The chunks are deleted once the job completes.
+ */
+
+@Service
+public class NotePurgeServiceImpl implements NotePurgeService {
+
+	private static final Log log = LogFactory.getLog(NotePurgeServiceImpl.class);
+
+	private final NotePurgeJobRepository purgeJobRepository;
+	private final NotePurgeChunkRepository purgeChunkRepository;
+	private final MongoOperations mongoOperations;
+	private final NoteWriteBehindBuffer writeBehindBuffer;
+	private final RecentNotesCache recentNotesCache;
+	private final NoteLabelIndex labelIndex;
+	private final NoteBlobStore blobStore;
+	private final NoteSharing noteSharing;
+	private final int chunkSize;
+	private final int maxDeletesPerSecond;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "note-purge");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public NotePurgeServiceImpl(NotePurgeJobRepository purgeJobRepository,
+			NotePurgeChunkRepository purgeChunkRepository, MongoOperations mongoOperations,
+			NoteWriteBehindBuffer writeBehindBuffer, RecentNotesCache recentNotesCache, NoteLabelIndex labelIndex,
+			NoteBlobStore blobStore, NoteSharing noteSharing,
+			@Value("${keepnote.note.purge.chunk-size:500}") int chunkSize,
+			@Value("${keepnote.note.purge.max-deletes-per-second:2000}") int maxDeletesPerSecond) {
+		this.purgeJobRepository = purgeJobRepository;
+		this.purgeChunkRepository = purgeChunkRepository;
+		this.mongoOperations = mongoOperations;
+		this.writeBehindBuffer = writeBehindBuffer;
+		this.recentNotesCache = recentNotesCache;
+		this.labelIndex = labelIndex;
+		this.blobStore = blobStore;
+		this.noteSharing = noteSharing;
+		this.chunkSize = chunkSize;
+		this.maxDeletesPerSecond = maxDeletesPerSecond;
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdownNow();
+	}
+
+	/* Picks up the jobs which were still running when the service stopped. */
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeRunningJobs() {
+		this.purgeJobRepository.findByStatus(NotePurgeJob.RUNNING)
+				.forEach(job -> this.executor.execute(() -> run(job.getJobId())));
+	}
+
+	public NotePurgeJob startPurge(Iterator<String> userIds) {
+		String jobId = new ObjectId().toHexString();
+		int totalUsers = 0;
+		try {
+			for (int seq = 0; userIds.hasNext(); seq++) {
+				// duplicates are only dropped within a chunk, a repeated id is just deleted twice
+				Set<String> chunk = new LinkedHashSet<>();
+				while (userIds.hasNext() && chunk.size() < this.chunkSize) {
+					chunk.add(userIds.next());
+				}
+				this.purgeChunkRepository.insert(new NotePurgeChunk(jobId, seq, new ArrayList<>(chunk)));
+				totalUsers += chunk.size();
+			}
+		} catch (RuntimeException e) {
+			// the job was never started, its chunks would not be purged
+			this.purgeChunkRepository.deleteByJobId(jobId);
+			throw e;
+		}
+		NotePurgeJob job = this.purgeJobRepository.insert(new NotePurgeJob(jobId, totalUsers));
+		this.executor.execute(() -> run(job.getJobId()));
+		return job;
+	}
+
+	public NotePurgeJob getPurgeJob(String jobId) throws PurgeJobNotFoundException {
+		return this.purgeJobRepository.findById(jobId)
+				.orElseThrow(() -> new PurgeJobNotFoundException("purge job not found exception"));
+	}
+
+	public NotePurgeJob resumePurge(String jobId) throws PurgeJobNotFoundException {
+		NotePurgeJob job = getPurgeJob(jobId);
+		if (NotePurgeJob.FAILED.equals(job.getStatus())) {
+			job.setStatus(NotePurgeJob.RUNNING);
+			job.setLastError(null);
+			this.purgeJobRepository.save(job);
+			this.executor.execute(() -> run(jobId));
+		}
+		return job;
+	}
+
+	private void run(String jobId) {
+		NotePurgeJob job = this.purgeJobRepository.findById(jobId).orElse(null);
+		if (null == job || !NotePurgeJob.RUNNING.equals(job.getStatus())) {
+			return;
+		}
+		try {
+			Optional<NotePurgeChunk> next;
+			while ((next = this.purgeChunkRepository
+					.findById(NotePurgeChunk.chunkId(jobId, job.getProcessedChunks()))).isPresent()) {
+				long started = System.currentTimeMillis();
+				List<String> chunk = next.get().getUserIds();
+				Query blobsOnly = new Query(Criteria.where("_id").in(chunk));
+				blobsOnly.fields().include("notes.noteId").include("notes.contentHash");
+				List<NoteUser> noteUsers = NoteTelemetryListener
+						.projected(() -> this.mongoOperations.find(blobsOnly, NoteUser.class));
+				long deleted = this.mongoOperations
+						.remove(new Query(Criteria.where("_id").in(chunk)), NoteUser.class).getDeletedCount();
+				List<ArchivedNote> archived = this.mongoOperations
+						.findAllAndRemove(new Query(Criteria.where("userId").in(chunk)), ArchivedNote.class);
+				chunk.forEach(this.noteSharing::ownerDeleted);
+				this.mongoOperations.remove(new Query(Criteria.where("recipientId").in(chunk)), NoteShare.class);
+				this.mongoOperations.remove(new Query(Criteria.where("_id").in(chunk)), NoteDataKey.class);
+				chunk.forEach(this::evict);
+				// a chunk run again after a failure finds no notes left, so nothing is released twice
+				releaseBlobs(noteUsers, archived);
+				job.setProcessedChunks(job.getProcessedChunks() + 1);
+				job.setProcessedUsers(job.getProcessedUsers() + chunk.size());
+				job.setDeletedUsers(job.getDeletedUsers() + deleted);
+				this.purgeJobRepository.save(job);
+				throttle(chunk.size(), System.currentTimeMillis() - started);
+			}
+			this.purgeChunkRepository.deleteByJobId(jobId);
+			job.setStatus(NotePurgeJob.COMPLETED);
+			job.setCompletedAt(new Date());
+		} catch (InterruptedException e) {
+			// shutting down, the job stays RUNNING and is resumed on the next start
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception e) {
+			log.error("purge job " + jobId + " failed: " + e.getMessage());
+			job.setStatus(NotePurgeJob.FAILED);
+			job.setLastError(e.getMessage());
+		}
+		this.purgeJobRepository.save(job);
+	}
+
+	/*
+	 * Gives back the references of the purged notes and archived notes. An
+	 * archived copy of a note which was also in NoteUser shares its reference.
+	 */
+	private void releaseBlobs(List<NoteUser> noteUsers, List<ArchivedNote> archived) {
+		Map<String, Set<Integer>> hotNoteIds = new HashMap<>();
+		for (NoteUser noteUser : noteUsers) {
+			if (null != noteUser.getNotes()) {
+				this.blobStore.release(noteUser.getNotes());
+				hotNoteIds.put(noteUser.getUserId(),
+						noteUser.getNotes().stream().map(Note::getNoteId).collect(Collectors.toSet()));
+			}
+		}
+		for (ArchivedNote archivedNote : archived) {
+			Set<Integer> noteIds = hotNoteIds.get(archivedNote.getUserId());
+			if (null == noteIds || !noteIds.contains(archivedNote.getNoteId())) {
+				this.blobStore.release(NoteArchive.decompress(archivedNote.getCompressedNote()).getContentHash());
+			}
+		}
+	}
+
+	private void evict(String userId) {
+		this.writeBehindBuffer.discard(userId);
+		this.recentNotesCache.invalidate(userId);
+		this.labelIndex.drop(userId);
+	}
+
+	private void throttle(int deletes, long elapsedMs) throws InterruptedException {
+		long budgetMs = deletes * 1000L / Math.max(1, this.maxDeletesPerSecond);
+		if (budgetMs > elapsedMs) {
+			TimeUnit.MILLISECONDS.sleep(budgetMs - elapsedMs);
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package com.stackroute.keepnote.service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.exception.NoteQuotaExceededException;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NoteConverters;
+
+/*
+ * Per-user storage quota. Every NoteUser carries usedBytes, the BSON size of
+ * its notes, which the writes of NoteServiceImpl adjust by the size delta of
+ * the note they change, in the same document write. A write growing the usage
+ * is checked against the counter only, without measuring the stored notes, by
+ * the filter of that same write, so concurrent writes cannot pass it together.
+ *
+ * Writes which cannot know their delta (removing a checklist item, the
+ * write-behind flush) leave the counter slightly off, so the counters are
+ * reconciled periodically by a parallel scan over all users. A quota of 0
+ * disables the enforcement and the reconciliation; the counters are still
+ * maintained by the writes.
+ */
+
+@Component
+public class NoteQuota {
+
+	private static final Log log = LogFactory.getLog(NoteQuota.class);
+
+	private static final DocumentCodec CODEC = new DocumentCodec();
+	private static final NoteConverters.NoteWriter NOTE_WRITER = new NoteConverters.NoteWriter();
+
+	private final MongoOperations mongoOperations;
+	private final long maxBytes;
+	private final long reconcileIntervalMs;
+	private final int reconcileParallelism;
+
+	private ScheduledExecutorService reconciler;
+
+	@Autowired
+	public NoteQuota(MongoOperations mongoOperations, @Value("${keepnote.note.quota.max-bytes:0}") long maxBytes,
+			@Value("${keepnote.note.quota.reconcile-interval-ms:3600000}") long reconcileIntervalMs,
+			@Value("${keepnote.note.quota.reconcile-parallelism:4}") int reconcileParallelism) {
+		this.mongoOperations = mongoOperations;
+		this.maxBytes = maxBytes;
+		this.reconcileIntervalMs = reconcileIntervalMs;
+		this.reconcileParallelism = reconcileParallelism;
+	}
+
+	/* Without a quota nothing relies on exact counters, so they are not reconciled. */
+	@PostConstruct
+	public void start() {
+		if (isEnabled() && this.reconcileIntervalMs > 0) {
+			this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "note-quota-reconciler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.reconciler.scheduleWithFixedDelay(this::reconcile, this.reconcileIntervalMs,
+					this.reconcileIntervalMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (null != this.reconciler) {
+			this.reconciler.shutdownNow();
+		}
+	}
+
+	public boolean isEnabled() {
+		return this.maxBytes > 0;
+	}
+
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/* The stored size of a note, as it is embedded in NoteUser. */
+	public long sizeOf(Object value) {
+		if (null == value) {
+			return 0;
+		}
+		Document document;
+		if (value instanceof Note) {
+			document = NOTE_WRITER.convert((Note) value);
+		} else {
+			document = new Document();
+			this.mongoOperations.getConverter().write(value, document);
+		}
+		return new RawBsonDocument(document, CODEC).getByteBuffer().remaining();
+	}
+
+	public long sizeOfNotes(List<Note> notes) {
+		return null == notes ? 0 : notes.stream().mapToLong(this::sizeOf).sum();
+	}
+
+	/* Rejects a write which grows the usage of a user past the quota. */
+	public void check(String userId, long usedBytes, long delta) {
+		if (isEnabled() && delta > 0 && usedBytes + delta > this.maxBytes) {
+			throw new NoteQuotaExceededException("note quota of " + this.maxBytes + " bytes exceeded by " + userId);
+		}
+	}
+
+	/*
+	 * Recomputes the counter of every user. A counter is only replaced if it did
+	 * not change while the notes were measured, otherwise the next run fixes it.
+	 */
+	public void reconcile() {
+		Query idsOnly = new Query();
+		idsOnly.fields().include("_id");
+		List<String> userIds = NoteTelemetryListener.projected(() -> this.mongoOperations.find(idsOnly, NoteUser.class))
+				.stream().map(NoteUser::getUserId).filter(Objects::nonNull).collect(Collectors.toList());
+		ForkJoinPool pool = new ForkJoinPool(this.reconcileParallelism);
+		try {
+			pool.submit(() -> userIds.parallelStream().forEach(this::reconcile)).get();
+		} catch (Exception e) {
+			log.error("note quota reconciliation failed: " + e.getMessage());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void reconcile(String userId) {
+		NoteUser noteUser = this.mongoOperations.findById(userId, NoteUser.class);
+		if (null == noteUser) {
+			return;
+		}
+		long usedBytes = sizeOfNotes(noteUser.getNotes());
+		if (usedBytes != noteUser.getUsedBytes()) {
+			// documents written before the counter existed have no usedBytes field
+			Criteria unchanged = 0 == noteUser.getUsedBytes() ? Criteria.where("usedBytes").in(0L, null)
+					: Criteria.where("usedBytes").is(noteUser.getUsedBytes());
+			this.mongoOperations.updateFirst(new Query(Criteria.where("_id").is(userId)).addCriteria(unchanged),
+					new Update().set("usedBytes", usedBytes), NoteUser.class);
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.stackroute.keepnote.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+
+/*
+ * User defined order of notes. Every note carries a rank, a base-62 fraction
+ * written as a string, and notes are listed in lexicographic order of their
+ * ranks. Moving a note computes a rank between its new neighbours, so a move is
+ * a single $set on one array element. Ranks grow by about one digit per repeated
+ * insert at the same spot; once a rank exceeds max-length, the ranks of the
+ * user are spread out evenly again in the background.
+ */
+
+@Component
+public class NoteRanking {
+
+	private static final Log log = LogFactory.getLog(NoteRanking.class);
+
+	private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+	/* Ranked notes first in rank order, notes never moved keep their order after them. */
+	public static final Comparator<Note> BY_RANK = Comparator.comparing(Note::getRank,
+			Comparator.nullsLast(Comparator.naturalOrder()));
+
+	private final MongoOperations mongoOperations;
+	private final NoteTelemetry noteTelemetry;
+	private final int maxLength;
+
+	private final ExecutorService rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "note-rank-rebalancer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public NoteRanking(MongoOperations mongoOperations, NoteTelemetry noteTelemetry,
+			@Value("${keepnote.note.rank.max-length:12}") int maxLength) {
+		this.mongoOperations = mongoOperations;
+		this.noteTelemetry = noteTelemetry;
+		this.maxLength = maxLength;
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.rebalancer.shutdown();
+	}
+
+	/*
+	 * Moves a note right after another note, or to the top when afterNoteId is
+	 * null, and returns its new rank.
+	 */
+	public String move(String userId, int noteId, Integer afterNoteId) throws NoteNotFoundExeption {
+		List<Note> ordered = loadRanks(userId);
+		if (ordered.stream().anyMatch(note -> null == note.getRank())) {
+			// first move of the user, every note needs a rank before one can go between two
+			spreadEvenly(ordered);
+			writeRanks(userId, ordered);
+		}
+		Note moving = ordered.stream().filter(note -> note.getNoteId() == noteId).findFirst()
+				.orElseThrow(() -> new NoteNotFoundExeption("note not found exception"));
+		ordered.remove(moving);
+
+		int position = 0;
+		if (null != afterNoteId) {
+			Note after = ordered.stream().filter(note -> note.getNoteId() == afterNoteId).findFirst()
+					.orElseThrow(() -> new NoteNotFoundExeption("note not found exception -- after"));
+			position = ordered.indexOf(after) + 1;
+		}
+		String lower = position == 0 ? "" : ordered.get(position - 1).getRank();
+		String upper = position < ordered.size() ? ordered.get(position).getRank() : null;
+		String rank = between(lower, upper);
+
+		Update update = new Update().set("notes.$.rank", rank).inc("notes.$.version", 1);
+		this.mongoOperations.updateFirst(new Query(Criteria.where("_id").is(userId).and("notes.noteId").is(noteId)),
+				update, NoteUser.class);
+		this.noteTelemetry.documentUpdated(userId, update.getUpdateObject());
+		if (rank.length() > this.maxLength) {
+			this.rebalancer.execute(() -> rebalance(userId));
+		}
+		return rank;
+	}
+
+	public void rebalance(String userId) {
+		try {
+			List<Note> ordered = loadRanks(userId);
+			spreadEvenly(ordered);
+			writeRanks(userId, ordered);
+		} catch (Exception e) {
+			log.error("rebalancing the ranks of user " + userId + " failed: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Returns a rank strictly between lower and upper. An empty lower stands for
+	 * the start and a null upper for the end of the list. Ranks never end with
+	 * the zero digit, so there is always room before any rank.
+	 */
+	public static String between(String lower, String upper) {
+		if (null != upper) {
+			int common = 0;
+			while (common < upper.length() && digitAt(lower, common) == upper.charAt(common)) {
+				common++;
+			}
+			if (common > 0) {
+				return upper.substring(0, common) + between(lower.substring(Math.min(common, lower.length())),
+						upper.substring(common));
+			}
+		}
+		int lowerDigit = lower.isEmpty() ? 0 : DIGITS.indexOf(lower.charAt(0));
+		int upperDigit = null == upper ? DIGITS.length() : DIGITS.indexOf(upper.charAt(0));
+		if (upperDigit - lowerDigit > 1) {
+			return String.valueOf(DIGITS.charAt((lowerDigit + upperDigit + 1) / 2));
+		}
+		if (null != upper && upper.length() > 1) {
+			return upper.substring(0, 1);
+		}
+		return DIGITS.charAt(lowerDigit) + between(lower.isEmpty() ? "" : lower.substring(1), null);
+	}
+
+	private static char digitAt(String rank, int index) {
+		return index < rank.length() ? rank.charAt(index) : DIGITS.charAt(0);
+	}
+
+	private List<Note> loadRanks(String userId) throws NoteNotFoundExeption {
+		Query query = new Query(Criteria.where("_id").is(userId));
+		query.fields().include("notes.noteId").include("notes.rank");
+		NoteUser noteUser = NoteTelemetryListener.projected(() -> this.mongoOperations.findOne(query, NoteUser.class));
+		if (null == noteUser || null == noteUser.getNotes()) {
+			throw new NoteNotFoundExeption("note not found exception -- userid");
+		}
+		List<Note> ordered = new ArrayList<>(noteUser.getNotes());
+		ordered.sort(BY_RANK);
+		return ordered;
+	}
+
+	/* Assigns the shortest evenly spaced ranks keeping the current order. */
+	private static void spreadEvenly(List<Note> ordered) {
+		int width = 1;
+		long scale = DIGITS.length();
+		while (scale < 2L * (ordered.size() + 1)) {
+			width++;
+			scale *= DIGITS.length();
+		}
+		for (int index = 0; index < ordered.size(); index++) {
+			long value = (index + 1) * scale / (ordered.size() + 1);
+			char[] digits = new char[width];
+			for (int position = width - 1; position >= 0; position--) {
+				digits[position] = DIGITS.charAt((int) (value % DIGITS.length()));
+				value /= DIGITS.length();
+			}
+			String rank = new String(digits);
+			int end = rank.length();
+			while (end > 1 && rank.charAt(end - 1) == DIGITS.charAt(0)) {
+				end--;
+			}
+			ordered.get(index).setRank(rank.substring(0, end));
+		}
+	}
+
+	private void writeRanks(String userId, List<Note> notes) {
+		if (notes.isEmpty()) {
+			return;
+		}
+		BulkOperations bulk = this.mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, NoteUser.class);
+		notes.forEach(note -> bulk.updateOne(
+				new Query(Criteria.where("_id").is(userId).and("notes.noteId").is(note.getNoteId())),
+				new Update().set("notes.$.rank", note.getRank()).inc("notes.$.version", 1)));
+		bulk.execute();
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.stackroute.keepnote.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.Reminder;
+
+/*
+ * Notes embed snapshots of their category and reminders taken when the note
+ * was written. With keepnote.note.hydration.enabled the read endpoints replace
+ * them by the current versions: the ids referenced by a whole response are
+ * collected, the ones not in the local TTL cache are fetched with one batched
+ * call to CategoryService and one to ReminderService, and both calls run
+ * concurrently. The caller's Authorization header is passed on.
+ *
+ * Hydration never fails a read. When a service is slow or down, or an id is
+ * unknown to it, the note keeps its embedded snapshot.
+ */
+
+@Component
+public class NoteReferenceHydrator {
+
+	private static final Log log = LogFactory.getLog(NoteReferenceHydrator.class);
+
+	private static final ParameterizedTypeReference<List<Category>> CATEGORIES = new ParameterizedTypeReference<List<Category>>() {
+	};
+	private static final ParameterizedTypeReference<List<Reminder>> REMINDERS = new ParameterizedTypeReference<List<Reminder>>() {
+	};
+
+	private final RestTemplate restTemplate;
+	private final boolean enabled;
+	private final String categoryUrl;
+	private final String reminderUrl;
+	private final long ttlMs;
+	private final int maxEntries;
+
+	private final LinkedHashMap<String, Cached<Category>> categories = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, Cached<Reminder>> reminders = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "note-hydration");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public NoteReferenceHydrator(RestTemplateBuilder restTemplateBuilder,
+			@Value("${keepnote.note.hydration.enabled:false}") boolean enabled,
+			@Value("${keepnote.note.hydration.category-url:}") String categoryUrl,
+			@Value("${keepnote.note.hydration.reminder-url:}") String reminderUrl,
+			@Value("${keepnote.note.hydration.ttl-ms:30000}") long ttlMs,
+			@Value("${keepnote.note.hydration.max-entries:10000}") int maxEntries,
+			@Value("${keepnote.note.hydration.timeout-ms:500}") int timeoutMs) {
+		this.restTemplate = restTemplateBuilder.setConnectTimeout(timeoutMs).setReadTimeout(timeoutMs).build();
+		this.enabled = enabled;
+		this.categoryUrl = categoryUrl;
+		this.reminderUrl = reminderUrl;
+		this.ttlMs = ttlMs;
+		this.maxEntries = maxEntries;
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdownNow();
+	}
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/* Replaces the embedded category and reminders of the notes by their current versions. */
+	public void hydrate(Collection<Note> notes) {
+		if (!this.enabled || null == notes || notes.isEmpty()) {
+			return;
+		}
+		Set<String> categoryIds = notes.stream().map(Note::getCategory).filter(Objects::nonNull)
+				.map(Category::getCategoryId).filter(Objects::nonNull).collect(Collectors.toSet());
+		Set<String> reminderIds = notes.stream().map(Note::getReminders).filter(Objects::nonNull)
+				.flatMap(List::stream).filter(Objects::nonNull).map(Reminder::getReminderId)
+				.filter(Objects::nonNull).collect(Collectors.toSet());
+		HttpHeaders headers = forwardedHeaders();
+
+		CompletableFuture<Map<String, Category>> categoryLookup = lookup(categoryIds, this.categories,
+				this.categoryUrl, CATEGORIES, Category::getCategoryId, headers);
+		CompletableFuture<Map<String, Reminder>> reminderLookup = lookup(reminderIds, this.reminders,
+				this.reminderUrl, REMINDERS, Reminder::getReminderId, headers);
+		Map<String, Category> currentCategories = categoryLookup.join();
+		Map<String, Reminder> currentReminders = reminderLookup.join();
+
+		for (Note note : notes) {
+			if (null != note.getCategory()) {
+				note.setCategory(currentCategories.getOrDefault(note.getCategory().getCategoryId(), note.getCategory()));
+			}
+			if (null != note.getReminders()) {
+				note.setReminders(note.getReminders().stream()
+						.map(reminder -> null == reminder ? null
+								: currentReminders.getOrDefault(reminder.getReminderId(), reminder))
+						.collect(Collectors.toList()));
+			}
+		}
+	}
+
+	/*
+	 * Resolves the ids from the cache and fetches the missing ones with a single
+	 * call on the executor. Ids unknown to the service are cached as misses too,
+	 * so they are not asked for again until the entry expires.
+	 */
+	private <T> CompletableFuture<Map<String, T>> lookup(Set<String> ids, LinkedHashMap<String, Cached<T>> cache,
+			String url, ParameterizedTypeReference<List<T>> type, Function<T, String> idOf, HttpHeaders headers) {
+		Map<String, T> found = new HashMap<>();
+		Set<String> missing = new LinkedHashSet<>();
+		long now = System.currentTimeMillis();
+		synchronized (cache) {
+			for (String id : ids) {
+				Cached<T> cached = cache.get(id);
+				if (null != cached && cached.expiresAt > now) {
+					if (null != cached.value) {
+						found.put(id, cached.value);
+					}
+				} else {
+					missing.add(id);
+				}
+			}
+		}
+		if (missing.isEmpty() || url.isEmpty()) {
+			return CompletableFuture.completedFuture(found);
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				List<T> fetched = this.restTemplate.exchange(url + "?ids={ids}", HttpMethod.GET,
+						new HttpEntity<>(headers), type, String.join(",", missing)).getBody();
+				Map<String, T> byId = null == fetched ? new HashMap<>()
+						: fetched.stream().collect(Collectors.toMap(idOf, value -> value, (a, b) -> a));
+				long expiresAt = System.currentTimeMillis() + this.ttlMs;
+				synchronized (cache) {
+					missing.forEach(id -> cache.put(id, new Cached<>(byId.get(id), expiresAt)));
+					Iterator<String> eldest = cache.keySet().iterator();
+					while (cache.size() > this.maxEntries && eldest.hasNext()) {
+						eldest.next();
+						eldest.remove();
+					}
+				}
+				found.putAll(byId);
+			} catch (Exception e) {
+				log.warn("hydration from " + url + " failed, keeping the embedded copies: " + e.getMessage());
+			}
+			return found;
+		}, this.executor);
+	}
+
+	/* The Authorization header of the current request, read on the request thread. */
+	private static HttpHeaders forwardedHeaders() {
+		HttpHeaders headers = new HttpHeaders();
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes instanceof ServletRequestAttributes) {
+			String authorization = ((ServletRequestAttributes) attributes).getRequest()
+					.getHeader(HttpHeaders.AUTHORIZATION);
+			if (null != authorization) {
+				headers.set(HttpHeaders.AUTHORIZATION, authorization);
+			}
+		}
+		return headers;
+	}
+
+	private static final class Cached<T> {
+
+		private final T value;
+		private final long expiresAt;
+
+		private Cached(T value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
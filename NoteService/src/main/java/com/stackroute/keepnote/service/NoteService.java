@@ -1,6 +1,7 @@
 package com.stackroute.keepnote.service;
 
 import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.model.ChecklistItem;
 import com.stackroute.keepnote.model.Note;
 
 import java.util.List;
@@ -26,5 +27,26 @@ public interface NoteService {
 
     List<Note> getAllNoteByUserId(String userId);
 
+    List<Note> getNoteSummariesByUserId(String userId);
+
+    List<Note> getRecentNotes(String userId, int k);
+
+    List<Note> getArchivedNotes(String userId);
+
+    List<Note> getNotesByLabels(String userId, List<String> labels, List<String> excludedLabels);
+
+    List<List<Note>> getDuplicateNotes(String userId);
+
+    String moveNote(String userId, int noteId, Integer afterNoteId) throws NoteNotFoundExeption;
+
+    ChecklistItem addChecklistItem(String userId, int noteId, ChecklistItem item) throws NoteNotFoundExeption;
+
+    boolean setChecklistItemChecked(String userId, int noteId, String itemId, boolean checked)
+            throws NoteNotFoundExeption;
+
+    boolean removeChecklistItem(String userId, int noteId, String itemId) throws NoteNotFoundExeption;
+
+    boolean updateNoteContent(String userId, int noteId, String noteContent) throws NoteNotFoundExeption;
+
 
 }
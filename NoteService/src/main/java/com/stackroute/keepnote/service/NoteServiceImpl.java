@@ -1,16 +1,42 @@
 package com.stackroute.keepnote.service;
 
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.limit;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.replaceRoot;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
 import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.exception.NoteQuotaExceededException;
+import com.stackroute.keepnote.model.ChecklistItem;
 import com.stackroute.keepnote.model.Note;
 import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NoteConverters;
 import com.stackroute.keepnote.repository.NoteRepository;
 
 /*
@@ -33,23 +59,77 @@ public class NoteServiceImpl implements NoteService {
 	 */
 
 	private final NoteRepository noteRepository;
+	private final MongoOperations mongoOperations;
+	private final NoteWriteBehindBuffer writeBehindBuffer;
+	private final RecentNotesCache recentNotesCache;
+	private final NoteLabelIndex labelIndex;
+	private final DuplicateNoteDetector duplicateNoteDetector;
+	private final NoteRanking noteRanking;
+	private final NoteQuota noteQuota;
+	private final NoteTelemetry noteTelemetry;
+	private final NoteArchive noteArchive;
+	private final NoteBlobStore blobStore;
+	private final NoteEncryption encryption;
+	private final NoteSharing noteSharing;
 
 	@Autowired
-	public NoteServiceImpl(NoteRepository noteRepository) {
+	public NoteServiceImpl(NoteRepository noteRepository, MongoOperations mongoOperations,
+			NoteWriteBehindBuffer writeBehindBuffer, RecentNotesCache recentNotesCache, NoteLabelIndex labelIndex,
+			DuplicateNoteDetector duplicateNoteDetector, NoteRanking noteRanking, NoteQuota noteQuota,
+			NoteTelemetry noteTelemetry, NoteArchive noteArchive, NoteBlobStore blobStore,
+			NoteEncryption encryption, NoteSharing noteSharing) {
 		this.noteRepository = noteRepository;
+		this.mongoOperations = mongoOperations;
+		this.writeBehindBuffer = writeBehindBuffer;
+		this.recentNotesCache = recentNotesCache;
+		this.labelIndex = labelIndex;
+		this.duplicateNoteDetector = duplicateNoteDetector;
+		this.noteRanking = noteRanking;
+		this.noteQuota = noteQuota;
+		this.noteTelemetry = noteTelemetry;
+		this.noteArchive = noteArchive;
+		this.blobStore = blobStore;
+		this.encryption = encryption;
+		this.noteSharing = noteSharing;
 	}
 
 	/*
-	 * This method should be used to save a new note.
+	 * This method should be used to save a new note. With dedupe-on-create a note
+	 * which is a near-duplicate of an existing note of the user is not saved.
 	 */
 	public boolean createNote(Note note) {
+		note.setNoteSnippet(NoteSnippets.of(note.getNoteContent()));
+		note.setSimHash(NoteSimHash.of(note.getNoteTitle(), note.getNoteContent()));
+		if (null != note.getChecklist()) {
+			note.getChecklist().forEach(item -> item.setItemId(UUID.randomUUID().toString()));
+		}
+		if (this.duplicateNoteDetector.isDedupeOnCreate() && this.duplicateNoteDetector
+				.findDuplicateOf(note, getNoteSummariesByUserId(note.getNoteCreatedBy())).isPresent()) {
+			return Boolean.FALSE;
+		}
 
-		NoteUser noteUser = new NoteUser();
-		noteUser.setUserId(note.getNoteCreatedBy());
-		noteUser.setNotes(Arrays.asList(note));
-		if (null != this.noteRepository.insert(noteUser)) {
+		Note stored = toStored(note.getNoteCreatedBy(), note);
+		NoteUser inserted;
+		try {
+			long size = this.noteQuota.sizeOf(stored);
+			this.noteQuota.check(note.getNoteCreatedBy(), 0, size);
+
+			NoteUser noteUser = new NoteUser();
+			noteUser.setUserId(note.getNoteCreatedBy());
+			noteUser.setNotes(Arrays.asList(stored));
+			noteUser.setUsedBytes(size);
+			inserted = this.noteRepository.insert(noteUser);
+		} catch (RuntimeException e) {
+			notWritten(stored);
+			throw e;
+		} finally {
+			this.recentNotesCache.invalidate(note.getNoteCreatedBy());
+		}
+		if (null != inserted) {
+			this.labelIndex.drop(note.getNoteCreatedBy());
 			return Boolean.TRUE;
 		} else {
+			notWritten(stored);
 			return Boolean.FALSE;
 		}
 	}
@@ -57,16 +137,31 @@ public class NoteServiceImpl implements NoteService {
 	/* This method should be used to delete an existing note. */
 
 	public boolean deleteNote(String userId, int noteId) {
+		this.writeBehindBuffer.discard(userId, noteId);
+		this.recentNotesCache.invalidate(userId);
+		this.noteSharing.noteDeleted(userId, noteId);
 		NoteUser noteUser = this.noteRepository.findById(userId).get();
-		// filtering notes where id do not match with supplied note id
-		List<Note> filteredNotes = noteUser.getNotes().stream().filter(currNote -> currNote.getNoteId() != noteId)
+		List<Note> removedNotes = noteUser.getNotes().stream().filter(currNote -> currNote.getNoteId() == noteId)
 				.collect(Collectors.toList());
-		noteUser.setNotes(filteredNotes);
-		if (null != this.noteRepository.save(noteUser)) {
+		if (removedNotes.isEmpty()) {
+			// not in the user's document, at most archived
+			this.noteArchive.delete(userId, noteId);
+			this.labelIndex.noteRemoved(userId, noteId);
 			return Boolean.TRUE;
-		} else {
-			return Boolean.FALSE;
 		}
+		this.noteArchive.discard(userId, noteId);
+		// only the note is pulled, what changed in the other notes since the read is kept
+		Update pull = new Update().pull("notes", new Document("noteId", noteId)).inc("usedBytes",
+				-this.noteQuota.sizeOfNotes(removedNotes));
+		UpdateResult result = this.mongoOperations.updateFirst(
+				new Query(Criteria.where("_id").is(userId).and("notes.noteId").is(noteId)), pull, NoteUser.class);
+		this.recentNotesCache.invalidate(userId);
+		this.labelIndex.noteRemoved(userId, noteId);
+		if (0 != result.getMatchedCount()) {
+			this.blobStore.release(removedNotes);
+			this.noteTelemetry.documentUpdated(userId, pull.getUpdateObject());
+		}
+		return Boolean.TRUE;
 
 	}
 
@@ -77,7 +172,14 @@ public class NoteServiceImpl implements NoteService {
 		try {
 			Optional<NoteUser> notes = Optional.ofNullable(this.noteRepository.findById(userId)).get();
 			if (notes.isPresent()) {
+				this.writeBehindBuffer.discard(userId);
+				this.recentNotesCache.invalidate(userId);
+				this.noteArchive.deleteAll(userId, notes.get().getNotes());
+				this.noteSharing.ownerDeleted(userId);
 				this.noteRepository.delete(notes.get());
+				this.recentNotesCache.invalidate(userId);
+				this.labelIndex.drop(userId);
+				this.blobStore.release(notes.get().getNotes());
 				flag = Boolean.TRUE;
 			} else {
 				throw new NoteNotFoundExeption("note not found exception");
@@ -89,37 +191,132 @@ public class NoteServiceImpl implements NoteService {
 	}
 
 	/*
-	 * This method should be used to update a existing note.
+	 * This method should be used to update a existing note. In write-behind mode
+	 * the update is only buffered and reaches the database with the next flush.
+	 * The flush only updates notes of the user's document, so the first update of
+	 * a note which is not buffered yet checks that it is there; an archived note
+	 * takes the direct path.
+	 *
+	 * With a quota configured the growth of a write is enforced by the write
+	 * itself: its filter only matches while usedBytes leaves room for the delta,
+	 * so concurrent writes cannot pass the quota together. A buffered update
+	 * cannot be checked like that, so in write-behind mode only updates which do
+	 * not grow the note, compared with its latest buffered or stored version, are
+	 * buffered. A growing one flushes the user's buffered notes and takes the
+	 * direct path; the pending deltas are never positive.
 	 */
 	public Note updateNote(Note note, int id, String userId) throws NoteNotFoundExeption {
+		note.setNoteSnippet(NoteSnippets.of(note.getNoteContent()));
+		note.setSimHash(NoteSimHash.of(note.getNoteTitle(), note.getNoteContent()));
+		if (this.writeBehindBuffer.isEnabled()) {
+			Optional<Note> buffered = this.writeBehindBuffer.get(userId, id);
+			NoteUser stored = buffered.isPresent() && !this.noteQuota.isEnabled() ? null : loadNote(userId, id);
+			Note storedNote = null == stored || null == stored.getNotes() || stored.getNotes().isEmpty() ? null
+					: stored.getNotes().get(0);
+			if (buffered.isPresent() || null != storedNote) {
+				long delta = 0;
+				if (this.noteQuota.isEnabled()) {
+					// measured before a large content moves to its blob, an upper bound
+					delta = sizeToStore(userId, NoteWriteBehindBuffer.merge(note, storedNote))
+							- (buffered.isPresent()
+									? sizeToStore(userId, NoteWriteBehindBuffer.merge(buffered.get(), storedNote))
+									: this.noteQuota.sizeOf(storedNote));
+					this.noteQuota.check(userId, null == stored ? 0 : stored.getUsedBytes(), delta);
+				}
+				if (delta <= 0) {
+					this.recentNotesCache.invalidate(userId);
+					this.writeBehindBuffer.offer(userId, id, note);
+					this.labelIndex.noteSaved(userId, note);
+					return note;
+				}
+				this.writeBehindBuffer.flush(userId);
+			}
+		}
+		this.recentNotesCache.invalidate(userId);
 		try {
 			Optional<NoteUser> noteUser = Optional.ofNullable(this.noteRepository.findById(userId)).get();
 			if (noteUser.isPresent()) {
-				// get all notes of the user, except specified not id
-				List<Note> updatedNoteList = noteUser.get().getNotes().stream()
-						.filter(currNote -> currNote.getNoteId() != id).collect(Collectors.toList());
-				updatedNoteList.add(note);
-				noteUser.get().setNotes(updatedNoteList);
-				this.noteRepository.save(noteUser.get());
+				Optional<Note> stored = noteUser.get().getNotes().stream().filter(currNote -> currNote.getNoteId() == id)
+						.findFirst();
+				// rank and checklist have their own operations, keep the stored ones
+				stored.ifPresent(currNote -> {
+					note.setRank(currNote.getRank());
+					note.setChecklist(currNote.getChecklist());
+				});
+				Note toStore = toStored(userId, note);
+				UpdateResult result;
+				try {
+					long delta = this.noteQuota.sizeOf(toStore) - this.noteQuota.sizeOf(stored.orElse(null));
+					// rejected early against the counter read, enforced by the filter of the write
+					this.noteQuota.check(userId, noteUser.get().getUsedBytes(), delta);
+					/*
+					 * Only this note is written, so checklist and rank operations and other
+					 * notes changed since the read are kept. An archived note becomes a hot
+					 * note again, unless it has been added meanwhile.
+					 */
+					Criteria target = stored.isPresent() ? Criteria.where("_id").is(userId).and("notes.noteId").is(id)
+							: Criteria.where("_id").is(userId).and("notes.noteId").ne(id);
+					result = this.mongoOperations.updateFirst(withinQuota(new Query(target), delta),
+							stored.isPresent()
+									? NoteConverters.setNote("notes.$", toStore, "rank", "checklist").inc("usedBytes",
+											delta)
+									: new Update().push("notes", toStore).inc("usedBytes", delta),
+							NoteUser.class);
+					if (0 == result.getMatchedCount()) {
+						rejectedByQuota(userId, new Query(target), delta);
+					}
+				} catch (RuntimeException e) {
+					notWritten(toStore);
+					throw e;
+				} finally {
+					this.recentNotesCache.invalidate(userId);
+				}
+				if (0 == result.getMatchedCount()) {
+					notWritten(toStore);
+					throw new NoteNotFoundExeption("note not found exception");
+				}
+				this.labelIndex.noteSaved(userId, note);
+				if (!stored.isPresent()) {
+					this.noteArchive.delete(userId, id);
+				}
+				stored.ifPresent(currNote -> this.blobStore.release(currNote.getContentHash()));
+				this.noteTelemetry.documentUpdated(userId, this.noteQuota.sizeOf(toStore));
 				return note;
 			} else {
 				throw new NoteNotFoundExeption("note not found exception");
 			}
+		} catch (NoteQuotaExceededException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new NoteNotFoundExeption(e.getMessage());
 		}
 	}
 
 	/*
-	 * This method should be used to get a note by noteId created by specific user
+	 * This method should be used to get a note by noteId created by specific user.
+	 * A note which is not in the user's document is looked up in the archive.
 	 */
 	public Note getNoteByNoteId(String userId, int noteId) throws NoteNotFoundExeption {
+		if (this.writeBehindBuffer.isEnabled()) {
+			Optional<Note> buffered = this.writeBehindBuffer.get(userId, noteId);
+			if (buffered.isPresent()) {
+				// a copy, the caller may hydrate or render it, with the stored checklist and rank
+				NoteUser stored = loadNote(userId, noteId);
+				return NoteWriteBehindBuffer.merge(buffered.get(),
+						null == stored || null == stored.getNotes() || stored.getNotes().isEmpty() ? null
+								: stored.getNotes().get(0));
+			}
+		}
 		try {
 			Optional<NoteUser> noteUser = Optional.ofNullable(this.noteRepository.findById(userId)).get();
 			if (noteUser.isPresent()) {
 				Optional<Note> noteOptional = noteUser.get().getNotes().stream()
 						.filter(currNote -> currNote.getNoteId() == noteId).findFirst();
+				if (!noteOptional.isPresent()) {
+					noteOptional = this.noteArchive.find(userId, noteId);
+				}
 				if (noteOptional.isPresent()) {
+					toReadable(userId, Arrays.asList(noteOptional.get()));
 					return noteOptional.get();
 				} else {
 					throw new NoteNotFoundExeption("note not found exception");
@@ -137,7 +334,355 @@ public class NoteServiceImpl implements NoteService {
 	 */
 	public List<Note> getAllNoteByUserId(String userId) {
 		Optional<NoteUser> noteUser = Optional.ofNullable(this.noteRepository.findById(userId)).get();
-		return noteUser.get().getNotes();
+		List<Note> notes = noteUser.get().getNotes();
+		toReadable(userId, notes);
+		return this.writeBehindBuffer.isEnabled() ? this.writeBehindBuffer.overlay(userId, notes) : notes;
+	}
+
+	/*
+	 * This method should be used to list the notes of a user without their
+	 * content. noteContent is excluded by the query projection, so the bodies are
+	 * neither read from MongoDB nor serialized; noteSnippet is returned instead.
+	 * The notes are listed in the order chosen by the user.
+	 */
+	public List<Note> getNoteSummariesByUserId(String userId) {
+		Query query = new Query(Criteria.where("_id").is(userId));
+		query.fields().exclude("notes.noteContent");
+		NoteUser noteUser = NoteTelemetryListener.projected(() -> this.mongoOperations.findOne(query, NoteUser.class));
+		List<Note> notes = null == noteUser || null == noteUser.getNotes() ? new ArrayList<>() : noteUser.getNotes();
+		this.encryption.decrypt(userId, notes);
+		backfillSnippets(userId, notes);
+		notes = new ArrayList<>(
+				this.writeBehindBuffer.isEnabled() ? this.writeBehindBuffer.overlay(userId, notes) : notes);
+		notes.sort(NoteRanking.BY_RANK);
+		return notes;
+	}
+
+	/*
+	 * This method should be used to list the archived notes of a user without
+	 * their content, most recently archived first. The other listings only read
+	 * the user's document and leave the archived notes out; a single archived
+	 * note is still returned by getNoteByNoteId.
+	 */
+	public List<Note> getArchivedNotes(String userId) {
+		List<Note> notes = this.noteArchive.list(userId);
+		this.encryption.decrypt(userId, notes);
+		return notes;
+	}
+
+	/*
+	 * This method should be used to get the k most recent notes of a user. The
+	 * $sort is directly followed by $limit, so MongoDB only keeps the top k notes
+	 * while sorting instead of the whole list. In write-behind mode the buffered
+	 * notes are merged in before the notes are sorted and limited again.
+	 */
+	public List<Note> getRecentNotes(String userId, int k) {
+		Optional<List<Note>> cached = this.recentNotesCache.get(userId, k);
+		if (cached.isPresent()) {
+			return cached.get();
+		}
+		int fetch = this.recentNotesCache.isEnabled() ? Math.max(k, this.recentNotesCache.getMaxK()) : k;
+		long loadedAt = this.recentNotesCache.loadStarted();
+		List<Note> recentNotes = this.mongoOperations.aggregate(
+				newAggregation(match(Criteria.where("_id").is(userId)), unwind("notes"),
+						sort(Direction.DESC, "notes.createdAt"), limit(fetch), replaceRoot("notes"),
+						project().andExclude("noteContent")),
+				NoteUser.class, Note.class).getMappedResults();
+		this.encryption.decrypt(userId, recentNotes);
+		backfillSnippets(userId, recentNotes);
+		if (this.writeBehindBuffer.isEnabled()) {
+			// buffered updates are not in MongoDB yet and may change the order, or be beyond the fetched notes
+			recentNotes = this.writeBehindBuffer.overlay(userId, recentNotes).stream().map(currNote -> {
+				currNote.setNoteContent(null);
+				return currNote;
+			}).sorted(Comparator.comparing(Note::getNoteCreationDate,
+					Comparator.nullsLast(Comparator.<Date>reverseOrder()))).limit(fetch)
+					.collect(Collectors.toList());
+		}
+		if (fetch == this.recentNotesCache.getMaxK()) {
+			this.recentNotesCache.put(userId, recentNotes, loadedAt);
+		}
+		return recentNotes.size() > k ? recentNotes.subList(0, k) : recentNotes;
+	}
+
+	/*
+	 * This method should be used to get the notes of a user carrying all the given
+	 * labels and none of the excluded ones. The matching noteIds come from the
+	 * label index, the notes are only loaded when there is a match.
+	 */
+	public List<Note> getNotesByLabels(String userId, List<String> labels, List<String> excludedLabels) {
+		RoaringBitmap noteIds = this.labelIndex.query(userId, labels, excludedLabels,
+				() -> getNoteSummariesByUserId(userId));
+		if (noteIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return getNoteSummariesByUserId(userId).stream().filter(currNote -> noteIds.contains(currNote.getNoteId()))
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * This method should be used to get the groups of near-duplicate notes of a
+	 * user, compared by their stored fingerprints only.
+	 */
+	public List<List<Note>> getDuplicateNotes(String userId) {
+		return this.duplicateNoteDetector.findDuplicates(getNoteSummariesByUserId(userId));
+	}
+
+	/*
+	 * This method should be used to move a note right after another note of the
+	 * user, or to the top of the list when afterNoteId is null. Only the rank of
+	 * the moved note is written.
+	 */
+	public String moveNote(String userId, int noteId, Integer afterNoteId) throws NoteNotFoundExeption {
+		this.recentNotesCache.invalidate(userId);
+		try {
+			return this.noteRanking.move(userId, noteId, afterNoteId);
+		} finally {
+			this.recentNotesCache.invalidate(userId);
+		}
+	}
+
+	/*
+	 * This method should be used to replace the content of a note, e.g. by the
+	 * checkpoints of collaborative editing. Only the note itself is read, and only
+	 * its content, the fields derived from it and the usage counter are written.
+	 */
+	public boolean updateNoteContent(String userId, int noteId, String noteContent) throws NoteNotFoundExeption {
+		this.recentNotesCache.invalidate(userId);
+		if (this.writeBehindBuffer.isEnabled()) {
+			Optional<Note> buffered = this.writeBehindBuffer.get(userId, noteId);
+			if (buffered.isPresent()) {
+				if (!this.noteQuota.isEnabled()) {
+					/*
+					 * The buffered version is written on the next flush, it must carry the
+					 * content. It is replaced by a new version rather than changed, the flush
+					 * only drops the version it wrote.
+					 */
+					Note updated = new Note(buffered.get());
+					setContent(updated, noteContent);
+					this.writeBehindBuffer.offer(userId, noteId, updated);
+					return Boolean.TRUE;
+				}
+				// with a quota the content is written directly, checked by the write, after the buffered version
+				this.writeBehindBuffer.flush(userId);
+			}
+		}
+		NoteUser noteUser = loadNote(userId, noteId);
+		if (null == noteUser || null == noteUser.getNotes() || noteUser.getNotes().isEmpty()) {
+			throw new NoteNotFoundExeption("note not found exception");
+		}
+		Note note = noteUser.getNotes().get(0);
+		String previousHash = note.getContentHash();
+		long previousSize = this.noteQuota.sizeOf(note);
+		setContent(note, noteContent);
+		this.encryption.encrypt(userId, note);
+		this.blobStore.store(note);
+		long size = this.noteQuota.sizeOf(note);
+		try {
+			this.noteQuota.check(userId, noteUser.getUsedBytes(), size - previousSize);
+			Criteria target = Criteria.where("_id").is(userId).and("notes.noteId").is(noteId);
+			UpdateResult result = this.mongoOperations.updateFirst(withinQuota(new Query(target), size - previousSize),
+					new Update().set("notes.$.noteContent", note.getNoteContent())
+							.set("notes.$.contentHash", note.getContentHash())
+							.set("notes.$.noteSnippet", note.getNoteSnippet()).set("notes.$.simHash", note.getSimHash())
+							.inc("notes.$.version", 1).inc("usedBytes", size - previousSize),
+					NoteUser.class);
+			if (0 == result.getMatchedCount()) {
+				rejectedByQuota(userId, new Query(target), size - previousSize);
+				// deleted or archived since it was read
+				notWritten(note);
+				throw new NoteNotFoundExeption("note not found exception");
+			}
+		} catch (RuntimeException e) {
+			notWritten(note);
+			throw e;
+		} finally {
+			this.recentNotesCache.invalidate(userId);
+		}
+		this.blobStore.release(previousHash);
+		this.noteTelemetry.documentUpdated(userId, size);
+		return Boolean.TRUE;
+	}
+
+	/*
+	 * Notes written before snippets were stored have none, and their content is
+	 * not read by the listings. The content of just those notes is read once, the
+	 * snippets are computed for the response and written back, so the following
+	 * listings find them stored.
+	 */
+	private void backfillSnippets(String userId, List<Note> notes) {
+		List<Note> missing = notes.stream().filter(currNote -> null == currNote.getNoteSnippet())
+				.collect(Collectors.toList());
+		if (missing.isEmpty()) {
+			return;
+		}
+		List<Integer> noteIds = missing.stream().map(Note::getNoteId).collect(Collectors.toList());
+		Criteria withoutSnippet = Criteria.where("notes.noteId").in(noteIds).and("notes.noteSnippet").exists(false)
+				.orOperator(Criteria.where("notes.noteContent").exists(true),
+						Criteria.where("notes.contentHash").exists(true));
+		List<Note> stored = this.mongoOperations.aggregate(newAggregation(match(Criteria.where("_id").is(userId)),
+				unwind("notes"), match(withoutSnippet), replaceRoot("notes")), NoteUser.class, Note.class)
+				.getMappedResults();
+		for (Note storedNote : stored) {
+			Note readable = new Note(storedNote);
+			toReadable(userId, Arrays.asList(readable));
+			String snippet = NoteSnippets.of(readable.getNoteContent());
+			missing.stream().filter(currNote -> currNote.getNoteId() == storedNote.getNoteId())
+					.forEach(currNote -> currNote.setNoteSnippet(snippet));
+			// stored like the snippets written with the notes, encrypted or escaped
+			Note snippetOnly = new Note();
+			snippetOnly.setNoteSnippet(snippet);
+			this.encryption.encrypt(userId, snippetOnly);
+			Note withSnippet = new Note(storedNote);
+			withSnippet.setNoteSnippet(snippetOnly.getNoteSnippet());
+			this.mongoOperations.updateFirst(
+					new Query(Criteria.where("_id").is(userId).and("notes").elemMatch(
+							Criteria.where("noteId").is(storedNote.getNoteId()).and("noteSnippet").exists(false))),
+					new Update().set("notes.$.noteSnippet", withSnippet.getNoteSnippet()).inc("notes.$.version", 1)
+							.inc("usedBytes", this.noteQuota.sizeOf(withSnippet) - this.noteQuota.sizeOf(storedNote)),
+					NoteUser.class);
+		}
+	}
+
+	/*
+	 * Makes a write which grows the usage of a user by delta match only while the
+	 * quota leaves room for it, so the check and the $inc of usedBytes are one
+	 * atomic update. Documents written before the counter existed have none.
+	 */
+	private Query withinQuota(Query query, long delta) {
+		if (this.noteQuota.isEnabled() && delta > 0) {
+			query.addCriteria(new Criteria().orOperator(Criteria.where("usedBytes").exists(false),
+					Criteria.where("usedBytes").lte(this.noteQuota.getMaxBytes() - delta)));
+		}
+		return query;
+	}
+
+	/*
+	 * Tells a write which matched nothing because of the quota from one whose
+	 * note is gone, by looking for the note without the quota filter.
+	 */
+	private void rejectedByQuota(String userId, Query target, long delta) {
+		if (this.noteQuota.isEnabled() && delta > 0 && this.mongoOperations.exists(target, NoteUser.class)) {
+			this.noteQuota.check(userId, this.noteQuota.getMaxBytes(), delta);
+		}
+	}
+
+	/* The stored size of a note once it is encrypted, before a large content moves to its blob. */
+	private long sizeToStore(String userId, Note note) {
+		Note encrypted = new Note(note);
+		this.encryption.encrypt(userId, encrypted);
+		return this.noteQuota.sizeOf(encrypted);
+	}
+
+	/* Reads a single note of a user and the usage counter, nothing else. */
+	private NoteUser loadNote(String userId, int noteId) {
+		Query query = new Query(Criteria.where("_id").is(userId));
+		query.fields().elemMatch("notes", Criteria.where("noteId").is(noteId)).include("usedBytes");
+		return NoteTelemetryListener.projected(() -> this.mongoOperations.findOne(query, NoteUser.class));
+	}
+
+	/*
+	 * The copy of a note which is written to MongoDB, encrypted and with a large
+	 * content moved to its blob as configured. The note itself stays readable.
+	 */
+	private Note toStored(String userId, Note note) {
+		Note stored = new Note(note);
+		this.encryption.encrypt(userId, stored);
+		this.blobStore.store(stored);
+		return stored;
+	}
+
+	/* Gives back the blob reference toStored took for a note which was not written. */
+	private void notWritten(Note stored) {
+		this.blobStore.release(stored.getContentHash());
+	}
+
+	/* Puts back the content stored as a blob and decrypts the notes read from MongoDB. */
+	private void toReadable(String userId, List<Note> notes) {
+		this.blobStore.hydrate(notes);
+		this.encryption.decrypt(userId, notes);
+	}
+
+	private static void setContent(Note note, String noteContent) {
+		note.setNoteContent(noteContent);
+		note.setNoteSnippet(NoteSnippets.of(noteContent));
+		note.setSimHash(NoteSimHash.of(note.getNoteTitle(), noteContent));
+	}
+
+	/*
+	 * This method should be used to add an item to the checklist of a note. The
+	 * item is pushed onto the checklist of that one note, the rest of the user's
+	 * notes is neither read nor written. The quota is checked by the same update.
+	 */
+	public ChecklistItem addChecklistItem(String userId, int noteId, ChecklistItem item)
+			throws NoteNotFoundExeption {
+		item.setItemId(UUID.randomUUID().toString());
+		Document document = new Document("itemId", item.getItemId()).append("text", item.getText()).append("checked",
+				item.isChecked());
+		long size = this.noteQuota.sizeOf(item);
+		Bson noteFilter = Filters.eq("notes.noteId", noteId);
+		if (this.noteQuota.isEnabled()) {
+			noteFilter = Filters.and(noteFilter, Filters.or(Filters.exists("usedBytes", false),
+					Filters.lte("usedBytes", this.noteQuota.getMaxBytes() - size)));
+		}
+		try {
+			updateChecklist(userId, noteFilter,
+					new Document("$push", new Document("notes.$[n].checklist", document)).append("$inc",
+							new Document("usedBytes", size)),
+					Filters.eq("n.noteId", noteId));
+		} catch (NoteNotFoundExeption e) {
+			// only on a rejected write: tell a full quota from a missing note
+			rejectedByQuota(userId, new Query(Criteria.where("_id").is(userId).and("notes.noteId").is(noteId)), size);
+			throw e;
+		}
+		return item;
+	}
+
+	/*
+	 * This method should be used to check or uncheck a checklist item. Only the
+	 * checked flag of the item is set.
+	 */
+	public boolean setChecklistItemChecked(String userId, int noteId, String itemId, boolean checked)
+			throws NoteNotFoundExeption {
+		updateChecklist(userId, checklistItem(noteId, itemId),
+				new Document("$set", new Document("notes.$[n].checklist.$[i].checked", checked)),
+				Filters.eq("n.noteId", noteId), Filters.eq("i.itemId", itemId));
+		return Boolean.TRUE;
+	}
+
+	/* This method should be used to remove an item from the checklist of a note. */
+	public boolean removeChecklistItem(String userId, int noteId, String itemId) throws NoteNotFoundExeption {
+		updateChecklist(userId, checklistItem(noteId, itemId),
+				new Document("$pull", new Document("notes.$[n].checklist", new Document("itemId", itemId))),
+				Filters.eq("n.noteId", noteId));
+		return Boolean.TRUE;
+	}
+
+	private static Bson checklistItem(int noteId, String itemId) {
+		return Filters.elemMatch("notes",
+				Filters.and(Filters.eq("noteId", noteId), Filters.eq("checklist.itemId", itemId)));
+	}
+
+	/*
+	 * Spring Data has no support for array filters yet, so the checklist updates
+	 * go through the driver. The note (and item) must match, otherwise nothing is
+	 * written and the note is reported as not found. The version of the note,
+	 * bound to "n", is incremented along.
+	 */
+	private void updateChecklist(String userId, Bson noteFilter, Document update, Bson... arrayFilters)
+			throws NoteNotFoundExeption {
+		Document inc = (Document) update.get("$inc");
+		update.put("$inc", (null == inc ? new Document() : inc).append("notes.$[n].version", 1));
+		this.recentNotesCache.invalidate(userId);
+		UpdateResult result = this.mongoOperations
+				.getCollection(this.mongoOperations.getCollectionName(NoteUser.class))
+				.updateOne(Filters.and(Filters.eq("_id", userId), noteFilter), update,
+						new UpdateOptions().arrayFilters(Arrays.asList(arrayFilters)));
+		this.recentNotesCache.invalidate(userId);
+		if (result.getMatchedCount() == 0) {
+			throw new NoteNotFoundExeption("note not found exception");
+		}
+		this.noteTelemetry.documentUpdated(userId, update);
 	}
 
 }
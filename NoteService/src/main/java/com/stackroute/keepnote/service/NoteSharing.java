@@ -0,0 +1,214 @@
+package com.stackroute.keepnote.service;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteShare;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NoteConverters;
+import com.stackroute.keepnote.repository.NoteShareRepository;
+
+/*
+ * Sharing of notes between users. Every share is an edge in the NoteShare
+ * collection, found by its recipient through an index, and the share list of
+ * the most active recipients is cached in an LRU of cache-size users which is
+ * invalidated by every change of their shares.
+ *
+ * The shared notes are resolved with one aggregation over the owners' NoteUser
+ * documents: $in on the owners, then only the shared notes of each owner are
+ * kept. An $elemMatch projection would return just the first shared note of an
+ * owner, so it is used for the reads of a single shared note only.
+ */
+
+@Component
+public class NoteSharing {
+
+	private static final NoteConverters.NoteReader NOTE_READER = new NoteConverters.NoteReader();
+
+	private final NoteShareRepository noteShareRepository;
+	private final MongoOperations mongoOperations;
+	private final NoteWriteBehindBuffer writeBehindBuffer;
+	private final NoteEncryption encryption;
+	private final NoteBlobStore blobStore;
+	private final int cacheSize;
+
+	private final LinkedHashMap<String, List<NoteShare>> sharesByRecipient = new LinkedHashMap<>(16, 0.75f, true);
+	// incremented by every invalidation, a list loaded meanwhile is not cached
+	private long invalidations;
+
+	@Autowired
+	public NoteSharing(NoteShareRepository noteShareRepository, MongoOperations mongoOperations,
+			NoteWriteBehindBuffer writeBehindBuffer, NoteEncryption encryption, NoteBlobStore blobStore,
+			@Value("${keepnote.note.sharing.cache-size:10000}") int cacheSize) {
+		this.noteShareRepository = noteShareRepository;
+		this.mongoOperations = mongoOperations;
+		this.writeBehindBuffer = writeBehindBuffer;
+		this.encryption = encryption;
+		this.blobStore = blobStore;
+		this.cacheSize = cacheSize;
+	}
+
+	/* Shares a note with another user, replacing an earlier share with that user. */
+	public NoteShare share(String ownerId, int noteId, String recipientId, String permission)
+			throws NoteNotFoundExeption {
+		if (!this.mongoOperations.exists(new Query(Criteria.where("_id").is(ownerId).and("notes.noteId").is(noteId)),
+				NoteUser.class)) {
+			throw new NoteNotFoundExeption("note not found exception");
+		}
+		NoteShare share = this.noteShareRepository.save(new NoteShare(ownerId, noteId, recipientId, permission));
+		invalidate(recipientId);
+		return share;
+	}
+
+	public boolean unshare(String ownerId, int noteId, String recipientId) {
+		String shareId = NoteShare.shareId(ownerId, noteId, recipientId);
+		if (!this.noteShareRepository.existsById(shareId)) {
+			return Boolean.FALSE;
+		}
+		this.noteShareRepository.deleteById(shareId);
+		invalidate(recipientId);
+		return Boolean.TRUE;
+	}
+
+	/* Returns the share of a note with a user, if the note is shared with them. */
+	public Optional<NoteShare> find(String ownerId, int noteId, String recipientId) {
+		return shares(recipientId).stream()
+				.filter(share -> share.getOwnerId().equals(ownerId) && share.getNoteId() == noteId).findFirst();
+	}
+
+	/* Returns the single shared note, read with an $elemMatch projection. */
+	public Note getSharedNote(NoteShare share) throws NoteNotFoundExeption {
+		Optional<Note> buffered = this.writeBehindBuffer.isEnabled()
+				? this.writeBehindBuffer.get(share.getOwnerId(), share.getNoteId())
+				: Optional.empty();
+		Query query = new Query(Criteria.where("_id").is(share.getOwnerId()));
+		query.fields().elemMatch("notes", Criteria.where("noteId").is(share.getNoteId()));
+		NoteUser owner = NoteTelemetryListener.projected(() -> this.mongoOperations.findOne(query, NoteUser.class));
+		if (null == owner || null == owner.getNotes() || owner.getNotes().isEmpty()) {
+			throw new NoteNotFoundExeption("note not found exception");
+		}
+		if (buffered.isPresent()) {
+			return NoteWriteBehindBuffer.merge(buffered.get(), owner.getNotes().get(0));
+		}
+		this.blobStore.hydrate(owner.getNotes());
+		this.encryption.decrypt(share.getOwnerId(), owner.getNotes());
+		return owner.getNotes().get(0);
+	}
+
+	/*
+	 * Returns the shares of a user with the summaries of their notes, newest
+	 * first. Shares of notes which no longer exist are left out.
+	 */
+	public List<NoteShare> getSharedWithMe(String recipientId) {
+		List<NoteShare> shares = shares(recipientId);
+		if (shares.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<String, List<Integer>> noteIdsByOwner = shares.stream().collect(Collectors.groupingBy(NoteShare::getOwnerId,
+				LinkedHashMap::new, Collectors.mapping(NoteShare::getNoteId, Collectors.toList())));
+		Criteria[] sharedNotes = noteIdsByOwner.entrySet().stream()
+				.map(owner -> Criteria.where("_id").is(owner.getKey()).and("notes.noteId").in(owner.getValue()))
+				.toArray(Criteria[]::new);
+		// the owner is the _id of the unwound document, createdBy is whatever the client sent
+		List<Document> sharedWithOwner = this.mongoOperations.aggregate(
+				newAggregation(match(Criteria.where("_id").in(noteIdsByOwner.keySet())), unwind("notes"),
+						match(new Criteria().orOperator(sharedNotes)),
+						context -> new Document("$project", new Document("notes.noteContent", 0))),
+				NoteUser.class, Document.class).getMappedResults();
+
+		Map<String, Note> notesById = new HashMap<>();
+		for (Document shared : sharedWithOwner) {
+			String ownerId = shared.getString("_id");
+			Note note = NOTE_READER.convert((Document) shared.get("notes"));
+			this.encryption.decrypt(ownerId, note);
+			notesById.put(NoteShare.shareId(ownerId, note.getNoteId(), recipientId), note);
+		}
+		List<NoteShare> resolved = new ArrayList<>();
+		for (NoteShare share : shares) {
+			Optional<Note> buffered = this.writeBehindBuffer.isEnabled()
+					? this.writeBehindBuffer.get(share.getOwnerId(), share.getNoteId())
+					: Optional.empty();
+			Note stored = notesById.get(share.getShareId());
+			Note note = buffered.isPresent() ? NoteWriteBehindBuffer.merge(buffered.get(), stored) : stored;
+			if (null != note) {
+				NoteShare withNote = new NoteShare(share.getOwnerId(), share.getNoteId(), recipientId,
+						share.getPermission());
+				withNote.setSharedAt(share.getSharedAt());
+				withNote.setNote(note);
+				resolved.add(withNote);
+			}
+		}
+		return resolved;
+	}
+
+	/* Removes the shares of a deleted note. */
+	public void noteDeleted(String ownerId, int noteId) {
+		remove(this.noteShareRepository.findByOwnerIdAndNoteId(ownerId, noteId));
+	}
+
+	/* Removes the shares of every note of a user whose notes are all deleted. */
+	public void ownerDeleted(String ownerId) {
+		remove(this.noteShareRepository.findByOwnerId(ownerId));
+	}
+
+	private void remove(Collection<NoteShare> shares) {
+		if (shares.isEmpty()) {
+			return;
+		}
+		this.noteShareRepository.deleteAll(shares);
+		shares.stream().map(NoteShare::getRecipientId).distinct().forEach(this::invalidate);
+	}
+
+	private List<NoteShare> shares(String recipientId) {
+		long loadedAt;
+		synchronized (this.sharesByRecipient) {
+			List<NoteShare> shares = this.sharesByRecipient.get(recipientId);
+			if (null != shares) {
+				return shares;
+			}
+			loadedAt = this.invalidations;
+		}
+		List<NoteShare> shares = this.noteShareRepository.findByRecipientIdOrderBySharedAtDesc(recipientId);
+		synchronized (this.sharesByRecipient) {
+			if (loadedAt != this.invalidations) {
+				return shares;
+			}
+			this.sharesByRecipient.put(recipientId, shares);
+			Iterator<String> eldest = this.sharesByRecipient.keySet().iterator();
+			while (this.sharesByRecipient.size() > this.cacheSize && eldest.hasNext()) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return shares;
+	}
+
+	private void invalidate(String recipientId) {
+		synchronized (this.sharesByRecipient) {
+			this.sharesByRecipient.remove(recipientId);
+			this.invalidations++;
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.stackroute.keepnote.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/*
+ * 64-bit SimHash fingerprint of a note. Every word of the title and content is
+ * hashed and votes on each of the 64 bits, so notes with mostly the same words
+ * end up with fingerprints that differ in only a few bits.
+ */
+public final class NoteSimHash {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private NoteSimHash() {
+	}
+
+	/* Returns the fingerprint, or 0 for a note without any words. */
+	public static long of(String noteTitle, String noteContent) {
+		int[] votes = new int[64];
+		boolean hasWords = vote(noteTitle, votes);
+		hasWords |= vote(noteContent, votes);
+		if (!hasWords) {
+			return 0L;
+		}
+		long fingerprint = 0L;
+		for (int bit = 0; bit < 64; bit++) {
+			if (votes[bit] > 0) {
+				fingerprint |= 1L << bit;
+			}
+		}
+		return fingerprint;
+	}
+
+	public static int distance(long fingerprint, long otherFingerprint) {
+		return Long.bitCount(fingerprint ^ otherFingerprint);
+	}
+
+	private static boolean vote(String text, int[] votes) {
+		if (null == text) {
+			return false;
+		}
+		boolean hasWords = false;
+		for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+			if (word.isEmpty()) {
+				continue;
+			}
+			hasWords = true;
+			long hash = hash(word);
+			for (int bit = 0; bit < 64; bit++) {
+				votes[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+			}
+		}
+		return hasWords;
+	}
+
+	// 64-bit FNV-1a
+	private static long hash(String word) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : word.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+}
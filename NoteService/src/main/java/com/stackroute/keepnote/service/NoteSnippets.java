@@ -0,0 +1,26 @@
+package com.stackroute.keepnote.service;
+
+/*
+ * Computes the bounded snippet stored alongside each note. List responses carry
+ * the snippet instead of the full noteContent.
+ */
+public final class NoteSnippets {
+
+	public static final int SNIPPET_LENGTH = 200;
+
+	private NoteSnippets() {
+	}
+
+	public static String of(String noteContent) {
+		if (null == noteContent || noteContent.length() <= SNIPPET_LENGTH) {
+			return noteContent;
+		}
+		int end = SNIPPET_LENGTH;
+		// do not cut a surrogate pair in half
+		if (Character.isHighSurrogate(noteContent.charAt(end - 1))) {
+			end--;
+		}
+		return noteContent.substring(0, end);
+	}
+
+}
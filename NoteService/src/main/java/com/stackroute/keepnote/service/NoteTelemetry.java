@@ -0,0 +1,130 @@
+package com.stackroute.keepnote.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+ * Telemetry on the NoteUser documents: histograms of the document sizes read
+ * and written, and the users writing most often and most bytes. The heavy
+ * hitters are tracked with Space-Saving sketches per time window, so the
+ * report shows the last complete window next to the current one and a user
+ * hammering MongoDB shows up within a window. All of it is kept in memory and
+ * starts over on restart.
+ *
+ * Document sizes are the encoded BSON sizes measured by NoteTelemetryListener;
+ * reads with a projection are not counted. The targeted updates, which Spring
+ * Data publishes no event for, are reported by the code writing them: by the
+ * size of their update document, or of the note they write.
+ */
+
+@Component
+public class NoteTelemetry {
+
+	private static final DocumentCodec CODEC = new DocumentCodec();
+
+	private final int topN;
+	private final int sketchCapacity;
+	private final long windowMs;
+
+	private final SizeHistogram readSizes = new SizeHistogram();
+	private final SizeHistogram writeSizes = new SizeHistogram();
+
+	private volatile Window current;
+	private volatile Window previous;
+
+	@Autowired
+	public NoteTelemetry(@Value("${keepnote.note.telemetry.top-n:10}") int topN,
+			@Value("${keepnote.note.telemetry.sketch-capacity:200}") int sketchCapacity,
+			@Value("${keepnote.note.telemetry.window-ms:60000}") long windowMs) {
+		this.topN = topN;
+		this.sketchCapacity = sketchCapacity;
+		this.windowMs = windowMs;
+		this.current = new Window(sketchCapacity, System.currentTimeMillis());
+	}
+
+	public void documentRead(String userId, long documentBytes) {
+		this.readSizes.record(documentBytes);
+	}
+
+	public void documentWritten(String userId, long documentBytes) {
+		this.writeSizes.record(documentBytes);
+		writeRecorded(userId, documentBytes);
+	}
+
+	/* A targeted update, which writes updateBytes without replacing the document. */
+	public void documentUpdated(String userId, long updateBytes) {
+		writeRecorded(userId, updateBytes);
+	}
+
+	/* The same, measured by the encoded size of the update document. */
+	public void documentUpdated(String userId, Document update) {
+		documentUpdated(userId, new RawBsonDocument(update, CODEC).getByteBuffer().remaining());
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("readSizes", this.readSizes.snapshot());
+		snapshot.put("writeSizes", this.writeSizes.snapshot());
+		Window window = window(System.currentTimeMillis());
+		snapshot.put("currentWindow", window.snapshot(this.topN));
+		Window last = this.previous;
+		if (null != last) {
+			snapshot.put("previousWindow", last.snapshot(this.topN));
+		}
+		return snapshot;
+	}
+
+	private void writeRecorded(String userId, long bytes) {
+		Window window = window(System.currentTimeMillis());
+		window.writes.add(userId, 1);
+		window.writtenBytes.add(userId, Math.max(0, bytes));
+	}
+
+	private Window window(long now) {
+		Window window = this.current;
+		if (now - window.start < this.windowMs) {
+			return window;
+		}
+		synchronized (this) {
+			if (this.current == window) {
+				window.end = now;
+				this.previous = window;
+				this.current = new Window(this.sketchCapacity, now);
+			}
+			return this.current;
+		}
+	}
+
+	private static final class Window {
+
+		private final long start;
+		private volatile long end;
+		private final SpaceSaving writes;
+		private final SpaceSaving writtenBytes;
+
+		private Window(int capacity, long start) {
+			this.start = start;
+			this.writes = new SpaceSaving(capacity);
+			this.writtenBytes = new SpaceSaving(capacity);
+		}
+
+		private Map<String, Object> snapshot(int topN) {
+			long seconds = Math.max(1, ((0 == this.end ? System.currentTimeMillis() : this.end) - this.start) / 1000);
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("start", this.start);
+			snapshot.put("seconds", seconds);
+			snapshot.put("writesPerSecond", (double) this.writes.getTotal() / seconds);
+			snapshot.put("topWriters", this.writes.top(topN));
+			snapshot.put("topWrittenBytes", this.writtenBytes.top(topN));
+			return snapshot;
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.stackroute.keepnote.service;
+
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.model.NoteUser;
+
+/*
+ * Feeds NoteTelemetry with every NoteUser document loaded or saved through
+ * Spring Data, whichever repository or template method did it.
+ *
+ * A loaded or saved document is measured by its encoded BSON size, the
+ * usedBytes it carries only counts the notes and drifts until the quota
+ * reconciles it.
+ * Reads with a projection return a part of the document only; they are run
+ * through projected() and left out of the read sizes.
+ */
+
+@Component
+public class NoteTelemetryListener extends AbstractMongoEventListener<NoteUser> {
+
+	private static final DocumentCodec CODEC = new DocumentCodec();
+
+	/* Set while the current thread runs a projected read, the load events are published on that thread. */
+	private static final ThreadLocal<Boolean> PROJECTED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	private final NoteTelemetry telemetry;
+
+	@Autowired
+	public NoteTelemetryListener(NoteTelemetry telemetry) {
+		this.telemetry = telemetry;
+	}
+
+	/* Runs a read of NoteUser documents with a projection, which is not measured. */
+	public static <T> T projected(Supplier<T> read) {
+		boolean outer = PROJECTED.get();
+		PROJECTED.set(Boolean.TRUE);
+		try {
+			return read.get();
+		} finally {
+			PROJECTED.set(outer);
+		}
+	}
+
+	@Override
+	public void onAfterLoad(AfterLoadEvent<NoteUser> event) {
+		Document document = event.getDocument();
+		if (null != document && !PROJECTED.get()) {
+			this.telemetry.documentRead(String.valueOf(document.get("_id")),
+					new RawBsonDocument(document, CODEC).getByteBuffer().remaining());
+		}
+	}
+
+	@Override
+	public void onAfterSave(AfterSaveEvent<NoteUser> event) {
+		Document document = event.getDocument();
+		if (null != document) {
+			this.telemetry.documentWritten(event.getSource().getUserId(),
+					new RawBsonDocument(document, CODEC).getByteBuffer().remaining());
+		}
+	}
+
+}
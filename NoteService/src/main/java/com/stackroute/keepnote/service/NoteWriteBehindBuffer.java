@@ -0,0 +1,285 @@
+package com.stackroute.keepnote.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.result.UpdateResult;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NoteConverters;
+
+/*
+ * Write-behind buffer for note updates. Editors autosave the same note every
+ * few seconds, so updates are kept in memory per (userId, noteId) and only the
+ * latest version of each note is written to MongoDB. The buffer is flushed on a
+ * fixed interval, as soon as it holds max-pending notes and on shutdown.
+ *
+ * A flush writes every note as a positional update of that note alone, so it
+ * never overwrites what other operations changed in the document meanwhile.
+ *
+ * The mode is opt-in through keepnote.note.write-behind.enabled; when disabled
+ * every update goes straight to the repository as before.
+ */
+
+@Component
+public class NoteWriteBehindBuffer {
+
+	private static final Log log = LogFactory.getLog(NoteWriteBehindBuffer.class);
+
+	private final MongoOperations mongoOperations;
+	private final NoteBlobStore blobStore;
+	private final NoteEncryption encryption;
+	private final NoteQuota noteQuota;
+	private final NoteTelemetry noteTelemetry;
+	private final boolean enabled;
+	private final long flushIntervalMs;
+	private final int maxPending;
+
+	/*
+	 * Pending notes grouped by userId. Every structural change of a user's map
+	 * goes through compute on the outer map so that a flush can drop an emptied
+	 * map without losing a concurrent update.
+	 */
+	private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Note>> pending = new ConcurrentHashMap<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	// at most one early flush is queued however many updates go past max-pending
+	private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+	private ScheduledExecutorService flusher;
+
+	@Autowired
+	public NoteWriteBehindBuffer(MongoOperations mongoOperations, NoteBlobStore blobStore, NoteEncryption encryption,
+			NoteQuota noteQuota, NoteTelemetry noteTelemetry,
+			@Value("${keepnote.note.write-behind.enabled:false}") boolean enabled,
+			@Value("${keepnote.note.write-behind.flush-interval-ms:2000}") long flushIntervalMs,
+			@Value("${keepnote.note.write-behind.max-pending:500}") int maxPending) {
+		this.mongoOperations = mongoOperations;
+		this.blobStore = blobStore;
+		this.encryption = encryption;
+		this.noteQuota = noteQuota;
+		this.noteTelemetry = noteTelemetry;
+		this.enabled = enabled;
+		this.flushIntervalMs = flushIntervalMs;
+		this.maxPending = maxPending;
+	}
+
+	@PostConstruct
+	public void start() {
+		if (this.enabled) {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "note-write-behind");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.flusher.scheduleWithFixedDelay(this::flush, this.flushIntervalMs, this.flushIntervalMs,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (null != this.flusher) {
+			this.flusher.shutdown();
+			try {
+				this.flusher.awaitTermination(this.flushIntervalMs, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/*
+	 * Buffers the latest version of a note, replacing any version of the same
+	 * note that has not been flushed yet.
+	 */
+	public void offer(String userId, int noteId, Note note) {
+		this.pending.compute(userId, (key, notes) -> {
+			ConcurrentHashMap<Integer, Note> userNotes = null == notes ? new ConcurrentHashMap<>() : notes;
+			if (null == userNotes.put(noteId, note)) {
+				this.pendingCount.incrementAndGet();
+			}
+			return userNotes;
+		});
+		if (this.pendingCount.get() >= this.maxPending && null != this.flusher
+				&& this.flushQueued.compareAndSet(false, true)) {
+			this.flusher.execute(() -> {
+				// cleared first, updates arriving during this flush may queue the next one
+				this.flushQueued.set(false);
+				flush();
+			});
+		}
+	}
+
+	/*
+	 * Returns the buffered version of a note, if any, so that reads observe
+	 * updates which have not reached MongoDB yet.
+	 */
+	public Optional<Note> get(String userId, int noteId) {
+		Map<Integer, Note> userNotes = this.pending.get(userId);
+		return null == userNotes ? Optional.empty() : Optional.ofNullable(userNotes.get(noteId));
+	}
+
+	/*
+	 * Overlays the buffered notes of a user on top of the stored ones. The
+	 * buffered notes are copied, so a caller changing the returned notes, e.g. by
+	 * hydrating them, never changes what the next flush writes.
+	 */
+	public List<Note> overlay(String userId, List<Note> storedNotes) {
+		Map<Integer, Note> userNotes = this.pending.get(userId);
+		if (null == userNotes || userNotes.isEmpty()) {
+			return storedNotes;
+		}
+		Map<Integer, Note> buffered = new HashMap<>(userNotes);
+		List<Note> merged = new ArrayList<>();
+		if (null != storedNotes) {
+			for (Note stored : storedNotes) {
+				Note latest = buffered.remove(stored.getNoteId());
+				merged.add(null == latest ? stored : merge(latest, stored));
+			}
+		}
+		buffered.values().forEach(latest -> merged.add(new Note(latest)));
+		return merged;
+	}
+
+	/*
+	 * A copy of a buffered note with the rank and checklist of its stored
+	 * version: the flush never writes them, so the stored ones are current.
+	 */
+	public static Note merge(Note buffered, Note stored) {
+		Note merged = new Note(buffered);
+		if (null != stored) {
+			merged.setRank(stored.getRank());
+			merged.setChecklist(stored.getChecklist());
+		}
+		return merged;
+	}
+
+	/* Drops a buffered note, used when the note itself is deleted. */
+	public void discard(String userId, int noteId) {
+		this.pending.computeIfPresent(userId, (key, notes) -> {
+			if (null != notes.remove(noteId)) {
+				this.pendingCount.decrementAndGet();
+			}
+			return notes.isEmpty() ? null : notes;
+		});
+	}
+
+	/* Drops every buffered note of a user, used when all notes are deleted. */
+	public void discard(String userId) {
+		this.pending.computeIfPresent(userId, (key, notes) -> {
+			this.pendingCount.addAndGet(-notes.size());
+			return null;
+		});
+	}
+
+	/*
+	 * Writes every buffered note with one read per user and one update per note.
+	 * A note is only removed from the buffer once it has been written and has not
+	 * been superseded in the meantime, so a failed flush is retried on the next
+	 * run.
+	 */
+	public synchronized void flush() {
+		for (String userId : new ArrayList<>(this.pending.keySet())) {
+			flush(userId);
+		}
+	}
+
+	/*
+	 * Writes the buffered notes of one user now, used before a note of the user
+	 * is written directly, so that an older buffered version is not flushed over
+	 * it afterwards.
+	 */
+	public synchronized void flush(String userId) {
+		Map<Integer, Note> userNotes = this.pending.get(userId);
+		if (null == userNotes) {
+			return;
+		}
+		Map<Integer, Note> snapshot = new HashMap<>(userNotes);
+		try {
+			write(userId, snapshot);
+		} catch (Exception e) {
+			log.error("write-behind flush failed for user " + userId + ": " + e.getMessage());
+			return;
+		}
+		this.pending.computeIfPresent(userId, (key, notes) -> {
+			snapshot.forEach((noteId, note) -> {
+				if (notes.remove(noteId, note)) {
+					this.pendingCount.decrementAndGet();
+				}
+			});
+			return notes.isEmpty() ? null : notes;
+		});
+	}
+
+	/*
+	 * The stored versions are read only for the usage counter and the blobs they
+	 * refer to. Rank and checklist have their own operations and are not
+	 * written, and a note which is no longer in the user's document, deleted or
+	 * archived meanwhile, is dropped instead of being written back.
+	 */
+	private void write(String userId, Map<Integer, Note> snapshot) {
+		NoteUser noteUser = this.mongoOperations.findById(userId, NoteUser.class);
+		Map<Integer, Note> previousNotes = null == noteUser || null == noteUser.getNotes() ? new HashMap<>()
+				: noteUser.getNotes().stream().filter(currNote -> snapshot.containsKey(currNote.getNoteId()))
+						.collect(Collectors.toMap(Note::getNoteId, currNote -> currNote, (first, second) -> first));
+		snapshot.forEach((noteId, note) -> {
+			Note previous = previousNotes.get(noteId);
+			if (null == previous) {
+				log.warn("buffered note " + noteId + " of user " + userId + " is gone, update dropped");
+				return;
+			}
+			// the buffered notes stay readable, their encrypted copies are written
+			Note stored = new Note(note);
+			stored.setRank(previous.getRank());
+			stored.setChecklist(previous.getChecklist());
+			this.encryption.encrypt(userId, stored);
+			this.blobStore.store(stored);
+			long size = this.noteQuota.sizeOf(stored);
+			UpdateResult result;
+			try {
+				result = this.mongoOperations.updateFirst(
+						new Query(Criteria.where("_id").is(userId).and("notes.noteId").is(noteId)),
+						NoteConverters.setNote("notes.$", stored, "rank", "checklist").inc("usedBytes",
+								size - this.noteQuota.sizeOf(previous)),
+						NoteUser.class);
+			} catch (RuntimeException e) {
+				this.blobStore.release(stored.getContentHash());
+				throw e;
+			}
+			if (0 == result.getMatchedCount()) {
+				this.blobStore.release(stored.getContentHash());
+			} else {
+				this.blobStore.release(previous.getContentHash());
+				this.noteTelemetry.documentUpdated(userId, size);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.stackroute.keepnote.service;
+
+import com.stackroute.keepnote.model.Note;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Non-blocking counterpart of NoteService, used when the application is started
+ * as a reactive web application. A missing user or note completes the Mono
+ * empty instead of throwing NoteNotFoundExeption.
+ */
+public interface ReactiveNoteService {
+
+    Mono<Boolean> createNote(Note note);
+
+    Mono<Boolean> deleteNote(String userId, int noteId);
+
+    Mono<Boolean> deleteAllNotes(String userId);
+
+    Mono<Note> updateNote(Note note, int id, String userId);
+
+    Mono<Note> getNoteByNoteId(String userId, int noteId);
+
+    Flux<Note> getAllNoteByUserId(String userId);
+
+    Flux<Note> exportNotes(String userId);
+
+}
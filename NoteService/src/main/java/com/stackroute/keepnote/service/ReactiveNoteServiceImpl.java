@@ -0,0 +1,293 @@
+package com.stackroute.keepnote.service;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.replaceRoot;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.stackroute.keepnote.model.ArchivedNote;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteBlob;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NoteConverters;
+import com.stackroute.keepnote.repository.ReactiveNoteRepository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Reactive implementation of the note operations. It keeps the behaviour of
+ * NoteServiceImpl but never blocks a thread while waiting on MongoDB, and is
+ * only created when the application runs on the reactive web stack.
+ *
+ * Like NoteServiceImpl it only writes the note it changes, with a positional
+ * update which adjusts usedBytes in the same write and carries the quota in
+ * its filter, and it gives back the blob references of the bodies it replaces
+ * or removes, so it can share the collection with servlet instances. Bodies
+ * they stored as blobs are read back on every read path, and a note which is
+ * not in the user's document is looked up in the archive.
+ *
+ * Notes are written in plain text and with their content inline here:
+ * encryption at rest needs the blocking key store of NoteEncryption and the
+ * blob store takes its references with blocking writes, so the reactive
+ * variant refuses to start when either is enabled rather than storing notes
+ * the servlet instances would not expect.
+ */
+
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveNoteServiceImpl implements ReactiveNoteService {
+
+	private final ReactiveNoteRepository noteRepository;
+	private final ReactiveMongoOperations mongoOperations;
+	private final NoteQuota noteQuota;
+	private final int exportBatchSize;
+
+	@Autowired
+	public ReactiveNoteServiceImpl(ReactiveNoteRepository noteRepository, ReactiveMongoOperations mongoOperations,
+			NoteQuota noteQuota, @Value("${keepnote.note.encryption.enabled:false}") boolean encryptionEnabled,
+			@Value("${keepnote.note.blobs.inline-threshold:0}") int blobInlineThreshold,
+			@Value("${keepnote.note.reactive.export-batch-size:100}") int exportBatchSize) {
+		if (encryptionEnabled) {
+			throw new IllegalStateException(
+					"keepnote.note.encryption.enabled is not supported by the reactive web application type");
+		}
+		if (blobInlineThreshold > 0) {
+			throw new IllegalStateException(
+					"keepnote.note.blobs.inline-threshold is not supported by the reactive web application type");
+		}
+		this.noteRepository = noteRepository;
+		this.mongoOperations = mongoOperations;
+		this.noteQuota = noteQuota;
+		this.exportBatchSize = exportBatchSize;
+	}
+
+	public Mono<Boolean> createNote(Note note) {
+		note.setNoteSnippet(NoteSnippets.of(note.getNoteContent()));
+		note.setSimHash(NoteSimHash.of(note.getNoteTitle(), note.getNoteContent()));
+		note.setContentHash(null);
+		if (null != note.getChecklist()) {
+			note.getChecklist().forEach(item -> item.setItemId(UUID.randomUUID().toString()));
+		}
+		long size = this.noteQuota.sizeOf(note);
+		NoteUser noteUser = new NoteUser();
+		noteUser.setUserId(note.getNoteCreatedBy());
+		noteUser.setNotes(Arrays.asList(note));
+		noteUser.setUsedBytes(size);
+		return Mono.fromRunnable(() -> this.noteQuota.check(note.getNoteCreatedBy(), 0, size))
+				.then(this.noteRepository.insert(noteUser).map(created -> Boolean.TRUE).onErrorReturn(Boolean.FALSE));
+	}
+
+	public Mono<Boolean> deleteNote(String userId, int noteId) {
+		return loadNote(userId, noteId).flatMap(noteUser -> {
+			Note removed = singleNote(noteUser);
+			if (null == removed) {
+				// not in the user's document, at most archived
+				return deleteArchived(userId, noteId).thenReturn(Boolean.TRUE);
+			}
+			// an archived copy left next to the note shares its blob reference
+			Mono<Void> archived = this.mongoOperations.remove(
+					new Query(Criteria.where("_id").is(ArchivedNote.archiveId(userId, noteId))), ArchivedNote.class)
+					.then();
+			// only the note is pulled, what changed in the other notes since the read is kept
+			Update pull = new Update().pull("notes", new Document("noteId", noteId)).inc("usedBytes",
+					-this.noteQuota.sizeOf(removed));
+			return archived
+					.then(this.mongoOperations.updateFirst(
+							new Query(Criteria.where("_id").is(userId).and("notes.noteId").is(noteId)), pull,
+							NoteUser.class))
+					.flatMap(result -> 0 == result.getMatchedCount() ? Mono.<Void>empty()
+							: release(removed.getContentHash()))
+					.thenReturn(Boolean.TRUE);
+		}).defaultIfEmpty(Boolean.FALSE);
+	}
+
+	public Mono<Boolean> deleteAllNotes(String userId) {
+		return this.noteRepository.findById(userId).flatMap(noteUser -> {
+			List<Note> notes = null == noteUser.getNotes() ? new ArrayList<>() : noteUser.getNotes();
+			Set<Integer> hotNoteIds = notes.stream().map(Note::getNoteId).collect(Collectors.toSet());
+			return this.noteRepository.delete(noteUser).thenMany(Flux.fromIterable(notes))
+					.concatMap(note -> release(note.getContentHash()))
+					.thenMany(this.mongoOperations.findAllAndRemove(new Query(Criteria.where("userId").is(userId)),
+							ArchivedNote.class))
+					// a copy of a note of the document shares its reference
+					.filter(archived -> !hotNoteIds.contains(archived.getNoteId()))
+					.concatMap(this::releaseArchived).then(Mono.just(Boolean.TRUE));
+		}).defaultIfEmpty(Boolean.FALSE);
+	}
+
+	/*
+	 * Writes only this note, with the stored rank and checklist, which have
+	 * operations of their own. An archived note becomes a hot note again, unless
+	 * it has been added meanwhile. The filter of the write carries the quota, a
+	 * write it rejects fails with NoteQuotaExceededException.
+	 */
+	public Mono<Note> updateNote(Note note, int id, String userId) {
+		note.setNoteSnippet(NoteSnippets.of(note.getNoteContent()));
+		note.setSimHash(NoteSimHash.of(note.getNoteTitle(), note.getNoteContent()));
+		return loadNote(userId, id).flatMap(noteUser -> {
+			Note stored = singleNote(noteUser);
+			if (null != stored) {
+				note.setRank(stored.getRank());
+				note.setChecklist(stored.getChecklist());
+			}
+			long delta = this.noteQuota.sizeOf(note) - this.noteQuota.sizeOf(stored);
+			Criteria target = null != stored ? Criteria.where("_id").is(userId).and("notes.noteId").is(id)
+					: Criteria.where("_id").is(userId).and("notes.noteId").ne(id);
+			Update update = null != stored
+					? NoteConverters.setNote("notes.$", note, "rank", "checklist").inc("usedBytes", delta)
+					: new Update().push("notes", note).inc("usedBytes", delta);
+			return retain(note)
+					.then(this.mongoOperations.updateFirst(withinQuota(new Query(target), delta), update,
+							NoteUser.class))
+					.flatMap(result -> {
+						if (0 == result.getMatchedCount()) {
+							return release(note.getContentHash())
+									.then(this.<Note>rejectedByQuota(userId, new Query(target), delta));
+						}
+						return (null != stored ? release(stored.getContentHash()) : deleteArchived(userId, id))
+								.thenReturn(note);
+					});
+		});
+	}
+
+	/* A note which is not in the user's document is looked up in the archive. */
+	public Mono<Note> getNoteByNoteId(String userId, int noteId) {
+		return this.noteRepository.findById(userId).flatMap(noteUser -> {
+			Note note = null == noteUser.getNotes() ? null
+					: noteUser.getNotes().stream().filter(currNote -> currNote.getNoteId() == noteId).findFirst()
+							.orElse(null);
+			return null != note ? Mono.just(note) : findArchived(userId, noteId);
+		}).flatMap(note -> hydrate(Arrays.asList(note)).map(notes -> notes.get(0)));
+	}
+
+	public Flux<Note> getAllNoteByUserId(String userId) {
+		return this.noteRepository.findById(userId)
+				.flatMap(noteUser -> hydrate(null == noteUser.getNotes() ? new ArrayList<>() : noteUser.getNotes()))
+				.flatMapIterable(notes -> notes);
+	}
+
+	/*
+	 * Streams the notes of a user one by one straight from an aggregation cursor,
+	 * so the export never holds the whole NoteUser document in memory. The bodies
+	 * stored as blobs are read for export-batch-size notes at a time.
+	 */
+	public Flux<Note> exportNotes(String userId) {
+		return this.mongoOperations
+				.aggregate(newAggregation(match(Criteria.where("_id").is(userId)), unwind("notes"),
+						replaceRoot("notes")), NoteUser.class, Note.class)
+				.buffer(this.exportBatchSize).concatMap(this::hydrate).flatMapIterable(notes -> notes);
+	}
+
+	/* Reads a single note of a user and the usage counter, nothing else. */
+	private Mono<NoteUser> loadNote(String userId, int noteId) {
+		Query query = new Query(Criteria.where("_id").is(userId));
+		query.fields().elemMatch("notes", Criteria.where("noteId").is(noteId)).include("usedBytes");
+		return this.mongoOperations.findOne(query, NoteUser.class);
+	}
+
+	private static Note singleNote(NoteUser noteUser) {
+		return null == noteUser.getNotes() || noteUser.getNotes().isEmpty() ? null : noteUser.getNotes().get(0);
+	}
+
+	/* As NoteServiceImpl.withinQuota: the quota check and the $inc of usedBytes are one update. */
+	private Query withinQuota(Query query, long delta) {
+		if (this.noteQuota.isEnabled() && delta > 0) {
+			query.addCriteria(new Criteria().orOperator(Criteria.where("usedBytes").exists(false),
+					Criteria.where("usedBytes").lte(this.noteQuota.getMaxBytes() - delta)));
+		}
+		return query;
+	}
+
+	/* Fails a write which matched nothing because of the quota, completes empty when the note is gone. */
+	private <T> Mono<T> rejectedByQuota(String userId, Query target, long delta) {
+		if (!this.noteQuota.isEnabled() || delta <= 0) {
+			return Mono.empty();
+		}
+		return this.mongoOperations.exists(target, NoteUser.class).filter(Boolean::booleanValue)
+				.flatMap(exists -> Mono.<T>fromRunnable(
+						() -> this.noteQuota.check(userId, this.noteQuota.getMaxBytes(), delta)));
+	}
+
+	/*
+	 * As NoteBlobStore.hydrate, without blocking: puts the content back into the
+	 * notes which refer to a blob, which servlet instances may have written.
+	 */
+	private Mono<List<Note>> hydrate(List<Note> notes) {
+		Set<String> hashes = notes.stream().filter(note -> null == note.getNoteContent())
+				.map(Note::getContentHash).filter(Objects::nonNull).collect(Collectors.toSet());
+		if (hashes.isEmpty()) {
+			return Mono.just(notes);
+		}
+		return this.mongoOperations.find(new Query(Criteria.where("_id").in(hashes)), NoteBlob.class)
+				.collectMap(NoteBlob::getBlobId, NoteBlob::getContent).map(contents -> {
+					notes.stream().filter(note -> null == note.getNoteContent() && null != note.getContentHash())
+							.forEach(note -> note.setNoteContent(contents.get(note.getContentHash())));
+					return notes;
+				});
+	}
+
+	private Mono<Note> findArchived(String userId, int noteId) {
+		return this.mongoOperations.findById(ArchivedNote.archiveId(userId, noteId), ArchivedNote.class)
+				.map(archived -> NoteArchive.decompress(archived.getCompressedNote()));
+	}
+
+	/*
+	 * As NoteBlobStore.store with blobs disabled: a body stays inline, and a note
+	 * sent without its body keeps the blob it refers to, with a reference of its
+	 * own.
+	 */
+	private Mono<Void> retain(Note note) {
+		if (null != note.getNoteContent()) {
+			note.setContentHash(null);
+		}
+		if (null != note.getNoteContent() || null == note.getContentHash()) {
+			return Mono.empty();
+		}
+		return this.mongoOperations.updateFirst(new Query(Criteria.where("_id").is(note.getContentHash())),
+				new Update().inc("refCount", 1), NoteBlob.class).then();
+	}
+
+	/* As NoteBlobStore.release, without blocking. */
+	private Mono<Void> release(String contentHash) {
+		if (null == contentHash) {
+			return Mono.empty();
+		}
+		return this.mongoOperations
+				.updateFirst(new Query(Criteria.where("_id").is(contentHash)), new Update().inc("refCount", -1),
+						NoteBlob.class)
+				.then(this.mongoOperations.remove(
+						new Query(Criteria.where("_id").is(contentHash).and("refCount").lte(0)), NoteBlob.class))
+				.then();
+	}
+
+	private Mono<Void> deleteArchived(String userId, int noteId) {
+		return this.mongoOperations
+				.findAndRemove(new Query(Criteria.where("_id").is(ArchivedNote.archiveId(userId, noteId))),
+						ArchivedNote.class)
+				.flatMap(this::releaseArchived);
+	}
+
+	private Mono<Void> releaseArchived(ArchivedNote archived) {
+		return release(NoteArchive.decompress(archived.getCompressedNote()).getContentHash());
+	}
+
+}
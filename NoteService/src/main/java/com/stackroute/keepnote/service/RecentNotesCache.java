@@ -0,0 +1,97 @@
+package com.stackroute.keepnote.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.stackroute.keepnote.model.Note;
+
+/*
+ * Optional per-user cache of the most recent notes. The service always fetches
+ * max-k notes when the cache is enabled, so every smaller k is served from the
+ * same entry. The entry of a user is dropped whenever one of the user's notes
+ * changes, and notes loaded while any entry was dropped are not cached, so an
+ * entry filled from the old notes while a write ran does not outlive the
+ * write. Entries are kept as CompactNotes and every hit gets its own Note
+ * objects; the least recently used users are evicted once max-users is
+ * reached.
+ */
+
+@Component
+public class RecentNotesCache {
+
+	private final boolean enabled;
+	private final int maxK;
+
+	private final Map<String, CompactNotes> recentNotes;
+	// incremented by every invalidation, notes loaded meanwhile are not cached
+	private long invalidations;
+
+	@Autowired
+	public RecentNotesCache(@Value("${keepnote.note.recent.cache-enabled:false}") boolean enabled,
+			@Value("${keepnote.note.recent.max-k:20}") int maxK,
+			@Value("${keepnote.note.recent.max-users:10000}") int maxUsers) {
+		this.enabled = enabled;
+		this.maxK = maxK;
+		this.recentNotes = new LinkedHashMap<String, CompactNotes>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompactNotes> eldest) {
+				return size() > maxUsers;
+			}
+		};
+	}
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public int getMaxK() {
+		return this.maxK;
+	}
+
+	public Optional<List<Note>> get(String userId, int k) {
+		if (!this.enabled || k > this.maxK) {
+			return Optional.empty();
+		}
+		CompactNotes notes;
+		synchronized (this.recentNotes) {
+			notes = this.recentNotes.get(userId);
+		}
+		return null == notes ? Optional.empty() : Optional.of(notes.toNotes(k));
+	}
+
+	/* Taken before the notes passed to put are loaded. */
+	public long loadStarted() {
+		synchronized (this.recentNotes) {
+			return this.invalidations;
+		}
+	}
+
+	public void put(String userId, List<Note> notes, long loadedAt) {
+		if (!this.enabled) {
+			return;
+		}
+		CompactNotes compact = CompactNotes.of(notes);
+		synchronized (this.recentNotes) {
+			if (loadedAt == this.invalidations) {
+				this.recentNotes.put(userId, compact);
+			}
+		}
+	}
+
+	public void invalidate(String userId) {
+		synchronized (this.recentNotes) {
+			this.recentNotes.remove(userId);
+			this.invalidations++;
+		}
+	}
+
+}
@@ -0,0 +1,240 @@
+package com.stackroute.keepnote.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Replicated growable array (RGA), the sequence CRDT behind collaborative
+ * editing. The text is a list of elements, each with a unique id made of a
+ * Lamport counter and the site which created it. An insert names the element
+ * it follows; concurrent inserts after the same element are ordered by their
+ * ids, which is why every replica ends up with the same text whatever order
+ * the operations arrive in. Deleted elements stay as tombstones so that later
+ * operations can still refer to them.
+ *
+ * An element holds a string of any length, so a client can insert a word or a
+ * pasted paragraph as one element.
+ */
+public class SequenceCrdt {
+
+	public static final String INSERT = "insert";
+	public static final String DELETE = "delete";
+
+	/* Site of the elements which make up the content the document started from. */
+	public static final String INITIAL_SITE = "";
+
+	private final List<Element> elements = new ArrayList<>();
+	private final Map<ElementId, Element> index = new HashMap<>();
+	private long clock;
+
+	/* Starts a document from stored content, as one element per code point. */
+	public SequenceCrdt(String content) {
+		if (null != content) {
+			content.codePoints().forEach(codePoint -> {
+				Element element = new Element(new ElementId(++this.clock, INITIAL_SITE),
+						new String(Character.toChars(codePoint)), false);
+				this.elements.add(element);
+				this.index.put(element.getId(), element);
+			});
+		}
+	}
+
+	/*
+	 * Integrates an operation. Operations are idempotent, applying one twice or
+	 * deleting a deleted element changes nothing. Returns false for operations
+	 * which changed nothing or refer to unknown elements.
+	 */
+	public synchronized boolean apply(Operation operation) {
+		if (null == operation || null == operation.getId()) {
+			return false;
+		}
+		if (DELETE.equals(operation.getOp())) {
+			Element element = this.index.get(operation.getId());
+			if (null == element || element.isDeleted()) {
+				return false;
+			}
+			element.setDeleted(true);
+			return true;
+		}
+		if (!INSERT.equals(operation.getOp()) || null == operation.getValue()
+				|| this.index.containsKey(operation.getId())) {
+			return false;
+		}
+		int position = 0;
+		if (null != operation.getAfter()) {
+			Element after = this.index.get(operation.getAfter());
+			if (null == after) {
+				return false;
+			}
+			position = this.elements.indexOf(after) + 1;
+		}
+		// concurrent inserts after the same element: the greater id goes first
+		while (position < this.elements.size()
+				&& this.elements.get(position).getId().compareTo(operation.getId()) > 0) {
+			position++;
+		}
+		Element element = new Element(operation.getId(), operation.getValue(), false);
+		this.elements.add(position, element);
+		this.index.put(element.getId(), element);
+		this.clock = Math.max(this.clock, operation.getId().getCounter());
+		return true;
+	}
+
+	public synchronized String text() {
+		StringBuilder text = new StringBuilder();
+		this.elements.stream().filter(element -> !element.isDeleted())
+				.forEach(element -> text.append(element.getValue()));
+		return text.toString();
+	}
+
+	/* All elements including the tombstones, as needed by a joining replica. */
+	public synchronized List<Element> elements() {
+		List<Element> copy = new ArrayList<>(this.elements.size());
+		this.elements.forEach(
+				element -> copy.add(new Element(element.getId(), element.getValue(), element.isDeleted())));
+		return copy;
+	}
+
+	/* The highest counter seen; new local ids must use a greater one. */
+	public synchronized long clock() {
+		return this.clock;
+	}
+
+	public static class ElementId implements Comparable<ElementId> {
+
+		private long counter;
+		private String site;
+
+		public ElementId() {
+			// Auto-generated constructor stub
+		}
+
+		public ElementId(long counter, String site) {
+			this.counter = counter;
+			this.site = site;
+		}
+
+		public long getCounter() {
+			return this.counter;
+		}
+
+		public void setCounter(long counter) {
+			this.counter = counter;
+		}
+
+		public String getSite() {
+			return this.site;
+		}
+
+		public void setSite(String site) {
+			this.site = site;
+		}
+
+		@Override
+		public int compareTo(ElementId other) {
+			int byCounter = Long.compare(this.counter, other.counter);
+			return 0 != byCounter ? byCounter
+					: String.valueOf(this.site).compareTo(String.valueOf(other.site));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof ElementId)) {
+				return false;
+			}
+			ElementId id = (ElementId) other;
+			return this.counter == id.counter && Objects.equals(this.site, id.site);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.counter, this.site);
+		}
+	}
+
+	public static class Element {
+
+		private ElementId id;
+		private String value;
+		private boolean deleted;
+
+		public Element() {
+			// Auto-generated constructor stub
+		}
+
+		public Element(ElementId id, String value, boolean deleted) {
+			this.id = id;
+			this.value = value;
+			this.deleted = deleted;
+		}
+
+		public ElementId getId() {
+			return this.id;
+		}
+
+		public void setId(ElementId id) {
+			this.id = id;
+		}
+
+		public String getValue() {
+			return this.value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+
+		public boolean isDeleted() {
+			return this.deleted;
+		}
+
+		public void setDeleted(boolean deleted) {
+			this.deleted = deleted;
+		}
+	}
+
+	/* An insert of value after the element "after" (null for the start), or a delete of id. */
+	public static class Operation {
+
+		private String op;
+		private ElementId id;
+		private ElementId after;
+		private String value;
+
+		public String getOp() {
+			return this.op;
+		}
+
+		public void setOp(String op) {
+			this.op = op;
+		}
+
+		public ElementId getId() {
+			return this.id;
+		}
+
+		public void setId(ElementId id) {
+			this.id = id;
+		}
+
+		public ElementId getAfter() {
+			return this.after;
+		}
+
+		public void setAfter(ElementId after) {
+			this.after = after;
+		}
+
+		public String getValue() {
+			return this.value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.stackroute.keepnote.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Lock-free histogram of sizes in bytes with power-of-two buckets. Bucket i
+ * counts the sizes below 2^i which did not fit into bucket i - 1.
+ */
+final class SizeHistogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalBytes = new LongAdder();
+	private final LongAccumulator maxBytes = new LongAccumulator(Long::max, 0);
+
+	void record(long bytes) {
+		long size = Math.max(0, bytes);
+		this.buckets.incrementAndGet(Math.min(Long.SIZE - 1, Long.SIZE - Long.numberOfLeadingZeros(size)));
+		this.count.increment();
+		this.totalBytes.add(size);
+		this.maxBytes.accumulate(size);
+	}
+
+	Map<String, Object> snapshot() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int bucket = 0; bucket < this.buckets.length(); bucket++) {
+			long bucketCount = this.buckets.get(bucket);
+			if (bucketCount > 0) {
+				counts.put("<" + (1L << bucket), bucketCount);
+			}
+		}
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("count", this.count.sum());
+		snapshot.put("totalBytes", this.totalBytes.sum());
+		snapshot.put("maxBytes", this.maxBytes.get());
+		snapshot.put("buckets", counts);
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.stackroute.keepnote.service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/*
+ * Space-Saving heavy-hitter sketch. It keeps at most capacity counters; a new
+ * key replaces the smallest counter and inherits its count, which is recorded
+ * as the error bound of the new key. Every key whose weight is above
+ * total/capacity is guaranteed to be in the sketch, and its count
+ * overestimates the true weight by at most its error.
+ */
+final class SpaceSaving {
+
+	private final int capacity;
+	private final Map<String, long[]> counters = new HashMap<>();
+	private long total;
+
+	SpaceSaving(int capacity) {
+		this.capacity = capacity;
+	}
+
+	synchronized void add(String key, long weight) {
+		this.total += weight;
+		long[] counter = this.counters.get(key);
+		if (null != counter) {
+			counter[0] += weight;
+		} else if (this.counters.size() < this.capacity) {
+			this.counters.put(key, new long[] { weight, 0 });
+		} else {
+			Map.Entry<String, long[]> smallest = this.counters.entrySet().stream()
+					.min(Comparator.comparingLong(entry -> entry.getValue()[0])).get();
+			this.counters.remove(smallest.getKey());
+			long floor = smallest.getValue()[0];
+			this.counters.put(key, new long[] { floor + weight, floor });
+		}
+	}
+
+	synchronized long getTotal() {
+		return this.total;
+	}
+
+	/* The n heaviest keys, heaviest first, with their count and error bound. */
+	synchronized List<Map<String, Object>> top(int n) {
+		return this.counters.entrySet().stream()
+				.sorted(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed())
+				.limit(n).map(entry -> {
+					Map<String, Object> item = new LinkedHashMap<>();
+					item.put("userId", entry.getKey());
+					item.put("count", entry.getValue()[0]);
+					item.put("error", entry.getValue()[1]);
+					return item;
+				}).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.stackroute.keepnote.test.controller;
+
+import com.stackroute.keepnote.controller.NoteAdminController;
+import com.stackroute.keepnote.model.NotePurgeJob;
+import com.stackroute.keepnote.service.NotePurgeService;
+import com.stackroute.keepnote.service.NoteTelemetry;
+import io.jsonwebtoken.Jwts;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/*
+ * A valid user token is not enough for the admin endpoints, they also need the
+ * admin secret.
+ */
+public class NoteAdminControllerTest {
+
+    @Mock
+    private NotePurgeService notePurgeService;
+    @Mock
+    private NoteTelemetry noteTelemetry;
+    private MockMvc mockMvc;
+    private String userToken;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(new NoteAdminController(notePurgeService, noteTelemetry, "s3cret"))
+                .build();
+        userToken = "Bearer " + Jwts.builder().setSubject("keeptnote6").claim("username", "Jhon123").compact();
+    }
+
+    @Test
+    public void purgeWithUserTokenIsForbidden() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/admin/note/purge").header("Authorization", userToken)
+                .contentType(MediaType.APPLICATION_JSON).content("[\"Mary456\"]"))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/admin/note/purge").header("Authorization", userToken)
+                .contentType(MediaType.TEXT_PLAIN).content("Mary456\n"))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        verify(notePurgeService, never()).startPurge(any());
+    }
+
+    @Test
+    public void purgeWithWrongSecretIsForbidden() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/admin/note/purge").header("Authorization", userToken)
+                .header(NoteAdminController.ADMIN_SECRET_HEADER, "guess")
+                .contentType(MediaType.APPLICATION_JSON).content("[\"Mary456\"]"))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        verify(notePurgeService, never()).startPurge(any());
+    }
+
+    @Test
+    public void jobsAndTelemetryWithUserTokenAreForbidden() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/admin/note/purge/5b0509731764e3096984eae6")
+                .header("Authorization", userToken))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/admin/note/purge/5b0509731764e3096984eae6/resume")
+                .header("Authorization", userToken))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/admin/note/telemetry").header("Authorization", userToken))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        verifyZeroInteractions(notePurgeService, noteTelemetry);
+    }
+
+    @Test
+    public void purgeWithAdminSecretIsAccepted() throws Exception {
+        when(notePurgeService.startPurge(any())).thenReturn(new NotePurgeJob("5b0509731764e3096984eae6", 1));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/admin/note/purge").header("Authorization", userToken)
+                .header(NoteAdminController.ADMIN_SECRET_HEADER, "s3cret")
+                .contentType(MediaType.APPLICATION_JSON).content("[\"Mary456\"]"))
+                .andExpect(MockMvcResultMatchers.status().isAccepted());
+    }
+
+    @Test
+    public void telemetryWithoutConfiguredSecretIsForbidden() throws Exception {
+        mockMvc = MockMvcBuilders.standaloneSetup(new NoteAdminController(notePurgeService, noteTelemetry, ""))
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/admin/note/telemetry")
+                .header(NoteAdminController.ADMIN_SECRET_HEADER, ""))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+    }
+
+}
@@ -3,10 +3,18 @@ package com.stackroute.keepnote.test.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stackroute.keepnote.controller.NoteController;
 import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.exception.NoteQuotaExceededException;
 import com.stackroute.keepnote.model.Category;
 import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteShare;
 import com.stackroute.keepnote.model.Reminder;
+import com.stackroute.keepnote.service.EmbeddedCopyReconciler;
+import com.stackroute.keepnote.service.NoteMarkdown;
+import com.stackroute.keepnote.service.NotePurgeService;
+import com.stackroute.keepnote.service.NoteReferenceHydrator;
+import com.stackroute.keepnote.service.NoteTelemetry;
 import com.stackroute.keepnote.service.NoteService;
+import com.stackroute.keepnote.service.NoteSharing;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -29,6 +37,7 @@ import static org.mockito.Mockito.when;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest
@@ -45,6 +54,18 @@ public class NoteControllerTest {
     private Reminder reminder;
     @MockBean
     private NoteService noteService;
+    @MockBean
+    private EmbeddedCopyReconciler embeddedCopyReconciler;
+    @MockBean
+    private NotePurgeService notePurgeService;
+    @MockBean
+    private NoteTelemetry noteTelemetry;
+    @MockBean
+    private NoteMarkdown noteMarkdown;
+    @MockBean
+    private NoteReferenceHydrator noteReferenceHydrator;
+    @MockBean
+    private NoteSharing noteSharing;
     @InjectMocks
     private NoteController noteController;
     private List<Note> noteList;
@@ -186,6 +207,19 @@ public class NoteControllerTest {
     }
 
 
+    @Test
+    public void updateNoteOverQuota() throws Exception {
+
+        when(noteService.updateNote(any(), eq(note.getNoteId()), eq("Jhon123")))
+                .thenThrow(NoteQuotaExceededException.class);
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/note/Jhon123/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(note)))
+                .andExpect(MockMvcResultMatchers.status().isInsufficientStorage())
+                .andDo(MockMvcResultHandlers.print());
+    }
+
+
     @Test
     public void getNoteByIdSuccess() throws Exception {
 
@@ -209,7 +243,7 @@ public class NoteControllerTest {
 
     @Test
     public void getAllNotesByUserIdSuccess() throws Exception {
-        when(noteService.getAllNoteByUserId("Jhon123")).thenReturn(noteList);
+        when(noteService.getNoteSummariesByUserId("Jhon123")).thenReturn(noteList);
         mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isOk())
@@ -218,13 +252,62 @@ public class NoteControllerTest {
 
     @Test
     public void getAllNotesByUserIdFailure() throws Exception {
-        when(noteService.getAllNoteByUserId("Jhon123")).thenReturn(null);
+        when(noteService.getNoteSummariesByUserId("Jhon123")).thenReturn(null);
         mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andDo(MockMvcResultHandlers.print());
     }
 
+    @Test
+    public void getRecentNotesSuccess() throws Exception {
+        when(noteService.getRecentNotes("Jhon123", 5)).thenReturn(noteList);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123/recent?k=5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andDo(MockMvcResultHandlers.print());
+    }
+
+    @Test
+    public void setChecklistItemCheckedSuccess() throws Exception {
+        when(noteService.setChecklistItemChecked("Jhon123", 1, "item1", true)).thenReturn(true);
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/note/Jhon123/1/checklist/item1?checked=true")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andDo(MockMvcResultHandlers.print());
+    }
+
+    @Test
+    public void setChecklistItemCheckedFailure() throws Exception {
+        when(noteService.setChecklistItemChecked("Jhon123", 1, "item1", true))
+                .thenThrow(NoteNotFoundExeption.class);
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/note/Jhon123/1/checklist/item1?checked=true")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isNotFound())
+                .andDo(MockMvcResultHandlers.print());
+    }
+
+    @Test
+    public void updateSharedNoteReadOnly() throws Exception {
+        when(noteSharing.find("Jhon123", 1, "Mary456"))
+                .thenReturn(Optional.of(new NoteShare("Jhon123", 1, "Mary456", NoteShare.READ)));
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/note/shared/Mary456/Jhon123/1")
+                .contentType(MediaType.TEXT_PLAIN).content("Mumbai Indians vs RCB"))
+                .andExpect(MockMvcResultMatchers.status().isForbidden())
+                .andDo(MockMvcResultHandlers.print());
+    }
+
+    @Test
+    public void getNoteAsHtmlSuccess() throws Exception {
+        when(noteService.getNoteByNoteId("Jhon123", 1)).thenReturn(note);
+        when(noteMarkdown.toHtml(note.getNoteContent())).thenReturn("<p>Mumbai Indians vs RCB</p>");
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123/1?format=html")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.noteContentHtml").value("<p>Mumbai Indians vs RCB</p>"))
+                .andDo(MockMvcResultHandlers.print());
+    }
+
     private static String asJsonString(final Object obj) {
         try {
             return new ObjectMapper().writeValueAsString(obj);
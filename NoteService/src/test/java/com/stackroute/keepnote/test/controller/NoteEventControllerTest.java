@@ -0,0 +1,75 @@
+package com.stackroute.keepnote.test.controller;
+
+import com.stackroute.keepnote.controller.NoteEventController;
+import com.stackroute.keepnote.service.EmbeddedCopyReconciler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NoteEventControllerTest {
+
+    @Mock
+    private EmbeddedCopyReconciler reconciler;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(new NoteEventController(reconciler, "s3cret")).build();
+    }
+
+    @Test
+    public void eventWithoutSecretIsForbidden() throws Exception {
+        perform(MockMvcRequestBuilders.delete("/internal/events/category/5b04f7411764e3765c35f8f6"))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        verify(reconciler, never()).categoryDeleted(any());
+    }
+
+    @Test
+    public void eventWithWrongSecretIsForbidden() throws Exception {
+        perform(MockMvcRequestBuilders.delete("/internal/events/category/5b04f7411764e3765c35f8f6")
+                .header(NoteEventController.EVENT_SECRET_HEADER, "guess"))
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        verify(reconciler, never()).categoryDeleted(any());
+    }
+
+    @Test
+    public void eventWrittenIsOk() throws Exception {
+        when(reconciler.categoryDeleted("5b04f7411764e3765c35f8f6"))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        perform(MockMvcRequestBuilders.delete("/internal/events/category/5b04f7411764e3765c35f8f6")
+                .header(NoteEventController.EVENT_SECRET_HEADER, "s3cret"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void failedWriteIsUnavailable() throws Exception {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("bulk write failed"));
+        when(reconciler.reminderDeleted("5b0509731764e3096984eae6")).thenReturn(failed);
+        perform(MockMvcRequestBuilders.delete("/internal/events/reminder/5b0509731764e3096984eae6")
+                .header(NoteEventController.EVENT_SECRET_HEADER, "s3cret"))
+                .andExpect(MockMvcResultMatchers.status().isServiceUnavailable());
+    }
+
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        return mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result));
+    }
+
+}
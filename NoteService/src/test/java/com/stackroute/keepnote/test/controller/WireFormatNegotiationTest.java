@@ -0,0 +1,120 @@
+package com.stackroute.keepnote.test.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.stackroute.keepnote.config.WireFormatConfig;
+import com.stackroute.keepnote.controller.NoteController;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.service.NoteMarkdown;
+import com.stackroute.keepnote.service.NoteReferenceHydrator;
+import com.stackroute.keepnote.service.NoteService;
+import com.stackroute.keepnote.service.NoteSharing;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+
+/*
+ * Negotiates the formats against the converters registered by WireFormatConfig
+ * in the web context: every format carries the same notes, and registering the
+ * binary converters leaves the JSON mapper of the context untouched.
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(NoteController.class)
+@AutoConfigureMockMvc(addFilters = false)
+@Import(WireFormatConfig.class)
+public class WireFormatNegotiationTest {
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @MockBean
+    private NoteService noteService;
+    @MockBean
+    private NoteMarkdown noteMarkdown;
+    @MockBean
+    private NoteReferenceHydrator noteReferenceHydrator;
+    @MockBean
+    private NoteSharing noteSharing;
+
+    @Before
+    public void setUp() {
+        List<Note> noteList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Note note = new Note();
+            note.setNoteId(i);
+            note.setNoteTitle("IPL lists " + i);
+            note.setNoteSnippet("Mumbai Indians vs RCB match scheduled for " + i + " PM");
+            note.setNoteStatus("Active");
+            note.setNoteCreationDate(new Date());
+            note.setNoteCreatedBy("Jhon123");
+            note.setLabels(Arrays.asList("sports", "ipl"));
+            noteList.add(note);
+        }
+        when(noteService.getNoteSummariesByUserId("Jhon123")).thenReturn(noteList);
+    }
+
+    @Test
+    public void jsonMapperKeepsJsonFactory() {
+        Assert.assertEquals(JsonFactory.class, objectMapper.getFactory().getClass());
+    }
+
+    @Test
+    public void defaultIsJson() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123")).andReturn();
+        Assert.assertTrue(MediaType.APPLICATION_JSON.isCompatibleWith(contentType(result)));
+        Assert.assertEquals('[', result.getResponse().getContentAsString().charAt(0));
+    }
+
+    @Test
+    public void cborOnRequest() throws Exception {
+        assertSameNotesAsJson(CBOR, new ObjectMapper(new CBORFactory()));
+    }
+
+    @Test
+    public void smileOnRequest() throws Exception {
+        assertSameNotesAsJson(SMILE, new ObjectMapper(new SmileFactory()));
+    }
+
+    private void assertSameNotesAsJson(MediaType mediaType, ObjectMapper decoder) throws Exception {
+        MvcResult json = mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123")
+                .accept(MediaType.APPLICATION_JSON)).andReturn();
+        MvcResult binary = mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/note/Jhon123")
+                .accept(mediaType)).andReturn();
+
+        Assert.assertTrue(mediaType.isCompatibleWith(contentType(binary)));
+        JsonNode expected = objectMapper.readTree(json.getResponse().getContentAsByteArray());
+        JsonNode actual = decoder.readTree(binary.getResponse().getContentAsByteArray());
+        Assert.assertEquals(expected, actual);
+    }
+
+    private static MediaType contentType(MvcResult result) {
+        return MediaType.parseMediaType(result.getResponse().getHeader(HttpHeaders.CONTENT_TYPE));
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.stackroute.keepnote.test.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.Reminder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/*
+ * Compares the binary formats with JSON on a typical list response: both must
+ * carry the same notes in fewer bytes.
+ */
+public class WireFormatTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+    private List<Note> noteList;
+
+    @Before
+    public void setUp() {
+        Category category = new Category();
+        category.setCategoryId("5b04f7411764e3765c35f8f6");
+        category.setCategoryName("Cricket-Category");
+        category.setCategoryDescription("All about Cricket");
+        category.setCategoryCreatedBy("Jhon123");
+        category.setCategoryCreationDate(new Date());
+
+        Reminder reminder = new Reminder();
+        reminder.setReminderId("5b0509731764e3096984eae6");
+        reminder.setReminderName("Email-Reminder");
+        reminder.setReminderDescription("sending emails");
+        reminder.setReminderType("email type");
+        reminder.setReminderCreatedBy("Jhon123");
+        reminder.setReminderCreationDate(new Date());
+
+        noteList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Note note = new Note(i, "IPL lists " + i, null, "Active", new Date(), category,
+                    Arrays.asList(reminder), "Jhon123");
+            note.setNoteSnippet("Mumbai Indians vs RCB match scheduled for " + i + " PM");
+            note.setLabels(Arrays.asList("sports", "ipl"));
+            note.setSimHash(0x5DEECE66DL * i);
+            noteList.add(note);
+        }
+    }
+
+    @Test
+    public void cborIsSmallerThanJson() throws Exception {
+        assertSmallerThanJson(new CBORFactory());
+    }
+
+    @Test
+    public void smileIsSmallerThanJson() throws Exception {
+        assertSmallerThanJson(new SmileFactory());
+    }
+
+    private void assertSmallerThanJson(JsonFactory factory) throws Exception {
+        ObjectMapper binary = new ObjectMapper(factory);
+        byte[] jsonBytes = json.writeValueAsBytes(noteList);
+        byte[] binaryBytes = binary.writeValueAsBytes(noteList);
+
+        List<Note> decoded = binary.readValue(binaryBytes, new TypeReference<List<Note>>() {
+        });
+        Assert.assertArrayEquals(jsonBytes, json.writeValueAsBytes(decoded));
+        Assert.assertTrue(binaryBytes.length + " bytes against " + jsonBytes.length + " bytes of JSON",
+                binaryBytes.length < jsonBytes.length);
+    }
+
+}
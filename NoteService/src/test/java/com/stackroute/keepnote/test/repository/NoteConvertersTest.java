@@ -0,0 +1,198 @@
+package com.stackroute.keepnote.test.repository;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.ChecklistItem;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.model.Reminder;
+import com.stackroute.keepnote.repository.NoteConverters;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+/*
+ * The hand-written converters must read what the mapping converter writes and
+ * the other way round, for fully populated notes as well as for sparse ones.
+ */
+public class NoteConvertersTest {
+
+    private MappingMongoConverter mappingConverter;
+    private NoteUser noteUser;
+
+    @Before
+    public void setUp() {
+        mappingConverter = new MappingMongoConverter(new DefaultDbRefResolver(mock(MongoDbFactory.class)),
+                new MongoMappingContext());
+        mappingConverter.afterPropertiesSet();
+
+        Category category = new Category();
+        category.setCategoryId("5b04f7411764e3765c35f8f6");
+        category.setCategoryName("Cricket-Category");
+        category.setCategoryDescription("All about Cricket");
+        category.setCategoryCreatedBy("Jhon123");
+        category.setCategoryCreationDate(new Date());
+
+        Reminder reminder = new Reminder();
+        reminder.setReminderId("5b0509731764e3096984eae6");
+        reminder.setReminderName("Email-Reminder");
+        reminder.setReminderDescription("sending emails");
+        reminder.setReminderType("email type");
+        reminder.setReminderCreatedBy("Jhon123");
+        reminder.setReminderCreationDate(new Date());
+
+        ChecklistItem item = new ChecklistItem();
+        item.setItemId("item1");
+        item.setText("book tickets");
+        item.setChecked(true);
+
+        Note full = new Note(1, "Testing", "Testing Note Content", "Started", new Date(), category,
+                new ArrayList<>(Arrays.asList(reminder)), "Jhon123");
+        full.setNoteSnippet("Testing Note");
+        full.setLabels(new ArrayList<>(Arrays.asList("sports", "ipl")));
+        full.setSimHash(-42L);
+        full.setRank("U");
+        full.setChecklist(new ArrayList<>(Arrays.asList(item)));
+        full.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        full.setVersion(3L);
+
+        Note sparse = new Note();
+        sparse.setNoteId(2);
+        sparse.setNoteCreatedBy("Jhon123");
+
+        noteUser = new NoteUser();
+        noteUser.setUserId("Jhon123");
+        noteUser.setNotes(new ArrayList<>(Arrays.asList(full, sparse)));
+        noteUser.setUsedBytes(1234L);
+    }
+
+    @Test
+    public void readsWhatMappingConverterWrites() {
+        Document document = new Document();
+        mappingConverter.write(noteUser, document);
+        assertSameNoteUser(noteUser, new NoteConverters.NoteUserReader().convert(document));
+    }
+
+    @Test
+    public void writesWhatMappingConverterReads() {
+        Document document = new NoteConverters.NoteUserWriter().convert(noteUser);
+        assertSameNoteUser(noteUser, mappingConverter.read(NoteUser.class, document));
+    }
+
+    @Test
+    public void roundTrip() {
+        Document document = new NoteConverters.NoteUserWriter().convert(noteUser);
+        assertSameNoteUser(noteUser, new NoteConverters.NoteUserReader().convert(document));
+    }
+
+    @Test
+    public void readsProjectedDocument() {
+        Document document = new Document("_id", "Jhon123");
+        NoteUser projected = new NoteConverters.NoteUserReader().convert(document);
+        Assert.assertEquals("Jhon123", projected.getUserId());
+        Assert.assertNull(projected.getNotes());
+        Assert.assertEquals(0L, projected.getUsedBytes());
+    }
+
+    @Test
+    public void setNoteCoversEveryWrittenField() {
+        Note full = noteUser.getNotes().get(0);
+        Document written = new NoteConverters.NoteWriter().convert(full);
+        Document update = NoteConverters.setNote("notes.$", full).getUpdateObject();
+        Document set = (Document) update.get("$set");
+        Assert.assertEquals(written.size() - 2, set.size());
+        written.keySet().stream().filter(field -> !"noteId".equals(field) && !"version".equals(field))
+                .forEach(field -> Assert.assertEquals(written.get(field), set.get("notes.$." + field)));
+        // the version is counted up by every write
+        Assert.assertEquals(new Document("notes.$.version", 1), update.get("$inc"));
+    }
+
+    @Test
+    public void setNoteKeepsFieldsAndUnsetsNulls() {
+        Document update = NoteConverters.setNote("notes.$", noteUser.getNotes().get(1), "rank", "checklist")
+                .getUpdateObject();
+        Document set = (Document) update.get("$set");
+        Document unset = (Document) update.get("$unset");
+        Assert.assertEquals("Jhon123", set.get("notes.$.createdBy"));
+        Assert.assertTrue(unset.containsKey("notes.$.noteTitle"));
+        Assert.assertFalse(set.containsKey("notes.$.rank") || unset.containsKey("notes.$.rank"));
+        Assert.assertFalse(set.containsKey("notes.$.checklist") || unset.containsKey("notes.$.checklist"));
+    }
+
+    private static void assertSameNoteUser(NoteUser expected, NoteUser actual) {
+        Assert.assertEquals(expected.getUserId(), actual.getUserId());
+        Assert.assertEquals(expected.getUsedBytes(), actual.getUsedBytes());
+        Assert.assertEquals(expected.getNotes().size(), actual.getNotes().size());
+        for (int i = 0; i < expected.getNotes().size(); i++) {
+            assertSameNote(expected.getNotes().get(i), actual.getNotes().get(i));
+        }
+    }
+
+    private static void assertSameNote(Note expected, Note actual) {
+        Assert.assertEquals(expected.getNoteId(), actual.getNoteId());
+        Assert.assertEquals(expected.getNoteTitle(), actual.getNoteTitle());
+        Assert.assertEquals(expected.getNoteContent(), actual.getNoteContent());
+        Assert.assertEquals(expected.getNoteSnippet(), actual.getNoteSnippet());
+        Assert.assertEquals(expected.getNoteStatus(), actual.getNoteStatus());
+        Assert.assertEquals(expected.getNoteCreationDate(), actual.getNoteCreationDate());
+        Assert.assertEquals(expected.getNoteCreatedBy(), actual.getNoteCreatedBy());
+        Assert.assertEquals(expected.getLabels(), actual.getLabels());
+        Assert.assertEquals(expected.getSimHash(), actual.getSimHash());
+        Assert.assertEquals(expected.getRank(), actual.getRank());
+        Assert.assertEquals(expected.getContentHash(), actual.getContentHash());
+        Assert.assertEquals(expected.getVersion(), actual.getVersion());
+        Assert.assertNull(actual.getNoteContentHtml());
+
+        if (null == expected.getCategory()) {
+            Assert.assertNull(actual.getCategory());
+        } else {
+            Category category = actual.getCategory();
+            Assert.assertEquals(expected.getCategory().getCategoryId(), category.getCategoryId());
+            Assert.assertEquals(expected.getCategory().getCategoryName(), category.getCategoryName());
+            Assert.assertEquals(expected.getCategory().getCategoryDescription(), category.getCategoryDescription());
+            Assert.assertEquals(expected.getCategory().getCategoryCreatedBy(), category.getCategoryCreatedBy());
+            Assert.assertEquals(expected.getCategory().getCategoryCreationDate(), category.getCategoryCreationDate());
+        }
+
+        List<Reminder> reminders = actual.getReminders();
+        if (null == expected.getReminders()) {
+            Assert.assertNull(reminders);
+        } else {
+            Assert.assertEquals(expected.getReminders().size(), reminders.size());
+            for (int i = 0; i < reminders.size(); i++) {
+                Reminder reminder = expected.getReminders().get(i);
+                Assert.assertEquals(reminder.getReminderId(), reminders.get(i).getReminderId());
+                Assert.assertEquals(reminder.getReminderName(), reminders.get(i).getReminderName());
+                Assert.assertEquals(reminder.getReminderDescription(), reminders.get(i).getReminderDescription());
+                Assert.assertEquals(reminder.getReminderType(), reminders.get(i).getReminderType());
+                Assert.assertEquals(reminder.getReminderCreatedBy(), reminders.get(i).getReminderCreatedBy());
+                Assert.assertEquals(reminder.getReminderCreationDate(), reminders.get(i).getReminderCreationDate());
+            }
+        }
+
+        List<ChecklistItem> checklist = actual.getChecklist();
+        if (null == expected.getChecklist()) {
+            Assert.assertNull(checklist);
+        } else {
+            Assert.assertEquals(expected.getChecklist().size(), checklist.size());
+            for (int i = 0; i < checklist.size(); i++) {
+                ChecklistItem item = expected.getChecklist().get(i);
+                Assert.assertEquals(item.getItemId(), checklist.get(i).getItemId());
+                Assert.assertEquals(item.getText(), checklist.get(i).getText());
+                Assert.assertEquals(item.isChecked(), checklist.get(i).isChecked());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.service.CollaborativeEditing;
+import com.stackroute.keepnote.service.NoteService;
+import com.stackroute.keepnote.service.SequenceCrdt;
+import com.stackroute.keepnote.service.SequenceCrdt.ElementId;
+import com.stackroute.keepnote.service.SequenceCrdt.Operation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CollaborativeEditingTest {
+
+    private NoteService noteService;
+    private CollaborativeEditing collaborativeEditing;
+
+    @Before
+    public void setUp() throws Exception {
+        noteService = mock(NoteService.class);
+        when(noteService.getNoteByNoteId("Jhon123", 1))
+                .thenReturn(new Note(1, "Testing", "hi", "Started", new Date(), null, null, "Jhon123"));
+        // the checkpoints are run by the test, start() is not called
+        collaborativeEditing = new CollaborativeEditing(noteService, 60000);
+    }
+
+    private static Operation insert(long counter, String value) {
+        Operation operation = new Operation();
+        operation.setOp(SequenceCrdt.INSERT);
+        operation.setId(new ElementId(counter, "a"));
+        operation.setAfter(new ElementId(2, SequenceCrdt.INITIAL_SITE));
+        operation.setValue(value);
+        return operation;
+    }
+
+    @Test
+    public void lastEditorLeavingWritesMergedContent() throws Exception {
+        collaborativeEditing.join("Jhon123", 1);
+        collaborativeEditing.apply("Jhon123", 1, Arrays.asList(insert(3, " there")));
+        collaborativeEditing.leave("Jhon123", 1);
+        verify(noteService).updateNoteContent("Jhon123", 1, "hi there");
+
+        // dropped after the write, the next editor loads the note again
+        collaborativeEditing.join("Jhon123", 1);
+        verify(noteService, times(2)).getNoteByNoteId("Jhon123", 1);
+    }
+
+    @Test
+    public void failedWriteOnLeaveIsRetriedByCheckpoint() throws Exception {
+        when(noteService.updateNoteContent("Jhon123", 1, "hi there"))
+                .thenThrow(new IllegalStateException("MongoDB is down")).thenReturn(true);
+        collaborativeEditing.join("Jhon123", 1);
+        collaborativeEditing.apply("Jhon123", 1, Arrays.asList(insert(3, " there")));
+        collaborativeEditing.leave("Jhon123", 1);
+
+        // kept and retried by the checkpoint, then dropped
+        collaborativeEditing.checkpoint();
+        verify(noteService, times(2)).updateNoteContent("Jhon123", 1, "hi there");
+        collaborativeEditing.join("Jhon123", 1);
+        verify(noteService, times(2)).getNoteByNoteId("Jhon123", 1);
+    }
+
+    @Test
+    public void editorJoiningAfterFailedWriteKeepsMergedDocument() throws Exception {
+        when(noteService.updateNoteContent("Jhon123", 1, "hi there"))
+                .thenThrow(new IllegalStateException("MongoDB is down"));
+        collaborativeEditing.join("Jhon123", 1);
+        collaborativeEditing.apply("Jhon123", 1, Arrays.asList(insert(3, " there")));
+        collaborativeEditing.leave("Jhon123", 1);
+
+        SequenceCrdt document = collaborativeEditing.join("Jhon123", 1);
+        Assert.assertEquals("hi there", document.text());
+        verify(noteService, times(1)).getNoteByNoteId("Jhon123", 1);
+    }
+
+    @Test
+    public void checkpointRunningWhileLastEditorLeavesIsNotOvertaken() throws Exception {
+        CountDownLatch checkpointWriting = new CountDownLatch(1);
+        CountDownLatch checkpointWritten = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        when(noteService.updateNoteContent(eq("Jhon123"), eq(1), anyString())).thenAnswer(invocation -> {
+            if (written.isEmpty() && checkpointWriting.getCount() > 0) {
+                checkpointWriting.countDown();
+                checkpointWritten.await(5, TimeUnit.SECONDS);
+            }
+            written.add(invocation.getArgument(2));
+            return true;
+        });
+        SequenceCrdt document = collaborativeEditing.join("Jhon123", 1);
+        collaborativeEditing.apply("Jhon123", 1, Arrays.asList(insert(3, " there")));
+
+        Thread checkpoint = new Thread(collaborativeEditing::checkpoint);
+        checkpoint.start();
+        checkpointWriting.await(5, TimeUnit.SECONDS);
+        collaborativeEditing.apply("Jhon123", 1, Arrays.asList(insert(4, "!")));
+        Thread leave = new Thread(() -> collaborativeEditing.leave("Jhon123", 1));
+        leave.start();
+        // the leaving editor waits for the running checkpoint of the note
+        while (leave.isAlive() && Thread.State.BLOCKED != leave.getState()) {
+            Thread.yield();
+        }
+        checkpointWritten.countDown();
+        checkpoint.join();
+        leave.join();
+
+        Assert.assertEquals(Arrays.asList("hi there", document.text()), written);
+        // nothing left to write
+        collaborativeEditing.checkpoint();
+        Assert.assertEquals(2, written.size());
+    }
+
+}
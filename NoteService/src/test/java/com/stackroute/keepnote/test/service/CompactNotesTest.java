@@ -0,0 +1,87 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.Reminder;
+import com.stackroute.keepnote.service.CompactNotes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class CompactNotesTest {
+
+    private List<Note> noteList;
+
+    @Before
+    public void setUp() {
+        noteList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // every note carries its own copies, as notes read from MongoDB do
+            Category category = new Category();
+            category.setCategoryId("5b04f7411764e3765c35f8f6");
+            category.setCategoryName("Cricket-Category");
+            category.setCategoryDescription("All about Cricket");
+            category.setCategoryCreatedBy(new String("Jhon123"));
+            category.setCategoryCreationDate(new Date());
+
+            Reminder reminder = new Reminder();
+            reminder.setReminderId("5b0509731764e3096984eae6");
+            reminder.setReminderName("Email-Reminder");
+            reminder.setReminderDescription("sending emails");
+            reminder.setReminderType("email type");
+            reminder.setReminderCreatedBy(new String("Jhon123"));
+            reminder.setReminderCreationDate(new Date());
+
+            Note note = new Note();
+            note.setNoteId(i);
+            note.setNoteTitle("IPL lists " + i);
+            note.setNoteContent("Mumbai Indians vs RCB match scheduled for " + i + " PM");
+            note.setNoteStatus(new String("Active"));
+            note.setCategory(category);
+            note.setReminders(new ArrayList<>(Arrays.asList(reminder)));
+            note.setNoteCreatedBy(new String("Jhon123"));
+            note.setNoteCreationDate(new Date());
+            note.setLabels(new ArrayList<>(Arrays.asList(new String("sports"), new String("ipl"))));
+            noteList.add(note);
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        List<Note> notes = CompactNotes.of(noteList).toNotes();
+        Assert.assertEquals(noteList.size(), notes.size());
+        for (int i = 0; i < notes.size(); i++) {
+            Note expected = noteList.get(i);
+            Note actual = notes.get(i);
+            Assert.assertEquals(expected.getNoteId(), actual.getNoteId());
+            Assert.assertEquals(expected.getNoteTitle(), actual.getNoteTitle());
+            Assert.assertEquals(expected.getNoteContent(), actual.getNoteContent());
+            Assert.assertEquals(expected.getNoteStatus(), actual.getNoteStatus());
+            Assert.assertEquals(expected.getNoteCreationDate(), actual.getNoteCreationDate());
+            Assert.assertEquals(expected.getNoteCreatedBy(), actual.getNoteCreatedBy());
+            Assert.assertEquals(expected.getLabels(), actual.getLabels());
+            Assert.assertEquals(expected.getCategory().getCategoryId(), actual.getCategory().getCategoryId());
+            Assert.assertEquals(expected.getReminders().get(0).getReminderId(),
+                    actual.getReminders().get(0).getReminderId());
+        }
+    }
+
+    @Test
+    public void toNotesLimit() {
+        Assert.assertEquals(10, CompactNotes.of(noteList).toNotes(10).size());
+    }
+
+    @Test
+    public void footprint() {
+        long notesSize = GraphLayout.parseInstance(noteList).totalSize();
+        long compactSize = GraphLayout.parseInstance(CompactNotes.of(noteList)).totalSize();
+        Assert.assertTrue("compact " + compactSize + " bytes vs notes " + notesSize + " bytes",
+                compactSize * 2 < notesSize);
+    }
+}
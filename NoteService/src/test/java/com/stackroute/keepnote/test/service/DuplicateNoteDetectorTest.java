@@ -0,0 +1,109 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.service.DuplicateNoteDetector;
+import com.stackroute.keepnote.service.NoteSimHash;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * Near-duplicate grouping at the default max-distance of three bits. The
+ * fingerprints are set directly, so the distances are exact.
+ */
+public class DuplicateNoteDetectorTest {
+
+    private static final long FINGERPRINT = 0x0123456789abcdefL;
+
+    private final DuplicateNoteDetector detector = new DuplicateNoteDetector(false, 3);
+
+    private static Note note(int noteId, long simHash) {
+        Note note = new Note(noteId, "title" + noteId, "content", "Active", new Date(), null, null, "Jhon123");
+        note.setSimHash(simHash);
+        return note;
+    }
+
+    @Test
+    public void notesAtMaxDistanceAreGrouped() {
+        Note note = note(1, FINGERPRINT);
+        Note near = note(2, FINGERPRINT ^ 0b111L);
+        Note far = note(3, FINGERPRINT ^ 0xf0L);
+
+        List<List<Note>> duplicates = detector.findDuplicates(Arrays.asList(note, near, far));
+        Assert.assertEquals(1, duplicates.size());
+        Assert.assertEquals(Arrays.asList(note, near), duplicates.get(0));
+    }
+
+    @Test
+    public void notesOneBitAboveMaxDistanceAreNotGrouped() {
+        // four bits, one in every band: no band is shared either
+        long spread = 1L | 1L << 16 | 1L << 32 | 1L << 48;
+        Assert.assertEquals(4, NoteSimHash.distance(FINGERPRINT, FINGERPRINT ^ spread));
+        Assert.assertTrue(detector.findDuplicates(
+                Arrays.asList(note(1, FINGERPRINT), note(2, FINGERPRINT ^ spread))).isEmpty());
+        Assert.assertTrue(detector.findDuplicates(
+                Arrays.asList(note(1, FINGERPRINT), note(2, FINGERPRINT ^ 0b1111L))).isEmpty());
+    }
+
+    @Test
+    public void bitsSpreadOverBandsStillShareOne() {
+        // three bands differ, the fourth is shared
+        long spread = 1L | 1L << 16 | 1L << 32;
+        List<List<Note>> duplicates = detector.findDuplicates(
+                Arrays.asList(note(1, FINGERPRINT), note(2, FINGERPRINT ^ spread)));
+        Assert.assertEquals(1, duplicates.size());
+        Assert.assertEquals(2, duplicates.get(0).size());
+    }
+
+    @Test
+    public void groupsAreTransitive() {
+        // the first and the last are six bits apart, but both near the middle one
+        Note first = note(1, FINGERPRINT);
+        Note middle = note(2, FINGERPRINT ^ 0b111L);
+        Note last = note(3, FINGERPRINT ^ 0b111111L);
+        Note other = note(4, ~FINGERPRINT);
+
+        List<List<Note>> duplicates = detector.findDuplicates(Arrays.asList(first, middle, last, other));
+        Assert.assertEquals(1, duplicates.size());
+        Assert.assertEquals(3, duplicates.get(0).size());
+        Assert.assertFalse(duplicates.get(0).contains(other));
+    }
+
+    @Test
+    public void notesWithoutFingerprintAreSkipped() {
+        Assert.assertTrue(detector.findDuplicates(Arrays.asList(note(1, 0L), note(2, 0L), note(3, 1L))).isEmpty());
+    }
+
+    @Test
+    public void findDuplicateOfAtMaxDistance() {
+        Note near = note(2, FINGERPRINT ^ 0b111L);
+        List<Note> existing = Arrays.asList(note(1, FINGERPRINT ^ 0b1111L), near);
+        Assert.assertEquals(Optional.of(near), detector.findDuplicateOf(note(3, FINGERPRINT), existing));
+        Assert.assertFalse(detector.findDuplicateOf(note(3, 0L), Arrays.asList(note(1, 0L))).isPresent());
+        Assert.assertFalse(detector.findDuplicateOf(note(3, FINGERPRINT), Collections.emptyList()).isPresent());
+    }
+
+    @Test
+    public void simHashIgnoresCaseAndPunctuation() {
+        long fingerprint = NoteSimHash.of("IPL lists", "Mumbai Indians vs RCB");
+        Assert.assertEquals(fingerprint, NoteSimHash.of("ipl, lists!", "mumbai indians -- VS rcb"));
+        Assert.assertNotEquals(0L, fingerprint);
+        Assert.assertEquals(0L, NoteSimHash.of(null, " ... "));
+    }
+
+    @Test
+    public void similarNotesHaveCloseFingerprints() {
+        String content = "Mumbai Indians vs RCB at the Wankhede stadium on Sunday, tickets booked for the "
+                + "whole family, leave home by five to beat the traffic and carry the umbrellas";
+        long fingerprint = NoteSimHash.of("IPL lists", content);
+        long edited = NoteSimHash.of("IPL lists", content + " please");
+        long unrelated = NoteSimHash.of("Groceries", "milk, eggs, bread, butter, rice and two kilos of onions");
+        Assert.assertTrue(NoteSimHash.distance(fingerprint, edited) < NoteSimHash.distance(fingerprint, unrelated));
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.ArchivedNote;
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.ArchivedNoteRepository;
+import com.stackroute.keepnote.repository.NoteRepository;
+import com.stackroute.keepnote.service.NoteArchive;
+import com.stackroute.keepnote.service.NoteBlobStore;
+import com.stackroute.keepnote.service.NoteLabelIndex;
+import com.stackroute.keepnote.service.NoteQuota;
+import com.stackroute.keepnote.service.NoteTelemetry;
+import com.stackroute.keepnote.service.RecentNotesCache;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/*
+ * Runs the archive against MongoDB: archive, find, list, delete and promote
+ * back.
+ */
+@RunWith(SpringRunner.class)
+@DataMongoTest
+public class NoteArchiveTest {
+
+    private static final Date OLD = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(365));
+
+    @Autowired
+    private MongoOperations mongoOperations;
+    @Autowired
+    private NoteRepository noteRepository;
+    @Autowired
+    private ArchivedNoteRepository archivedNoteRepository;
+
+    private NoteQuota noteQuota;
+    private NoteBlobStore blobStore;
+    private Note oldNote;
+    private Note newNote;
+
+    @Before
+    public void setUp() {
+        noteQuota = new NoteQuota(mongoOperations, 0, 3600000, 1);
+        blobStore = mock(NoteBlobStore.class);
+
+        oldNote = new Note(1, "IPL lists", "Mumbai Indians vs RCB", "Active", OLD,
+                new Category("5b04f7411764e3765c35f8f6", "Cricket-Category", "All about Cricket", "Jhon123", OLD),
+                null, "Jhon123");
+        oldNote.setLabels(new ArrayList<>(Arrays.asList("sports")));
+        oldNote.setRank("U");
+        oldNote.setContentHash("5f2b");
+        newNote = new Note(2, "Groceries", "milk, eggs", "Active", new Date(), null, null, "Jhon123");
+        NoteUser noteUser = new NoteUser();
+        noteUser.setUserId("Jhon123");
+        noteUser.setNotes(new ArrayList<>(Arrays.asList(oldNote, newNote)));
+        noteUser.setUsedBytes(noteQuota.sizeOfNotes(noteUser.getNotes()));
+        noteRepository.insert(noteUser);
+    }
+
+    @After
+    public void tearDown() {
+        noteRepository.deleteAll();
+        archivedNoteRepository.deleteAll();
+    }
+
+    private NoteArchive archive(ArchivedNoteRepository repository) {
+        return new NoteArchive(repository, mongoOperations, noteQuota, mock(RecentNotesCache.class),
+                mock(NoteLabelIndex.class), mock(NoteTelemetry.class), blobStore, false, 180, 86400000, 100, true);
+    }
+
+    @Test
+    public void archivedNoteIsFoundAndPromotedBack() {
+        NoteArchive noteArchive = archive(archivedNoteRepository);
+        noteArchive.archiveOldNotes();
+
+        NoteUser hot = noteRepository.findById("Jhon123").get();
+        Assert.assertEquals(1, hot.getNotes().size());
+        Assert.assertEquals(2, hot.getNotes().get(0).getNoteId());
+        Assert.assertEquals(noteQuota.sizeOf(newNote), hot.getUsedBytes());
+        Assert.assertTrue(archivedNoteRepository.existsById(ArchivedNote.archiveId("Jhon123", 1)));
+
+        Optional<Note> found = noteArchive.find("Jhon123", 1);
+        Assert.assertTrue(found.isPresent());
+        Assert.assertEquals("Mumbai Indians vs RCB", found.get().getNoteContent());
+        Assert.assertEquals(OLD, found.get().getNoteCreationDate());
+        Assert.assertEquals("Cricket-Category", found.get().getCategory().getCategoryName());
+        Assert.assertEquals(Arrays.asList("sports"), found.get().getLabels());
+        Assert.assertEquals("U", found.get().getRank());
+
+        // promoted on read
+        hot = noteRepository.findById("Jhon123").get();
+        Assert.assertEquals(2, hot.getNotes().size());
+        Assert.assertEquals("Mumbai Indians vs RCB", hot.getNotes().get(1).getNoteContent());
+        Assert.assertEquals(noteQuota.sizeOfNotes(hot.getNotes()), hot.getUsedBytes());
+        Assert.assertFalse(archivedNoteRepository.existsById(ArchivedNote.archiveId("Jhon123", 1)));
+    }
+
+    @Test
+    public void noteWrittenWhileArchivingStaysHot() {
+        ArchivedNoteRepository repository = mock(ArchivedNoteRepository.class, delegatesTo(archivedNoteRepository));
+        // the note is written between the read of the archive run and its pull
+        doAnswer(invocation -> {
+            mongoOperations.updateFirst(
+                    new Query(Criteria.where("_id").is("Jhon123").and("notes.noteId").is(1)),
+                    new Update().set("notes.$.noteContent", "Match cancelled").inc("notes.$.version", 1),
+                    NoteUser.class);
+            return archivedNoteRepository.saveAll(invocation.<Iterable<ArchivedNote>>getArgument(0));
+        }).when(repository).saveAll(anyIterable());
+        archive(repository).archiveOldNotes();
+
+        NoteUser hot = noteRepository.findById("Jhon123").get();
+        Assert.assertEquals(2, hot.getNotes().size());
+        Assert.assertEquals("Match cancelled", hot.getNotes().get(0).getNoteContent());
+        Assert.assertFalse(archivedNoteRepository.existsById(ArchivedNote.archiveId("Jhon123", 1)));
+        // the stale copy shared the reference of the hot note
+        verify(blobStore, never()).release(any(String.class));
+    }
+
+    @Test
+    public void archivedNotesAreListedWithoutContent() {
+        archive(archivedNoteRepository).archiveOldNotes();
+
+        List<Note> archived = archive(archivedNoteRepository).list("Jhon123");
+        Assert.assertEquals(1, archived.size());
+        Assert.assertEquals("IPL lists", archived.get(0).getNoteTitle());
+        Assert.assertNull(archived.get(0).getNoteContent());
+    }
+
+    @Test
+    public void deletedArchivedNoteReleasesItsBlob() {
+        NoteArchive noteArchive = archive(archivedNoteRepository);
+        noteArchive.archiveOldNotes();
+
+        noteArchive.delete("Jhon123", 1);
+        Assert.assertFalse(archivedNoteRepository.existsById(ArchivedNote.archiveId("Jhon123", 1)));
+        verify(blobStore).release("5f2b");
+    }
+
+    @Test
+    public void promotedNoteKeepsItsBlob() {
+        NoteArchive noteArchive = archive(archivedNoteRepository);
+        noteArchive.archiveOldNotes();
+
+        Assert.assertTrue(noteArchive.find("Jhon123", 1).isPresent());
+        verify(blobStore, never()).release(any(String.class));
+    }
+
+    @Test
+    public void noteWithoutVersionIsArchived() {
+        // written before notes had a version
+        mongoOperations.updateFirst(new Query(Criteria.where("_id").is("Jhon123")),
+                new Update().unset("notes.0.version"), NoteUser.class);
+        Document stored = mongoOperations.findById("Jhon123", Document.class,
+                mongoOperations.getCollectionName(NoteUser.class));
+        Assert.assertFalse(((Document) stored.get("notes", List.class).get(0)).containsKey("version"));
+
+        archive(archivedNoteRepository).archiveOldNotes();
+
+        NoteUser hot = noteRepository.findById("Jhon123").get();
+        Assert.assertEquals(1, hot.getNotes().size());
+        Assert.assertTrue(archivedNoteRepository.existsById(ArchivedNote.archiveId("Jhon123", 1)));
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.service.NoteLabelIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * The include/exclude label queries over the bitmaps of one user, and their
+ * maintenance on note changes.
+ */
+public class NoteLabelIndexTest {
+
+    private NoteLabelIndex labelIndex;
+    private List<Note> notes;
+    private AtomicInteger loads;
+    private Supplier<List<Note>> loader;
+
+    private static Note note(int noteId, String... labels) {
+        Note note = new Note(noteId, "title" + noteId, "content", "Active", new Date(), null, null, "Jhon123");
+        note.setLabels(new ArrayList<>(Arrays.asList(labels)));
+        return note;
+    }
+
+    @Before
+    public void setUp() {
+        labelIndex = new NoteLabelIndex(2);
+        notes = new ArrayList<>(Arrays.asList(note(1, "sports", "ipl"), note(2, "sports"),
+                note(3, "ipl", "archive"), note(4)));
+        loads = new AtomicInteger();
+        loader = () -> {
+            loads.incrementAndGet();
+            return notes;
+        };
+    }
+
+    private RoaringBitmap query(List<String> allOf, List<String> noneOf) {
+        return labelIndex.query("Jhon123", allOf, noneOf, loader);
+    }
+
+    @Test
+    public void allOfIntersectsLabels() {
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 2), query(Arrays.asList("sports"), null));
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1), query(Arrays.asList("sports", "ipl"), null));
+        // built once, then answered from the bitmaps
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void noneOfExcludesLabels() {
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 2, 4), query(null, Arrays.asList("archive")));
+        Assert.assertEquals(RoaringBitmap.bitmapOf(2), query(Arrays.asList("sports"), Arrays.asList("ipl")));
+        Assert.assertEquals(RoaringBitmap.bitmapOf(4), query(Collections.emptyList(), Arrays.asList("sports", "ipl")));
+    }
+
+    @Test
+    public void unknownLabels() {
+        Assert.assertTrue(query(Arrays.asList("sports", "cooking"), null).isEmpty());
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4), query(null, Arrays.asList("cooking")));
+    }
+
+    @Test
+    public void queryResultIsNotTheIndex() {
+        query(null, null).add(99);
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4), query(null, null));
+    }
+
+    @Test
+    public void savedAndRemovedNotesAreIndexed() {
+        query(null, null);
+        // relabelled: no longer sports, now archived
+        labelIndex.noteSaved("Jhon123", note(2, "archive"));
+        labelIndex.noteSaved("Jhon123", note(5, "sports"));
+        labelIndex.noteRemoved("Jhon123", 1);
+
+        Assert.assertEquals(RoaringBitmap.bitmapOf(5), query(Arrays.asList("sports"), null));
+        Assert.assertEquals(RoaringBitmap.bitmapOf(2, 3), query(Arrays.asList("archive"), null));
+        // the last note labelled ipl is archived
+        Assert.assertEquals(RoaringBitmap.bitmapOf(4, 5), query(null, Arrays.asList("archive", "ipl")));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void droppedAndEvictedUsersAreRebuilt() {
+        query(null, null);
+        labelIndex.drop("Jhon123");
+        query(null, null);
+        Assert.assertEquals(2, loads.get());
+
+        labelIndex.query("Mary456", null, null, Collections::emptyList);
+        labelIndex.query("Ravi789", null, null, Collections::emptyList);
+        // the least recently used of max-users 2
+        query(null, null);
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void changesOfUnindexedUsersAreIgnored() {
+        labelIndex.noteSaved("Jhon123", note(5, "sports"));
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 2), query(Arrays.asList("sports"), null));
+    }
+
+    @Test
+    public void buildOvertakenByChangeIsNotKept() {
+        // the note is written while the notes are loaded, after they were read
+        labelIndex.query("Jhon123", null, null, () -> {
+            List<Note> loaded = new ArrayList<>(notes);
+            notes.add(note(5, "sports"));
+            labelIndex.noteSaved("Jhon123", note(5, "sports"));
+            return loaded;
+        });
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 2, 5), query(Arrays.asList("sports"), null));
+        Assert.assertEquals(1, loads.get());
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.service.NoteMarkdown;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Renders with the real commonmark renderer, as the responses do.
+ */
+public class NoteMarkdownTest {
+
+    private final NoteMarkdown noteMarkdown = new NoteMarkdown(8000000);
+
+    @Test
+    public void keepsWebAndMailLinks() {
+        Assert.assertEquals("<p><a href=\"https://www.iplt20.com\">IPL</a></p>\n",
+                noteMarkdown.toHtml("[IPL](https://www.iplt20.com)"));
+        Assert.assertEquals("<p><a href=\"http://www.iplt20.com\">IPL</a></p>\n",
+                noteMarkdown.toHtml("[IPL](http://www.iplt20.com)"));
+        Assert.assertEquals("<p><a href=\"mailto:jhon@example.com\">Jhon</a></p>\n",
+                noteMarkdown.toHtml("[Jhon](mailto:jhon@example.com)"));
+    }
+
+    @Test
+    public void dropsScriptLinks() {
+        Assert.assertEquals("<p><a>click</a></p>\n", noteMarkdown.toHtml("[click](javascript:alert(1))"));
+        Assert.assertEquals("<p><a>click</a></p>\n", noteMarkdown.toHtml("[click](JavaScript:alert(1))"));
+        // autolinks go through the same renderer
+        Assert.assertEquals("<p><a>javascript:alert(1)</a></p>\n", noteMarkdown.toHtml("<javascript:alert(1)>"));
+    }
+
+    @Test
+    public void dropsDataImages() {
+        String html = noteMarkdown.toHtml("![pixel](data:image/svg+xml;base64,PHN2Zz48L3N2Zz4=)");
+        Assert.assertFalse(html.contains("src="));
+        Assert.assertTrue(html.contains("alt=\"pixel\""));
+    }
+
+    @Test
+    public void keepsWebImages() {
+        Assert.assertEquals("<p><img src=\"https://www.iplt20.com/logo.png\" alt=\"logo\" /></p>\n",
+                noteMarkdown.toHtml("![logo](https://www.iplt20.com/logo.png)"));
+    }
+
+    @Test
+    public void escapesRawHtml() {
+        Assert.assertFalse(noteMarkdown.toHtml("<script>alert(1)</script>").contains("<script>"));
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteDataKey;
+import com.stackroute.keepnote.model.NotePurgeChunk;
+import com.stackroute.keepnote.model.NotePurgeJob;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NotePurgeChunkRepository;
+import com.stackroute.keepnote.repository.NotePurgeJobRepository;
+import com.stackroute.keepnote.service.NoteBlobStore;
+import com.stackroute.keepnote.service.NoteLabelIndex;
+import com.stackroute.keepnote.service.NotePurgeServiceImpl;
+import com.stackroute.keepnote.service.NoteSharing;
+import com.stackroute.keepnote.service.NoteWriteBehindBuffer;
+import com.stackroute.keepnote.service.RecentNotesCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import com.mongodb.client.result.DeleteResult;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*
+ * The userIds of a purge are stored in chunks as they are read, apart from the
+ * job, and every purged user leaves neither shares, data keys nor blob
+ * references behind.
+ */
+public class NotePurgeServiceImplTest {
+
+    private NotePurgeJobRepository purgeJobRepository;
+    private NotePurgeChunkRepository purgeChunkRepository;
+    private MongoOperations mongoOperations;
+    private NoteBlobStore blobStore;
+    private NoteSharing noteSharing;
+    private NotePurgeServiceImpl purgeService;
+
+    @Before
+    public void setUp() {
+        purgeJobRepository = mock(NotePurgeJobRepository.class);
+        purgeChunkRepository = mock(NotePurgeChunkRepository.class);
+        when(purgeJobRepository.insert(any(NotePurgeJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        mongoOperations = mock(MongoOperations.class);
+        blobStore = mock(NoteBlobStore.class);
+        noteSharing = mock(NoteSharing.class);
+        purgeService = new NotePurgeServiceImpl(purgeJobRepository, purgeChunkRepository, mongoOperations,
+                mock(NoteWriteBehindBuffer.class), mock(RecentNotesCache.class), mock(NoteLabelIndex.class),
+                blobStore, noteSharing, 2, 2000);
+    }
+
+    @After
+    public void tearDown() {
+        purgeService.stop();
+    }
+
+    @Test
+    public void userIdsAreStoredInChunks() {
+        NotePurgeJob job = purgeService.startPurge(
+                Arrays.asList("Jhon123", "Mary456", "Ravi789", "Ravi789", "Anil000").iterator());
+
+        ArgumentCaptor<NotePurgeChunk> chunks = ArgumentCaptor.forClass(NotePurgeChunk.class);
+        verify(purgeChunkRepository, times(3)).insert(chunks.capture());
+        List<NotePurgeChunk> inserted = chunks.getAllValues();
+        Assert.assertEquals(NotePurgeChunk.chunkId(job.getJobId(), 0), inserted.get(0).getChunkId());
+        Assert.assertEquals(Arrays.asList("Jhon123", "Mary456"), inserted.get(0).getUserIds());
+        // a duplicate within a chunk is dropped
+        Assert.assertEquals(Arrays.asList("Ravi789"), inserted.get(1).getUserIds());
+        Assert.assertEquals(Arrays.asList("Anil000"), inserted.get(2).getUserIds());
+        Assert.assertEquals(2, inserted.get(2).getSeq());
+        Assert.assertEquals(4, job.getTotalUsers());
+        Assert.assertEquals(NotePurgeJob.RUNNING, job.getStatus());
+    }
+
+    @Test
+    public void failedReadRemovesChunks() {
+        Iterator<String> userIds = new Iterator<String>() {
+            private int read;
+
+            public boolean hasNext() {
+                if (read == 3) {
+                    throw new UncheckedIOException(new IOException("connection reset"));
+                }
+                return true;
+            }
+
+            public String next() {
+                return "user" + read++;
+            }
+        };
+        try {
+            purgeService.startPurge(userIds);
+            Assert.fail();
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("connection reset", e.getCause().getMessage());
+        }
+
+        ArgumentCaptor<NotePurgeChunk> chunk = ArgumentCaptor.forClass(NotePurgeChunk.class);
+        verify(purgeChunkRepository).insert(chunk.capture());
+        verify(purgeChunkRepository).deleteByJobId(chunk.getValue().getJobId());
+        verify(purgeJobRepository, never()).insert(any(NotePurgeJob.class));
+    }
+
+    @Test
+    public void purgedUsersLeaveNothingBehind() {
+        Note note = new Note(1, "IPL lists", null, "Active", new Date(), null, null, "Jhon123");
+        note.setContentHash("5f2b");
+        NoteUser noteUser = new NoteUser();
+        noteUser.setUserId("Jhon123");
+        noteUser.setNotes(Arrays.asList(note));
+        when(mongoOperations.find(any(Query.class), eq(NoteUser.class))).thenReturn(Arrays.asList(noteUser));
+        when(mongoOperations.remove(any(Query.class), any(Class.class))).thenReturn(DeleteResult.acknowledged(1));
+        when(purgeJobRepository.findById(any()))
+                .thenAnswer(invocation -> Optional.of(new NotePurgeJob(invocation.getArgument(0), 1)));
+        when(purgeChunkRepository.findById(any())).thenAnswer(invocation -> {
+            String jobId = invocation.<String>getArgument(0).split("/")[0];
+            return NotePurgeChunk.chunkId(jobId, 0).equals(invocation.getArgument(0))
+                    ? Optional.of(new NotePurgeChunk(jobId, 0, Arrays.asList("Jhon123")))
+                    : Optional.empty();
+        });
+
+        purgeService.startPurge(Arrays.asList("Jhon123").iterator());
+
+        verify(noteSharing, timeout(5000)).ownerDeleted("Jhon123");
+        verify(blobStore, timeout(5000)).release(Arrays.asList(note));
+        verify(mongoOperations, timeout(5000)).remove(any(Query.class), eq(NoteDataKey.class));
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.service.NoteRanking;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Ranks between two neighbours: at the head, at the tail and between ranks
+ * with no digit left between them.
+ */
+public class NoteRankingTest {
+
+    private static void assertBetween(String lower, String upper, String rank) {
+        Assert.assertTrue(rank + " after " + lower, rank.compareTo(lower) > 0);
+        if (null != upper) {
+            Assert.assertTrue(rank + " before " + upper, rank.compareTo(upper) < 0);
+        }
+        Assert.assertFalse(rank + " ends with zero", rank.endsWith("0"));
+    }
+
+    @Test
+    public void firstRankIsInTheMiddle() {
+        Assert.assertEquals("V", NoteRanking.between("", null));
+    }
+
+    @Test
+    public void headRanks() {
+        Assert.assertEquals("G", NoteRanking.between("", "V"));
+        // no digit left before 1, the rank goes one digit deeper
+        Assert.assertEquals("0V", NoteRanking.between("", "1"));
+        Assert.assertEquals("00V", NoteRanking.between("", "01"));
+    }
+
+    @Test
+    public void tailRanks() {
+        Assert.assertEquals("l", NoteRanking.between("V", null));
+        Assert.assertEquals("zV", NoteRanking.between("z", null));
+        Assert.assertEquals("zzzV", NoteRanking.between("zzz", null));
+    }
+
+    @Test
+    public void adjacentRanks() {
+        Assert.assertEquals("AV", NoteRanking.between("A", "B"));
+        Assert.assertEquals("A0V", NoteRanking.between("A", "A1"));
+        Assert.assertEquals("Al", NoteRanking.between("AV", "B"));
+        // the shorter upper is enough when it is longer than one digit
+        Assert.assertEquals("B", NoteRanking.between("A", "BV"));
+    }
+
+    @Test
+    public void repeatedMovesToTheHeadStayOrdered() {
+        String first = "V";
+        for (int i = 0; i < 200; i++) {
+            String rank = NoteRanking.between("", first);
+            assertBetween("", first, rank);
+            first = rank;
+        }
+    }
+
+    @Test
+    public void repeatedMovesToTheTailStayOrdered() {
+        String last = "V";
+        for (int i = 0; i < 200; i++) {
+            String rank = NoteRanking.between(last, null);
+            assertBetween(last, null, rank);
+            last = rank;
+        }
+    }
+
+    @Test
+    public void repeatedMovesBetweenNeighboursStayOrdered() {
+        String lower = "A";
+        String upper = "B";
+        for (int i = 0; i < 200; i++) {
+            String rank = NoteRanking.between(lower, upper);
+            assertBetween(lower, upper, rank);
+            if (i % 2 == 0) {
+                upper = rank;
+            } else {
+                lower = rank;
+            }
+        }
+    }
+
+    @Test
+    public void randomMovesKeepRanksSorted() {
+        Random random = new Random(42);
+        List<String> ranks = new ArrayList<>(Arrays.asList("V"));
+        for (int i = 0; i < 2000; i++) {
+            int position = random.nextInt(ranks.size() + 1);
+            String lower = position == 0 ? "" : ranks.get(position - 1);
+            String upper = position == ranks.size() ? null : ranks.get(position);
+            String rank = NoteRanking.between(lower, upper);
+            assertBetween(lower, upper, rank);
+            ranks.add(position, rank);
+        }
+    }
+
+}
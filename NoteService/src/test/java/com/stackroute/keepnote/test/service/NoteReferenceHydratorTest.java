@@ -0,0 +1,116 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Category;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.Reminder;
+import com.stackroute.keepnote.service.NoteReferenceHydrator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.test.web.client.MockServerRestTemplateCustomizer;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.UnorderedRequestExpectationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/*
+ * Runs the hydration against responses shaped exactly like the ones of the
+ * batch endpoints of CategoryService and ReminderService.
+ */
+public class NoteReferenceHydratorTest {
+
+    private static final String CATEGORY_URL = "http://category-service/api/v1/category";
+    private static final String REMINDER_URL = "http://reminder-service/api/v1/reminder";
+
+    // CategoryService serializes the id of a category as "id"
+    private static final String CATEGORY_RESPONSE = "[{\"categoryName\":\"Cricket\",\"categoryDescription\":"
+            + "\"All about Cricket and IPL\",\"categoryCreatedBy\":\"Jhon123\",\"categoryCreationDate\":"
+            + "\"2018-05-23T05:30:00.000+0000\",\"id\":\"5b04f7411764e3765c35f8f6\"}]";
+    private static final String REMINDER_RESPONSE = "[{\"reminderId\":\"5b0509731764e3096984eae6\","
+            + "\"reminderName\":\"Sms-Reminder\",\"reminderDescription\":\"sending sms\",\"reminderType\":"
+            + "\"sms type\",\"reminderCreatedBy\":\"Jhon123\",\"reminderCreationDate\":"
+            + "\"2018-05-23T05:30:00.000+0000\"}]";
+
+    private MockServerRestTemplateCustomizer customizer;
+    private NoteReferenceHydrator hydrator;
+    private MockRestServiceServer server;
+    private Note note;
+
+    @Before
+    public void setUp() {
+        // both lookups run concurrently, in no particular order
+        customizer = new MockServerRestTemplateCustomizer(UnorderedRequestExpectationManager.class);
+        hydrator = new NoteReferenceHydrator(new RestTemplateBuilder(customizer), true, CATEGORY_URL, REMINDER_URL,
+                60000, 100, 500);
+        server = customizer.getServer();
+
+        Category category = new Category("5b04f7411764e3765c35f8f6", "Cricket-Category", "All about Cricket",
+                "Jhon123", new Date());
+        Reminder reminder = new Reminder("5b0509731764e3096984eae6", "Email-Reminder", "sending emails",
+                "email type", "Jhon123", new Date());
+        note = new Note(1, "IPL lists", "Mumbai Indians vs RCB", "Active", new Date(), category,
+                new ArrayList<>(Arrays.asList(reminder)), "Jhon123");
+    }
+
+    @After
+    public void tearDown() {
+        hydrator.stop();
+    }
+
+    @Test
+    public void replacesEmbeddedCopiesByServiceResponses() {
+        expectResponses();
+        List<Note> notes = Arrays.asList(note);
+        hydrator.hydrate(notes);
+
+        server.verify();
+        Assert.assertEquals("5b04f7411764e3765c35f8f6", note.getCategory().getCategoryId());
+        Assert.assertEquals("Cricket", note.getCategory().getCategoryName());
+        Assert.assertEquals("Sms-Reminder", note.getReminders().get(0).getReminderName());
+    }
+
+    @Test
+    public void servesRepeatedIdsFromCache() {
+        expectResponses();
+        hydrator.hydrate(Arrays.asList(note));
+        server.verify();
+
+        // no further request is expected by the server
+        note.setCategory(new Category("5b04f7411764e3765c35f8f6", "stale", "stale", "Jhon123", new Date()));
+        hydrator.hydrate(Arrays.asList(note));
+        server.verify();
+        Assert.assertEquals("Cricket", note.getCategory().getCategoryName());
+    }
+
+    @Test
+    public void keepsEmbeddedCopiesWhenServiceFails() {
+        server.expect(requestTo(CATEGORY_URL + "?ids=5b04f7411764e3765c35f8f6")).andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+        server.expect(requestTo(REMINDER_URL + "?ids=5b0509731764e3096984eae6")).andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+        hydrator.hydrate(Arrays.asList(note));
+
+        Assert.assertEquals("Cricket-Category", note.getCategory().getCategoryName());
+        Assert.assertEquals("Email-Reminder", note.getReminders().get(0).getReminderName());
+    }
+
+    private void expectResponses() {
+        server.expect(requestTo(CATEGORY_URL + "?ids=5b04f7411764e3765c35f8f6")).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(CATEGORY_RESPONSE, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(REMINDER_URL + "?ids=5b0509731764e3096984eae6")).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(REMINDER_RESPONSE, MediaType.APPLICATION_JSON));
+    }
+
+}
@@ -1,25 +1,55 @@
 package com.stackroute.keepnote.test.service;
 
+import com.mongodb.client.result.UpdateResult;
 import com.stackroute.keepnote.exception.NoteNotFoundExeption;
+import com.stackroute.keepnote.exception.NoteQuotaExceededException;
 import com.stackroute.keepnote.model.Category;
 import com.stackroute.keepnote.model.Note;
 import com.stackroute.keepnote.model.NoteUser;
 import com.stackroute.keepnote.model.Reminder;
 import com.stackroute.keepnote.repository.NoteRepository;
+import com.stackroute.keepnote.service.DuplicateNoteDetector;
+import com.stackroute.keepnote.service.NoteArchive;
+import com.stackroute.keepnote.service.NoteBlobStore;
+import com.stackroute.keepnote.service.NoteEncryption;
+import com.stackroute.keepnote.service.NoteSharing;
+import com.stackroute.keepnote.service.NoteLabelIndex;
+import com.stackroute.keepnote.service.NoteQuota;
+import com.stackroute.keepnote.service.NoteRanking;
 import com.stackroute.keepnote.service.NoteServiceImpl;
+import com.stackroute.keepnote.service.NoteTelemetry;
+import com.stackroute.keepnote.service.NoteWriteBehindBuffer;
+import com.stackroute.keepnote.service.RecentNotesCache;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.bson.Document;
 
 import java.util.*;
 
@@ -36,6 +66,30 @@ public class NoteServiceImplTest {
     private Reminder reminder;
     @Mock
     private NoteRepository noteRepository;
+    @Mock
+    private MongoOperations mongoOperations;
+    @Mock
+    private NoteWriteBehindBuffer noteWriteBehindBuffer;
+    @Mock
+    private RecentNotesCache recentNotesCache;
+    @Mock
+    private NoteLabelIndex noteLabelIndex;
+    @Mock
+    private DuplicateNoteDetector duplicateNoteDetector;
+    @Mock
+    private NoteRanking noteRanking;
+    @Mock
+    private NoteQuota noteQuota;
+    @Spy
+    private NoteTelemetry noteTelemetry = new NoteTelemetry(10, 200, 60000);
+    @Mock
+    private NoteArchive noteArchive;
+    @Mock
+    private NoteBlobStore noteBlobStore;
+    @Mock
+    private NoteEncryption noteEncryption;
+    @Mock
+    private NoteSharing noteSharing;
     @InjectMocks
     private NoteServiceImpl noteServiceImpl;
     private List<Note> noteList = null;
@@ -102,6 +156,29 @@ public class NoteServiceImplTest {
         verify(noteRepository, times(1)).insert((NoteUser) any());
     }
 
+    @Test(expected = NoteQuotaExceededException.class)
+    public void createNoteOverQuota() {
+        doThrow(NoteQuotaExceededException.class).when(noteQuota).check(eq("Jhon123"), eq(0L), anyLong());
+        note.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        try {
+            noteServiceImpl.createNote(note);
+        } finally {
+            // the reference taken for the blob is given back
+            verify(noteBlobStore).release("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        }
+    }
+
+    @Test(expected = DuplicateKeyException.class)
+    public void createNoteDuplicateUser() {
+        when(noteRepository.insert((NoteUser) any())).thenThrow(new DuplicateKeyException("_id"));
+        note.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        try {
+            noteServiceImpl.createNote(note);
+        } finally {
+            verify(noteBlobStore).release("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        }
+    }
+
     @Test
     public void createNoteFailure() {
         when(noteRepository.insert((NoteUser) any())).thenReturn(null);
@@ -113,9 +190,31 @@ public class NoteServiceImplTest {
     @Test
     public void deleteNoteSuccess() {
         when(noteRepository.findById(noteUser.getUserId())).thenReturn(options);
-        when(noteRepository.save(noteUser)).thenReturn(noteUser);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
         boolean flag = noteServiceImpl.deleteNote("Jhon123", note.getNoteId());
         Assert.assertEquals(true, flag);
+        // the note is pulled, the document is not saved back
+        verify(noteRepository, never()).save((NoteUser) any());
+        // a leftover archived copy shares the blob reference of the pulled note
+        verify(noteArchive, times(1)).discard("Jhon123", note.getNoteId());
+        verify(noteArchive, never()).delete(any(), anyInt());
+    }
+
+    @Test
+    public void deleteArchivedNote() {
+        noteUser.setNotes(new ArrayList<>());
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        Assert.assertTrue(noteServiceImpl.deleteNote("Jhon123", 7));
+        verify(noteArchive, times(1)).delete("Jhon123", 7);
+        verify(mongoOperations, never()).updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class));
+    }
+
+    @Test
+    public void getArchivedNotes() {
+        when(noteArchive.list("Jhon123")).thenReturn(noteList);
+        Assert.assertEquals(noteList, noteServiceImpl.getArchivedNotes("Jhon123"));
+        verify(noteEncryption, times(1)).decrypt("Jhon123", noteList);
     }
 
     @Test(expected = NullPointerException.class)
@@ -151,6 +250,8 @@ public class NoteServiceImplTest {
     public void updateNoteSuccess() throws NoteNotFoundExeption {
 
         when(noteRepository.findById("Jhon123")).thenReturn(options);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
         note.setNoteContent("Match cancelled");
         noteList.add(note);
         Note fetchedNote = noteServiceImpl.updateNote(note, note.getNoteId(), note.getNoteCreatedBy());
@@ -159,6 +260,45 @@ public class NoteServiceImplTest {
 
     }
 
+    @Test
+    public void updateNoteKeepsChecklist() throws NoteNotFoundExeption {
+
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Note edited = new Note(note);
+        edited.setNoteContent("Match cancelled");
+        noteServiceImpl.updateNote(edited, note.getNoteId(), note.getNoteCreatedBy());
+
+        // a positional update of the note which leaves the checklist to its own operations
+        verify(mongoOperations).updateFirst(any(Query.class),
+                argThat((Update update) -> update.modifies("notes.$.noteContent")
+                        && !update.modifies("notes.$.checklist") && !update.modifies("notes.$.rank")),
+                eq(NoteUser.class));
+        verify(noteRepository, never()).save((NoteUser) any());
+    }
+
+    @Test
+    public void updateNoteIsCountedAsWrite() throws NoteNotFoundExeption {
+
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        when(noteQuota.sizeOf(any())).thenReturn(120L);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Note edited = new Note(note);
+        edited.setNoteContent("Match cancelled");
+        noteServiceImpl.updateNote(edited, note.getNoteId(), "Jhon123");
+
+        // a targeted update, Spring Data publishes no save event for it
+        verify(noteTelemetry).documentUpdated("Jhon123", 120L);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> window = (Map<String, Object>) noteTelemetry.snapshot().get("currentWindow");
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> topWriters = (List<Map<String, Object>>) window.get("topWriters");
+        Assert.assertEquals("Jhon123", topWriters.get(0).get("userId"));
+        Assert.assertEquals(1L, topWriters.get(0).get("count"));
+    }
+
     @Test(expected = NoteNotFoundExeption.class)
     public void updateNoteFailure() throws NoteNotFoundExeption {
 
@@ -171,6 +311,137 @@ public class NoteServiceImplTest {
 
     }
 
+    @Test(expected = NoteQuotaExceededException.class)
+    public void updateNoteOverQuota() throws NoteNotFoundExeption {
+
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        doThrow(NoteQuotaExceededException.class).when(noteQuota).check(eq("Jhon123"), anyLong(), anyLong());
+        note.setNoteContent("Match cancelled");
+        noteServiceImpl.updateNote(note, note.getNoteId(), note.getNoteCreatedBy());
+
+    }
+
+    @Test(expected = NoteQuotaExceededException.class)
+    public void updateNoteWriteBehindOverQuota() throws NoteNotFoundExeption {
+
+        when(noteWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(noteQuota.isEnabled()).thenReturn(true);
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        doThrow(NoteQuotaExceededException.class).when(noteQuota).check(eq("Jhon123"), anyLong(), anyLong());
+        try {
+            noteServiceImpl.updateNote(note, note.getNoteId(), note.getNoteCreatedBy());
+        } finally {
+            verify(noteWriteBehindBuffer, never()).offer(any(), anyInt(), any());
+        }
+    }
+
+    private void measureByContentLength() {
+        when(noteQuota.sizeOf(any())).thenAnswer(invocation -> {
+            Object value = invocation.getArgument(0);
+            return value instanceof Note && null != ((Note) value).getNoteContent()
+                    ? (long) ((Note) value).getNoteContent().length() : 0L;
+        });
+    }
+
+    @Test(expected = NoteQuotaExceededException.class)
+    public void updateNoteContentOverQuotaRejectedByWrite() throws NoteNotFoundExeption {
+
+        // the counter read leaves room, a concurrent write used it up
+        when(noteQuota.isEnabled()).thenReturn(true);
+        when(noteQuota.getMaxBytes()).thenReturn(100L);
+        measureByContentLength();
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(mongoOperations.exists(any(Query.class), eq(NoteUser.class))).thenReturn(true);
+        String content = "Mumbai Indians vs RCB match scheduled  for 4 PM, tickets booked";
+        long delta = content.length() - note.getNoteContent().length();
+        doThrow(NoteQuotaExceededException.class).when(noteQuota).check("Jhon123", 100L, delta);
+        try {
+            noteServiceImpl.updateNoteContent("Jhon123", note.getNoteId(), content);
+        } finally {
+            ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+            verify(mongoOperations).updateFirst(query.capture(), any(Update.class), eq(NoteUser.class));
+            List<?> or = (List<?>) query.getValue().getQueryObject().get("$or");
+            Assert.assertTrue(or.contains(new Document("usedBytes", new Document("$lte", 100L - delta))));
+        }
+    }
+
+    @Test
+    public void updateNoteWriteBehindGrowingIsWrittenDirectly() throws NoteNotFoundExeption {
+
+        when(noteWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(noteQuota.isEnabled()).thenReturn(true);
+        when(noteQuota.getMaxBytes()).thenReturn(1000L);
+        measureByContentLength();
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Note edited = new Note(note);
+        edited.setNoteContent(note.getNoteContent() + ", tickets booked");
+        noteServiceImpl.updateNote(edited, note.getNoteId(), "Jhon123");
+
+        // written after the buffered notes of the user, checked by the write
+        InOrder inOrder = inOrder(noteWriteBehindBuffer, mongoOperations);
+        inOrder.verify(noteWriteBehindBuffer).flush("Jhon123");
+        inOrder.verify(mongoOperations).updateFirst(argThat((Query query) -> query.getQueryObject().containsKey("$or")),
+                any(Update.class), eq(NoteUser.class));
+        verify(noteWriteBehindBuffer, never()).offer(any(), anyInt(), any());
+    }
+
+    @Test
+    public void updateNoteWriteBehind() throws NoteNotFoundExeption {
+
+        when(noteWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        note.setNoteContent("Match cancelled");
+        Note fetchedNote = noteServiceImpl.updateNote(note, note.getNoteId(), note.getNoteCreatedBy());
+        Assert.assertEquals(note, fetchedNote);
+        verify(noteWriteBehindBuffer, times(1)).offer("Jhon123", note.getNoteId(), note);
+        verify(noteRepository, never()).save((NoteUser) any());
+    }
+
+    @Test
+    public void updateNoteWriteBehindOfArchivedNote() throws NoteNotFoundExeption {
+
+        // not in the user's document, the flush would not write it
+        when(noteWriteBehindBuffer.isEnabled()).thenReturn(true);
+        Note archived = new Note(note);
+        archived.setNoteId(7);
+        noteUser.setNotes(new ArrayList<>());
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        noteServiceImpl.updateNote(archived, 7, "Jhon123");
+        verify(noteWriteBehindBuffer, never()).offer(any(), anyInt(), any());
+        verify(noteArchive, times(1)).delete("Jhon123", 7);
+    }
+
+    @Test
+    public void updateNoteContentWriteBehindOffersNewVersion() throws NoteNotFoundExeption {
+
+        when(noteWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(noteWriteBehindBuffer.get("Jhon123", note.getNoteId())).thenReturn(Optional.of(note));
+        noteServiceImpl.updateNoteContent("Jhon123", note.getNoteId(), "Match cancelled");
+        // the buffered version is left as it is, a flush writing it drops only that version
+        Assert.assertEquals("Mumbai Indians vs RCB match scheduled  for 4 PM", note.getNoteContent());
+        verify(noteWriteBehindBuffer, times(1)).offer(eq("Jhon123"), eq(note.getNoteId()),
+                argThat(updated -> updated != note && "Match cancelled".equals(updated.getNoteContent())));
+    }
+
+    @Test
+    public void updateNoteContentInvalidatesRecentNotesAfterWrite() throws NoteNotFoundExeption {
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        noteServiceImpl.updateNoteContent("Jhon123", note.getNoteId(), "Match cancelled");
+        // a listing may have cached the old notes while the write ran
+        InOrder inOrder = inOrder(recentNotesCache, mongoOperations);
+        inOrder.verify(mongoOperations).updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class));
+        inOrder.verify(recentNotesCache).invalidate("Jhon123");
+    }
+
     @Test
     public void getNoteByNoteIdSuccess() throws NoteNotFoundExeption {
         when(noteRepository.findById("Jhon123")).thenReturn(options);
@@ -185,10 +456,79 @@ public class NoteServiceImplTest {
         Assert.assertEquals(note, fetechedNote);
     }
 
+    @Test
+    public void getNoteByNoteIdFromArchive() throws NoteNotFoundExeption {
+        Note archivedNote = new Note();
+        archivedNote.setNoteId(7);
+        when(noteRepository.findById("Jhon123")).thenReturn(options);
+        when(noteArchive.find("Jhon123", 7)).thenReturn(Optional.of(archivedNote));
+        Note fetechedNote = noteServiceImpl.getNoteByNoteId("Jhon123", 7);
+        Assert.assertEquals(archivedNote, fetechedNote);
+    }
+
+    @Test
+    public void getNoteSummariesByUserId() {
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        when(mongoOperations.aggregate(any(Aggregation.class), eq(NoteUser.class), eq(Note.class)))
+                .thenReturn(new AggregationResults<>(new ArrayList<>(), new Document()));
+        List<Note> notes = noteServiceImpl.getNoteSummariesByUserId("Jhon123");
+        Assert.assertEquals(noteList, notes);
+    }
+
+    @Test
+    public void getNoteSummariesBackfillsMissingSnippets() {
+        // written before snippets were stored, listed without its content
+        Note summary = new Note(note);
+        summary.setNoteContent(null);
+        noteUser.setNotes(new ArrayList<>(Arrays.asList(summary)));
+        when(mongoOperations.findOne(any(Query.class), eq(NoteUser.class))).thenReturn(noteUser);
+        when(mongoOperations.aggregate(any(Aggregation.class), eq(NoteUser.class), eq(Note.class)))
+                .thenReturn(new AggregationResults<>(Arrays.asList(new Note(note)), new Document()));
+
+        List<Note> notes = noteServiceImpl.getNoteSummariesByUserId("Jhon123");
+
+        Assert.assertEquals("Mumbai Indians vs RCB match scheduled  for 4 PM", notes.get(0).getNoteSnippet());
+        Assert.assertNull(notes.get(0).getNoteContent());
+        verify(mongoOperations).updateFirst(any(Query.class),
+                argThat((Update update) -> "Mumbai Indians vs RCB match scheduled  for 4 PM".equals(
+                        ((Document) update.getUpdateObject().get("$set")).get("notes.$.noteSnippet"))),
+                eq(NoteUser.class));
+    }
+
+    @Test
+    public void getRecentNotes() {
+        when(recentNotesCache.get("Jhon123", 1)).thenReturn(Optional.empty());
+        when(mongoOperations.aggregate(any(Aggregation.class), eq(NoteUser.class), eq(Note.class)))
+                .thenReturn(new AggregationResults<>(noteList, new Document()));
+        List<Note> notes = noteServiceImpl.getRecentNotes("Jhon123", 1);
+        Assert.assertEquals(noteList, notes);
+    }
+
+    @Test
+    public void getRecentNotesOverlaysWriteBehindBuffer() {
+        Note buffered = new Note(2, "buffered", "not flushed yet", "Active", new Date(System.currentTimeMillis() + 60000),
+                null, null, "Jhon123");
+        when(recentNotesCache.get("Jhon123", 1)).thenReturn(Optional.empty());
+        when(mongoOperations.aggregate(any(Aggregation.class), eq(NoteUser.class), eq(Note.class)))
+                .thenReturn(new AggregationResults<>(noteList, new Document()));
+        when(noteWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(noteWriteBehindBuffer.overlay("Jhon123", noteList)).thenReturn(Arrays.asList(note, buffered));
+        List<Note> notes = noteServiceImpl.getRecentNotes("Jhon123", 1);
+        Assert.assertEquals(1, notes.size());
+        Assert.assertEquals(2, notes.get(0).getNoteId());
+        Assert.assertNull(notes.get(0).getNoteContent());
+    }
+
     @Test
     public void getAllNoteByUserId() {
         when(noteRepository.findById("Jhon123")).thenReturn(options);
         List<Note> notes = noteServiceImpl.getAllNoteByUserId("Jhon123");
         Assert.assertEquals(noteList, notes);
     }
+
+    @Test
+    public void moveNote() throws NoteNotFoundExeption {
+        when(noteRanking.move("Jhon123", 1, null)).thenReturn("V");
+        Assert.assertEquals("V", noteServiceImpl.moveNote("Jhon123", 1, null));
+    }
 }
@@ -0,0 +1,62 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteShare;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.repository.NoteShareRepository;
+import com.stackroute.keepnote.service.NoteBlobStore;
+import com.stackroute.keepnote.service.NoteEncryption;
+import com.stackroute.keepnote.service.NoteSharing;
+import com.stackroute.keepnote.service.NoteWriteBehindBuffer;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NoteSharingTest {
+
+    private NoteShareRepository noteShareRepository;
+    private MongoOperations mongoOperations;
+    private NoteEncryption encryption;
+    private NoteSharing noteSharing;
+
+    @Before
+    public void setUp() {
+        noteShareRepository = mock(NoteShareRepository.class);
+        mongoOperations = mock(MongoOperations.class);
+        encryption = mock(NoteEncryption.class);
+        noteSharing = new NoteSharing(noteShareRepository, mongoOperations, mock(NoteWriteBehindBuffer.class),
+                encryption, mock(NoteBlobStore.class), 100);
+    }
+
+    /* createdBy comes from the client, the note is keyed and decrypted by the owning document. */
+    @Test
+    public void sharedWithMeIsKeyedByOwnerDocument() {
+        when(noteShareRepository.findByRecipientIdOrderBySharedAtDesc("Mary456"))
+                .thenReturn(Arrays.asList(new NoteShare("Jhon123", 1, "Mary456", NoteShare.READ)));
+        Document shared = new Document("_id", "Jhon123").append("notes",
+                new Document("noteId", 1).append("noteTitle", "IPL lists").append("createdBy", "someone else"));
+        when(mongoOperations.aggregate(any(Aggregation.class), eq(NoteUser.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(Arrays.asList(shared), new Document()));
+
+        List<NoteShare> shares = noteSharing.getSharedWithMe("Mary456");
+
+        Assert.assertEquals(1, shares.size());
+        Assert.assertEquals("IPL lists", shares.get(0).getNote().getNoteTitle());
+        verify(encryption).decrypt(eq("Jhon123"), argThat((Note note) -> 1 == note.getNoteId()));
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.service.NoteTelemetry;
+import com.stackroute.keepnote.service.NoteTelemetryListener;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class NoteTelemetryListenerTest {
+
+    private NoteTelemetry telemetry;
+    private NoteTelemetryListener listener;
+    private Document document;
+
+    @Before
+    public void setUp() {
+        telemetry = new NoteTelemetry(10, 200, 60000);
+        listener = new NoteTelemetryListener(telemetry);
+        // the stored counter is off, as it is until the quota reconciles it
+        document = new Document("_id", "Jhon123").append("notes",
+                Arrays.asList(new Document("noteId", 1).append("noteContent", "Mumbai Indians vs RCB")))
+                .append("usedBytes", 1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readSizes() {
+        return (Map<String, Object>) telemetry.snapshot().get("readSizes");
+    }
+
+    @Test
+    public void loadedDocumentIsMeasuredByItsBsonSize() {
+        listener.onAfterLoad(new AfterLoadEvent<>(document, NoteUser.class, "noteUser"));
+
+        long size = new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+        Assert.assertEquals(1L, readSizes().get("count"));
+        Assert.assertEquals(size, readSizes().get("totalBytes"));
+    }
+
+    @Test
+    public void projectedReadIsNotMeasured() {
+        NoteTelemetryListener.projected(() -> {
+            listener.onAfterLoad(new AfterLoadEvent<>(new Document("_id", "Jhon123"), NoteUser.class, "noteUser"));
+            return null;
+        });
+        listener.onAfterLoad(new AfterLoadEvent<>(document, NoteUser.class, "noteUser"));
+
+        Assert.assertEquals(1L, readSizes().get("count"));
+    }
+
+}
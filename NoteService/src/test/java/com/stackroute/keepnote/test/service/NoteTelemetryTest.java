@@ -0,0 +1,98 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.service.NoteTelemetry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The size histogram and the Space-Saving sketches, through the snapshot of
+ * NoteTelemetry.
+ */
+public class NoteTelemetryTest {
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> section(NoteTelemetry telemetry, String name) {
+        return (Map<String, Object>) telemetry.snapshot().get(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> topWriters(NoteTelemetry telemetry) {
+        return (List<Map<String, Object>>) section(telemetry, "currentWindow").get("topWriters");
+    }
+
+    @Test
+    public void sizesFallIntoPowerOfTwoBuckets() {
+        NoteTelemetry telemetry = new NoteTelemetry(10, 200, 60000);
+        telemetry.documentRead("Jhon123", 0);
+        telemetry.documentRead("Jhon123", 1);
+        telemetry.documentRead("Jhon123", 1023);
+        telemetry.documentRead("Jhon123", 1024);
+        telemetry.documentRead("Jhon123", -5);
+
+        Map<String, Object> readSizes = section(telemetry, "readSizes");
+        @SuppressWarnings("unchecked")
+        Map<String, Long> buckets = (Map<String, Long>) readSizes.get("buckets");
+        // a size of 2^i is the first one of the next bucket
+        Assert.assertEquals(Long.valueOf(2), buckets.get("<1"));
+        Assert.assertEquals(Long.valueOf(1), buckets.get("<2"));
+        Assert.assertEquals(Long.valueOf(1), buckets.get("<1024"));
+        Assert.assertEquals(Long.valueOf(1), buckets.get("<2048"));
+        Assert.assertEquals(4, buckets.size());
+        Assert.assertEquals(5L, readSizes.get("count"));
+        Assert.assertEquals(2048L, readSizes.get("totalBytes"));
+        Assert.assertEquals(1024L, readSizes.get("maxBytes"));
+    }
+
+    @Test
+    public void topWritersAreExactWithinCapacity() {
+        NoteTelemetry telemetry = new NoteTelemetry(10, 3, 60000);
+        for (int i = 0; i < 5; i++) {
+            telemetry.documentUpdated("Jhon123", 100);
+        }
+        telemetry.documentUpdated("Mary456", 100);
+
+        List<Map<String, Object>> top = topWriters(telemetry);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("Jhon123", top.get(0).get("userId"));
+        Assert.assertEquals(5L, top.get(0).get("count"));
+        Assert.assertEquals(0L, top.get(0).get("error"));
+        Assert.assertEquals("Mary456", top.get(1).get("userId"));
+    }
+
+    @Test
+    public void evictedCountIsInheritedAsErrorBound() {
+        NoteTelemetry telemetry = new NoteTelemetry(2, 2, 60000);
+        for (int i = 0; i < 5; i++) {
+            telemetry.documentUpdated("Jhon123", 100);
+        }
+        for (int i = 0; i < 3; i++) {
+            telemetry.documentUpdated("Mary456", 100);
+        }
+        telemetry.documentUpdated("Ravi789", 100);
+
+        List<Map<String, Object>> top = topWriters(telemetry);
+        // above total / capacity, so it is never evicted
+        Assert.assertEquals("Jhon123", top.get(0).get("userId"));
+        Assert.assertEquals(5L, top.get(0).get("count"));
+        // took over the smallest counter: overestimated by at most its error
+        Assert.assertEquals("Ravi789", top.get(1).get("userId"));
+        Assert.assertEquals(4L, top.get(1).get("count"));
+        Assert.assertEquals(3L, top.get(1).get("error"));
+    }
+
+    @Test
+    public void topIsLimitedToTopN() {
+        NoteTelemetry telemetry = new NoteTelemetry(1, 200, 60000);
+        telemetry.documentUpdated("Jhon123", 100);
+        telemetry.documentUpdated("Jhon123", 100);
+        telemetry.documentUpdated("Mary456", 100);
+
+        List<Map<String, Object>> top = topWriters(telemetry);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("Jhon123", top.get(0).get("userId"));
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.stackroute.keepnote.test.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.stackroute.keepnote.model.ChecklistItem;
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.model.NoteUser;
+import com.stackroute.keepnote.service.NoteBlobStore;
+import com.stackroute.keepnote.service.NoteEncryption;
+import com.stackroute.keepnote.service.NoteQuota;
+import com.stackroute.keepnote.service.NoteTelemetry;
+import com.stackroute.keepnote.service.NoteWriteBehindBuffer;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*
+ * The flush writes every buffered note as a positional update of that note, and
+ * never the whole NoteUser document.
+ */
+public class NoteWriteBehindBufferTest {
+
+    private MongoOperations mongoOperations;
+    private NoteTelemetry noteTelemetry;
+    private NoteWriteBehindBuffer buffer;
+    private Note stored;
+
+    @Before
+    public void setUp() {
+        mongoOperations = mock(MongoOperations.class);
+        // the flusher is not started, the test flushes
+        noteTelemetry = mock(NoteTelemetry.class);
+        buffer = new NoteWriteBehindBuffer(mongoOperations, mock(NoteBlobStore.class), mock(NoteEncryption.class),
+                mock(NoteQuota.class), noteTelemetry, true, 60000, 500);
+
+        ChecklistItem item = new ChecklistItem();
+        item.setItemId("item1");
+        item.setText("book tickets");
+        item.setChecked(true);
+        stored = new Note(1, "IPL lists", "Mumbai Indians vs RCB", "Active", new Date(), null, null, "Jhon123");
+        stored.setRank("U");
+        stored.setChecklist(new ArrayList<>(Arrays.asList(item)));
+        NoteUser noteUser = new NoteUser();
+        noteUser.setUserId("Jhon123");
+        noteUser.setNotes(new ArrayList<>(Arrays.asList(stored)));
+        when(mongoOperations.findById("Jhon123", NoteUser.class)).thenReturn(noteUser);
+    }
+
+    @Test
+    public void flushUpdatesOnlyTheBufferedNote() {
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        Note updated = new Note(stored);
+        updated.setNoteContent("Match cancelled");
+        updated.setChecklist(null);
+        buffer.offer("Jhon123", 1, updated);
+        buffer.flush();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations).updateFirst(query.capture(), update.capture(), eq(NoteUser.class));
+        Assert.assertEquals(new Document("_id", "Jhon123").append("notes.noteId", 1), query.getValue().getQueryObject());
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        Assert.assertEquals("Match cancelled", set.get("notes.$.noteContent"));
+        // the checklist and the rank have their own operations
+        Assert.assertFalse(update.getValue().modifies("notes.$.checklist"));
+        Assert.assertFalse(update.getValue().modifies("notes.$.rank"));
+        verify(mongoOperations, never()).save(any());
+        Assert.assertFalse(buffer.get("Jhon123", 1).isPresent());
+        verify(noteTelemetry).documentUpdated(eq("Jhon123"), anyLong());
+    }
+
+    @Test
+    public void overlayTakesStoredChecklistAndRank() {
+        Note updated = new Note(stored);
+        updated.setNoteContent("Match cancelled");
+        updated.setRank("A");
+        updated.setChecklist(null);
+        buffer.offer("Jhon123", 1, updated);
+
+        Note read = buffer.overlay("Jhon123", Arrays.asList(stored)).get(0);
+        Assert.assertEquals("Match cancelled", read.getNoteContent());
+        Assert.assertEquals("U", read.getRank());
+        Assert.assertEquals(stored.getChecklist(), read.getChecklist());
+    }
+
+    @Test
+    public void flushDropsNoteGoneMeanwhile() {
+        Note deleted = new Note(stored);
+        deleted.setNoteId(2);
+        buffer.offer("Jhon123", 2, deleted);
+        buffer.flush();
+
+        verify(mongoOperations, never()).updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class));
+        Assert.assertFalse(buffer.get("Jhon123", 2).isPresent());
+    }
+
+    @Test
+    public void failedFlushKeepsNote() {
+        when(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(NoteUser.class)))
+                .thenThrow(new IllegalStateException("MongoDB is down"));
+        buffer.offer("Jhon123", 1, new Note(stored));
+        buffer.flush();
+
+        Assert.assertTrue(buffer.get("Jhon123", 1).isPresent());
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.model.Note;
+import com.stackroute.keepnote.service.RecentNotesCache;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class RecentNotesCacheTest {
+
+    private RecentNotesCache recentNotesCache;
+    private List<Note> notes;
+
+    @Before
+    public void setUp() {
+        recentNotesCache = new RecentNotesCache(true, 2, 2);
+        notes = Arrays.asList(new Note(1, "title1", null, "Active", new Date(), null, null, "Jhon123"),
+                new Note(2, "title2", null, "Active", new Date(), null, null, "Jhon123"));
+    }
+
+    @Test
+    public void loadedNotesAreCached() {
+        recentNotesCache.put("Jhon123", notes, recentNotesCache.loadStarted());
+        Assert.assertEquals(1, recentNotesCache.get("Jhon123", 1).get().size());
+        Assert.assertEquals("title2", recentNotesCache.get("Jhon123", 2).get().get(1).getNoteTitle());
+    }
+
+    @Test
+    public void notesLoadedDuringInvalidationAreNotCached() {
+        long loadedAt = recentNotesCache.loadStarted();
+        recentNotesCache.invalidate("Jhon123");
+        recentNotesCache.put("Jhon123", notes, loadedAt);
+        Assert.assertFalse(recentNotesCache.get("Jhon123", 1).isPresent());
+    }
+
+    @Test
+    public void leastRecentlyUsedUserIsEvicted() {
+        recentNotesCache.put("Jhon123", notes, recentNotesCache.loadStarted());
+        recentNotesCache.put("Mary456", notes, recentNotesCache.loadStarted());
+        recentNotesCache.get("Jhon123", 1);
+        recentNotesCache.put("Ravi789", notes, recentNotesCache.loadStarted());
+        Assert.assertTrue(recentNotesCache.get("Jhon123", 1).isPresent());
+        Assert.assertFalse(recentNotesCache.get("Mary456", 1).isPresent());
+    }
+
+}
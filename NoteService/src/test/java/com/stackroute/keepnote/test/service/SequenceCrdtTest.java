@@ -0,0 +1,60 @@
+package com.stackroute.keepnote.test.service;
+
+import com.stackroute.keepnote.service.SequenceCrdt;
+import com.stackroute.keepnote.service.SequenceCrdt.ElementId;
+import com.stackroute.keepnote.service.SequenceCrdt.Operation;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequenceCrdtTest {
+
+    private static Operation insert(long counter, String site, ElementId after, String value) {
+        Operation operation = new Operation();
+        operation.setOp(SequenceCrdt.INSERT);
+        operation.setId(new ElementId(counter, site));
+        operation.setAfter(after);
+        operation.setValue(value);
+        return operation;
+    }
+
+    private static Operation delete(ElementId id) {
+        Operation operation = new Operation();
+        operation.setOp(SequenceCrdt.DELETE);
+        operation.setId(id);
+        return operation;
+    }
+
+    @Test
+    public void concurrentInsertsConverge() {
+        ElementId lastChar = new ElementId(2, SequenceCrdt.INITIAL_SITE);
+        Operation fromA = insert(3, "a", lastChar, " there");
+        Operation fromB = insert(3, "b", lastChar, " you");
+        Operation afterA = insert(4, "a", fromA.getId(), "!");
+
+        SequenceCrdt first = new SequenceCrdt("hi");
+        first.apply(fromA);
+        first.apply(afterA);
+        first.apply(fromB);
+
+        SequenceCrdt second = new SequenceCrdt("hi");
+        second.apply(fromB);
+        second.apply(fromA);
+        second.apply(afterA);
+
+        Assert.assertEquals(first.text(), second.text());
+        Assert.assertEquals("hi you there!", first.text());
+    }
+
+    @Test
+    public void operationsAreIdempotent() {
+        SequenceCrdt document = new SequenceCrdt("abc");
+        Operation removeB = delete(new ElementId(2, SequenceCrdt.INITIAL_SITE));
+        Operation insertX = insert(4, "a", null, "x");
+        Assert.assertTrue(document.apply(removeB));
+        Assert.assertTrue(document.apply(insertX));
+        Assert.assertFalse(document.apply(removeB));
+        Assert.assertFalse(document.apply(insertX));
+        Assert.assertEquals("xac", document.text());
+        Assert.assertEquals(4, document.clock());
+    }
+}
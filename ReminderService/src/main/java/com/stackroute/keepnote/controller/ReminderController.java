@@ -1,5 +1,7 @@
 package com.stackroute.keepnote.controller;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +11,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.stackroute.keepnote.exception.ReminderNotFoundException;
@@ -166,4 +169,14 @@ public class ReminderController {
 		return this.reminderService.getAllReminders().isEmpty() ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
 				: new ResponseEntity<>(HttpStatus.OK);
 	}
+
+	/*
+	 * Define a handler method which will get us the reminders with the given ids
+	 * in one call, e.g. "/api/v1/reminder?ids=A,B". This handler method should
+	 * return 200(OK) with the reminders found, unknown ids are skipped.
+	 */
+	@GetMapping(value = "/api/v1/reminder", params = "ids")
+	public ResponseEntity<Object> getReminders(@RequestParam("ids") List<String> reminderIds) {
+		return new ResponseEntity<>(this.reminderService.getRemindersByIds(reminderIds), HttpStatus.OK);
+	}
 }
@@ -1,5 +1,8 @@
 package com.stackroute.keepnote.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -13,4 +16,10 @@ import com.stackroute.keepnote.model.Reminder;
 @Repository
 public interface ReminderRepository extends MongoRepository<Reminder, String> {
 
+	/*
+	 * This method will search for all reminders with one of the given ids, in a
+	 * single query.
+	 */
+	List<Reminder> findByReminderIdIn(Collection<String> reminderIds);
+
 }
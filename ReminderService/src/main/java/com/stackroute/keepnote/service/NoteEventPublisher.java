@@ -0,0 +1,113 @@
+package com.stackroute.keepnote.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.stackroute.keepnote.model.Reminder;
+
+/*
+ * Notifies NoteService about changed and deleted reminders so that it can
+ * refresh the reminder copies embedded in notes. The calls are made on a
+ * background thread and never delay or fail the reminder request itself.
+ * Publishing is disabled when keepnote.note-service.events-url is not set.
+ *
+ * Every call carries the secret shared with NoteService, and a call answered
+ * with an error is sent again up to events-retries times with a doubling
+ * delay. The events are sent one after the other, so a retried event is never
+ * overtaken by a later event about the same reminder.
+ *
+ * CategoryService has the same publisher for its categories. The services
+ * share no module, so the two copies differ only in the entity they publish
+ * and are kept in step.
+ */
+
+@Component
+public class NoteEventPublisher {
+
+	private static final Log log = LogFactory.getLog(NoteEventPublisher.class);
+
+	public static final String EVENT_SECRET_HEADER = "X-Keepnote-Event-Secret";
+
+	private final RestTemplate restTemplate;
+	private final String eventsUrl;
+	private final int retries;
+	private final long retryDelayMs;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "note-event-publisher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public NoteEventPublisher(RestTemplateBuilder restTemplateBuilder,
+			@Value("${keepnote.note-service.events-url:}") String eventsUrl,
+			@Value("${keepnote.note-service.events-secret:}") String eventsSecret,
+			@Value("${keepnote.note-service.events-retries:5}") int retries,
+			@Value("${keepnote.note-service.events-retry-delay-ms:500}") long retryDelayMs) {
+		this.restTemplate = restTemplateBuilder.additionalInterceptors((request, body, execution) -> {
+			request.getHeaders().set(EVENT_SECRET_HEADER, eventsSecret);
+			return execution.execute(request, body);
+		}).build();
+		this.eventsUrl = eventsUrl;
+		this.retries = retries;
+		this.retryDelayMs = retryDelayMs;
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdown();
+	}
+
+	public void reminderUpdated(Reminder reminder) {
+		publish(() -> this.restTemplate.put(this.eventsUrl + "/reminder/{id}", reminder, reminder.getReminderId()));
+	}
+
+	public void reminderDeleted(String reminderId) {
+		publish(() -> this.restTemplate.delete(this.eventsUrl + "/reminder/{id}", reminderId));
+	}
+
+	private void publish(Runnable call) {
+		if (this.eventsUrl.isEmpty()) {
+			return;
+		}
+		this.executor.execute(() -> {
+			long delayMs = this.retryDelayMs;
+			for (int attempt = 0;; attempt++) {
+				try {
+					call.run();
+					return;
+				} catch (HttpClientErrorException e) {
+					// refused, e.g. for a wrong secret, sending it again would not help
+					log.error("reminder event refused by note service: " + e.getMessage());
+					return;
+				} catch (Exception e) {
+					if (attempt >= this.retries) {
+						log.error("publishing reminder event to note service failed: " + e.getMessage());
+						return;
+					}
+					log.warn("publishing reminder event to note service failed, retrying: " + e.getMessage());
+				}
+				try {
+					Thread.sleep(delayMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				delayMs *= 2;
+			}
+		});
+	}
+
+}
@@ -3,6 +3,11 @@ package com.stackroute.keepnote.service;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import com.stackroute.keepnote.exception.ReminderNotCreatedException;
@@ -30,9 +35,14 @@ public class ReminderServiceImpl implements ReminderService {
 	 */
 
 	private final ReminderRepository reminderRepository;
+	private final MongoOperations mongoOperations;
+	private final NoteEventPublisher noteEventPublisher;
 
-	public ReminderServiceImpl(ReminderRepository reminderRepository) {
+	public ReminderServiceImpl(ReminderRepository reminderRepository, MongoOperations mongoOperations,
+			NoteEventPublisher noteEventPublisher) {
 		this.reminderRepository = reminderRepository;
+		this.mongoOperations = mongoOperations;
+		this.noteEventPublisher = noteEventPublisher;
 	}
 
 	/*
@@ -59,6 +69,7 @@ public class ReminderServiceImpl implements ReminderService {
 					.orElseThrow(() -> new ReminderNotFoundException("reminder not found exception"));
 			if (null != reminder) {
 				this.reminderRepository.delete(reminder);
+				this.noteEventPublisher.reminderDeleted(reminderId);
 				return Boolean.TRUE;
 			}
 		} catch (Exception e) {
@@ -69,17 +80,24 @@ public class ReminderServiceImpl implements ReminderService {
 
 	/*
 	 * This method should be used to update a existing reminder.Call the
-	 * corresponding method of Respository interface.
+	 * corresponding method of Respository interface. The fields are set and the
+	 * updated reminder is read back with a single findAndModify which never
+	 * upserts, the creation date is kept. NoteService is notified so that it
+	 * refreshes the copies of the reminder embedded in notes.
 	 */
 	public Reminder updateReminder(Reminder reminder, String reminderId) throws ReminderNotFoundException {
-		try {
-			Optional.ofNullable(this.reminderRepository.findById(reminderId)).get()
-					.orElseThrow(() -> new ReminderNotFoundException("reminder not found exception"));
-			this.reminderRepository.save(reminder);
-			return this.reminderRepository.findById(reminderId).get();
-		} catch (Exception e) {
-			throw new ReminderNotFoundException(e.getMessage());
+		Update update = new Update().set("reminderName", reminder.getReminderName())
+				.set("reminderDescription", reminder.getReminderDescription())
+				.set("reminderType", reminder.getReminderType())
+				.set("reminderCreatedBy", reminder.getReminderCreatedBy());
+		Reminder updatedReminder = this.mongoOperations.findAndModify(
+				new Query(Criteria.where("_id").is(reminderId)), update,
+				FindAndModifyOptions.options().returnNew(true).upsert(false), Reminder.class);
+		if (null == updatedReminder) {
+			throw new ReminderNotFoundException("reminder not found exception");
 		}
+		this.noteEventPublisher.reminderUpdated(updatedReminder);
+		return updatedReminder;
 	}
 
 	/*
@@ -109,4 +127,12 @@ public class ReminderServiceImpl implements ReminderService {
 		return this.reminderRepository.findAll();
 	}
 
+	/*
+	 * This method should be used to get the reminders with the given ids, e.g. to
+	 * refresh the copies embedded in notes. Unknown ids are skipped.
+	 */
+	public List<Reminder> getRemindersByIds(List<String> reminderIds) {
+		return this.reminderRepository.findByReminderIdIn(reminderIds);
+	}
+
 }
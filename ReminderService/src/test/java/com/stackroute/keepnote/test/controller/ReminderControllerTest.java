@@ -5,6 +5,7 @@ package com.stackroute.keepnote.test.controller;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -177,6 +178,17 @@ public class ReminderControllerTest {
 
     }
 
+    @Test
+    public void getRemindersByIds() throws Exception
+    {
+        when(reminderService.getRemindersByIds(Arrays.asList("5b0509731764e3096984eae6", "5b0509731764e3096984eae7")))
+                .thenReturn(reminderList);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/reminder?ids=5b0509731764e3096984eae6,5b0509731764e3096984eae7")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].reminderId").value("5b0509731764e3096984eae6"));
+    }
+
 
     private static String asJsonString(final Object obj) {
         try {
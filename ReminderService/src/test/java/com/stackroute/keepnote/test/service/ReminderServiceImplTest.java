@@ -1,6 +1,7 @@
 package com.stackroute.keepnote.test.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -10,13 +11,20 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.stackroute.keepnote.exception.ReminderNotCreatedException;
 import com.stackroute.keepnote.exception.ReminderNotFoundException;
 import com.stackroute.keepnote.model.Reminder;
 import com.stackroute.keepnote.repository.ReminderRepository;
+import com.stackroute.keepnote.service.NoteEventPublisher;
 import com.stackroute.keepnote.service.ReminderServiceImpl;
 
 import junit.framework.Assert;
@@ -26,6 +34,12 @@ public class ReminderServiceImplTest {
     @Mock
     ReminderRepository reminderRepository;
 
+    @Mock
+    MongoOperations mongoOperations;
+
+    @Mock
+    NoteEventPublisher noteEventPublisher;
+
     Reminder reminder;
 
     @InjectMocks
@@ -84,11 +98,21 @@ public class ReminderServiceImplTest {
     public void updateReminder() throws ReminderNotFoundException
     {
 
-        when(reminderRepository.findById(reminder.getReminderId())).thenReturn(options);
         reminder.setReminderDescription("Send message at 6:00Pm");
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Reminder.class))).thenReturn(reminder);
         Reminder fetchedreminder = reminderService.updateReminder(reminder, reminder.getReminderId());
         Assert.assertEquals(reminder, fetchedreminder);
+        verify(noteEventPublisher).reminderUpdated(reminder);
+
+    }
 
+    @Test(expected = ReminderNotFoundException.class)
+    public void updateReminderNotFound() throws ReminderNotFoundException
+    {
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Reminder.class))).thenReturn(null);
+        reminderService.updateReminder(reminder, reminder.getReminderId());
     }
 
     @Test
@@ -110,6 +134,14 @@ public class ReminderServiceImplTest {
 
     }
 
+    @Test
+    public void getRemindersByIds()
+    {
+        List<String> ids = Arrays.asList("5b0509731764e3096984eae6", "5b0509731764e3096984eae7");
+        when(reminderRepository.findByReminderIdIn(ids)).thenReturn(reminderList);
+        Assert.assertEquals(reminderList, reminderService.getRemindersByIds(ids));
+    }
+
 
 
 
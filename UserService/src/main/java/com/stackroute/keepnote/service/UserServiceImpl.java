@@ -2,6 +2,11 @@ package com.stackroute.keepnote.service;
 
 import java.util.Optional;
 
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import com.stackroute.keepnote.exceptions.UserAlreadyExistsException;
@@ -29,9 +34,11 @@ public class UserServiceImpl implements UserService {
 	 */
 
 	private final UserRepository userRepository;
+	private final MongoOperations mongoOperations;
 
-	public UserServiceImpl(UserRepository userRepository) {
+	public UserServiceImpl(UserRepository userRepository, MongoOperations mongoOperations) {
 		this.userRepository = userRepository;
+		this.mongoOperations = mongoOperations;
 	}
 
 	/*
@@ -49,18 +56,20 @@ public class UserServiceImpl implements UserService {
 
 	/*
 	 * This method should be used to update a existing user.Call the corresponding
-	 * method of Respository interface.
+	 * method of Respository interface. The fields are set and the updated user is
+	 * read back with a single findAndModify which never upserts, the date the
+	 * user was added is kept.
 	 */
 
 	public User updateUser(String userId, User user) throws UserNotFoundException {
-		try {
-			Optional.ofNullable(this.userRepository.findById(userId)).get()
-					.orElseThrow(() -> new UserNotFoundException("user not found exception"));
-			this.userRepository.save(user);
-			return this.userRepository.findById(userId).get();
-		} catch (Exception e) {
-			throw new UserNotFoundException(e.getMessage());
+		Update update = new Update().set("userName", user.getUserName())
+				.set("userPassword", user.getUserPassword()).set("userMobile", user.getUserMobile());
+		User updatedUser = this.mongoOperations.findAndModify(new Query(Criteria.where("_id").is(userId)), update,
+				FindAndModifyOptions.options().returnNew(true).upsert(false), User.class);
+		if (null == updatedUser) {
+			throw new UserNotFoundException("user not found exception");
 		}
+		return updatedUser;
 	}
 
 	/*
@@ -2,6 +2,7 @@ package com.stackroute.keepnote.test.service;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -16,6 +17,10 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import com.stackroute.keepnote.exceptions.UserAlreadyExistsException;
 import com.stackroute.keepnote.model.User;
 import com.stackroute.keepnote.repository.UserRepository;
@@ -27,6 +32,9 @@ public class UserServiceImplTest {
     @Mock
     UserRepository userRepository;
 
+    @Mock
+    MongoOperations mongoOperations;
+
 
     User user;
 
@@ -71,13 +79,22 @@ public class UserServiceImplTest {
 
     @Test
     public void updateUser() throws UserNotFoundException {
-        when(userRepository.findById(user.getUserId())).thenReturn(options);
         user.setUserMobile("1234567789");
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(User.class))).thenReturn(user);
         User fetchuser = userService.updateUser(user.getUserId(), user);
         assertEquals(user, fetchuser);
 
     }
 
+    @Test(expected = UserNotFoundException.class)
+    public void updateUserNotFound() throws UserNotFoundException {
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(User.class))).thenReturn(null);
+        userService.updateUser(user.getUserId(), user);
+
+    }
+
     @Test
     public void deleteUserSuccess() throws UserNotFoundException {
         when(userRepository.findById(user.getUserId())).thenReturn(options);